@@ -0,0 +1,108 @@
+package benchmarks;
+
+import core.DatasetGenerator;
+import core.Reminder;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+// Generated data directory shared by every benchmark.
+// The rows parameter is the size of reminders.txt: DatasetGenerator writes one user per 1000
+// reminders (10 medicines, two doses a day over a 50-day course), with their dose history
+// and notifications. Each size is generated once under -Dbenchmark.data.root and reused by
+// later runs, but never written to: every trial copies it to a working directory of its own
+// and runs against the copy, so the benchmarks that add medicines, take doses and move stock
+// start from the same data every run. All benchmarks query the first user, so per-call work
+// grows with the file sizes only where a code path still scans whole files.
+@State(Scope.Benchmark)
+public class DataSet {
+    static final int REMINDERS_PER_USER = 1000;
+    static final int MEDICINES_PER_USER = 10;
+    static final int COURSE_DAYS = REMINDERS_PER_USER / MEDICINES_PER_USER / 2;
+    private static final String COMPLETE_MARKER = ".complete";
+    private static final String LOCK_DIRECTORY = ".locks";
+
+    @Param({"1000", "100000", "10000000"})
+    public int rows;
+
+    public String username;
+    public String medicineName;
+    public Path directory; // The working copy of this trial
+
+    // Untaken reminders of the benchmarked user, for benchmarks that take them one by one
+    public List<Reminder> pending;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        Path root = Paths.get(System.getProperty("benchmark.data.root", "build/bench-data"));
+        // Not rows-<n>, where earlier versions ran the benchmarks directly and changed the data
+        Path generated = root.resolve("generated").resolve("rows-" + rows);
+        if (!Files.exists(generated.resolve(COMPLETE_MARKER))) {
+            DatasetGenerator.Options options = new DatasetGenerator.Options();
+            options.users = Math.max(1, rows / REMINDERS_PER_USER);
+            options.medicinesPerUser = MEDICINES_PER_USER;
+            options.minDosesPerDay = options.maxDosesPerDay = 2;
+            options.minCourseDays = options.maxCourseDays = COURSE_DAYS;
+            options.output = generated.toString();
+            options.force = true;
+            DatasetGenerator.generate(options);
+            Files.createFile(generated.resolve(COMPLETE_MARKER));
+        }
+
+        // A directory no earlier trial used, so no cache keyed by path holds state from one
+        directory = root.resolve("work").resolve("rows-" + rows + "-" + System.nanoTime());
+        copy(generated, directory);
+        System.setProperty("medicine.data.dir", directory.toString());
+        username = DatasetGenerator.username(0);
+        medicineName = DatasetGenerator.medicineName(0);
+
+        pending = new ArrayList<>();
+        for (int m = 0; m < MEDICINES_PER_USER; m++) {
+            for (Reminder reminder : Reminder.getRemindersByMedicine(username, DatasetGenerator.medicineName(m))) {
+                if (!reminder.isTaken()) {
+                    pending.add(reminder);
+                }
+            }
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        delete(directory);
+    }
+
+    private static void copy(Path from, Path to) throws IOException {
+        try (Stream<Path> paths = Files.walk(from)) {
+            for (Path source : (Iterable<Path>) paths::iterator) {
+                Path relative = from.relativize(source);
+                if (relative.startsWith(LOCK_DIRECTORY)) {
+                    continue;
+                }
+                Path target = to.resolve(relative.toString());
+                if (Files.isDirectory(source)) {
+                    Files.createDirectories(target);
+                } else {
+                    Files.copy(source, target);
+                }
+            }
+        }
+    }
+
+    private static void delete(Path directory) throws IOException {
+        if (directory == null || !Files.exists(directory)) {
+            return;
+        }
+        try (Stream<Path> paths = Files.walk(directory)) {
+            for (Path path : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator) {
+                Files.delete(path);
+            }
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package benchmarks;
+
+import core.DoseHistory;
+import core.DoseHistoryManager;
+import core.Notification;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Per-user reads of notifications.txt and the dose history
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class HistoryBenchmark {
+
+    @Benchmark
+    public List<Notification> getUserNotifications(DataSet data) {
+        return Notification.getUserNotifications(data.username);
+    }
+
+    @Benchmark
+    public List<DoseHistory> getDoseHistoryByUser(DataSet data) {
+        return DoseHistoryManager.getDoseHistoryByUser(data.username);
+    }
+}
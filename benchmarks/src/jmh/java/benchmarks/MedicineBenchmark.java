@@ -0,0 +1,22 @@
+package benchmarks;
+
+import core.Medicine;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Reads and stock updates on medicines.txt
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class MedicineBenchmark {
+
+    @Benchmark
+    public List<Medicine> getUserMedicines(DataSet data) {
+        return Medicine.getUserMedicines(data.username);
+    }
+
+    @Benchmark
+    public void updateMedicineStock(DataSet data, Sequence sequence) {
+        Medicine.updateMedicineStock(data.username, data.medicineName, 100 + (sequence.next() & 255));
+    }
+}
@@ -0,0 +1,51 @@
+package benchmarks;
+
+import core.Medicine;
+import core.Reminder;
+import core.ScheduleResult;
+import core.storage.ReminderStore.Marking;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Lookups, schedule generation and status updates on reminders.txt
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ReminderBenchmark {
+
+    @Benchmark
+    public List<Reminder> getRemindersByMedicine(DataSet data) {
+        return Reminder.getRemindersByMedicine(data.username, data.medicineName);
+    }
+
+    // Schedule already complete: every slot is found and skipped.
+    // generateSchedule is the work behind generateMedicineSchedule without the console summary.
+    @Benchmark
+    public ScheduleResult generateMedicineScheduleExisting(DataSet data) throws IOException {
+        return Reminder.generateSchedule(data.username, data.medicineName);
+    }
+
+    // A new one-week medicine per call: the append path, including adding the medicine. The
+    // trial's fresh copy of the data set has none of the bench<n> medicines yet.
+    @Benchmark
+    public ScheduleResult generateMedicineScheduleNew(DataSet data, Sequence sequence) throws IOException {
+        String name = "bench" + sequence.next();
+        LocalDate start = LocalDate.of(2025, 1, 1);
+        Medicine.addMedicine(new Medicine(data.username, name, "1 tab", 14,
+                new LocalTime[]{LocalTime.of(8, 0), LocalTime.of(20, 0)}, start, start.plusDays(6), start.plusYears(1)));
+        return Reminder.generateSchedule(data.username, name);
+    }
+
+    // Takes the user's untaken reminders one per call; once all are taken, calls hit the already-taken path
+    @Benchmark
+    public Marking markReminderAsTaken(DataSet data, Sequence sequence) {
+        if (data.pending.isEmpty()) {
+            throw new IllegalStateException("The data set has no untaken reminders to take");
+        }
+        Reminder reminder = data.pending.get(sequence.next() % data.pending.size());
+        return Reminder.markReminderAsTaken(data.username, reminder.getMedicineName(), reminder.getDate(), reminder.getTime());
+    }
+}
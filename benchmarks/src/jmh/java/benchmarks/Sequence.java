@@ -0,0 +1,14 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+// Per-thread counter for benchmarks that must touch a different row on every call
+@State(Scope.Thread)
+public class Sequence {
+    private int value = 0;
+
+    int next() {
+        return value++;
+    }
+}
@@ -0,0 +1,265 @@
+package UI;
+
+import java.io.*;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+// Frame-based console output.
+// The terminal kind is detected once, from -Dui.terminal (ansi, cls or plain) or the platform:
+// ANSI escape codes everywhere but a Windows console without them, where "cls" is still run.
+// Once install() is called, System.out writes into one reusable buffer instead of the
+// terminal, and the buffer goes out in a single write when the program reads input (every
+// Scanner reads through input()), flushes, or writes to System.err. A screen is everything
+// between two clear() calls. With ANSI output the first write of a screen is compared with
+// the previous screen line by line and only the lines that changed are redrawn, as long as
+// both fit in the terminal (-Dui.rows and -Dui.columns, default LINES and COLUMNS or 24x80).
+public class Terminal {
+    private enum Kind { ANSI, CLS, PLAIN }
+
+    private static final Kind KIND = detect();
+    private static final int ROWS = size("ui.rows", "LINES", 24);
+    private static final int COLUMNS = size("ui.columns", "COLUMNS", 80);
+    private static final String ESC = "\033[";
+
+    private static final InputStream input = new TiedInput(System.in);
+    private static Frame frame = null;
+
+    // Routes System.out and System.err through the frame buffer; call once before the first screen
+    public static synchronized void install() {
+        if (frame != null) {
+            return;
+        }
+        Charset charset = Charset.defaultCharset();
+        frame = new Frame(new FileOutputStream(FileDescriptor.out), charset);
+        OutputStream errors = new FileOutputStream(FileDescriptor.err);
+        System.setOut(new PrintStream(frame, false, charset));
+        System.setErr(new PrintStream(new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                write(new byte[]{(byte) b}, 0, 1);
+            }
+
+            @Override
+            public void write(byte[] bytes, int offset, int length) throws IOException {
+                System.out.flush(); // Keep errors after what was printed before them
+                errors.write(bytes, offset, length);
+            }
+        }, true, charset));
+        Runtime.getRuntime().addShutdownHook(new Thread(System.out::flush, "terminal-flush"));
+    }
+
+    // Console input that first writes out any buffered output, so a prompt is always shown
+    public static InputStream input() {
+        return input;
+    }
+
+    // Starts a new screen
+    public static void clear() {
+        switch (KIND) {
+            case ANSI -> {
+                if (frame != null) {
+                    System.out.flush();
+                    frame.startScreen();
+                } else {
+                    System.out.print(ESC + "H" + ESC + "2J");
+                    System.out.flush();
+                }
+            }
+            case CLS -> {
+                System.out.flush();
+                try {
+                    new ProcessBuilder("cmd", "/c", "cls").inheritIO().start().waitFor();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            case PLAIN -> System.out.println();
+        }
+    }
+
+    private static Kind detect() {
+        String configured = System.getProperty("ui.terminal");
+        if (configured != null) {
+            try {
+                return Kind.valueOf(configured.trim().toUpperCase());
+            } catch (IllegalArgumentException e) {
+                System.err.printf("\n⚠ Unknown -Dui.terminal=%s (use ansi, cls or plain); detecting the terminal instead.\n", configured);
+            }
+        }
+        boolean windows = System.getProperty("os.name", "").startsWith("Windows");
+        if (windows && System.getenv("WT_SESSION") == null && System.getenv("TERM") == null) {
+            return Kind.CLS; // Classic Windows console, which may not understand escape codes
+        }
+        return "dumb".equals(System.getenv("TERM")) ? Kind.PLAIN : Kind.ANSI;
+    }
+
+    private static int size(String property, String variable, int fallback) {
+        Integer configured = Integer.getInteger(property);
+        if (configured != null) {
+            return configured;
+        }
+        try {
+            String value = System.getenv(variable);
+            return value == null ? fallback : Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            return fallback;
+        }
+    }
+
+    // The screen buffer behind System.out
+    private static class Frame extends OutputStream {
+        private final OutputStream terminal;
+        private final Charset charset;
+        private final ByteArrayOutputStream pending = new ByteArrayOutputStream(8192);
+        private List<String> shown = new ArrayList<>();     // Lines of the previous screen still where they were drawn
+        private final StringBuilder screen = new StringBuilder(); // What this screen has shown so far
+        private boolean newScreen = false;  // clear() was called and nothing has been written since
+        private boolean tracking = true;    // No input was echoed on this screen yet, so line positions are known
+        private int rowsUsed = 0;           // Lines this screen has moved the cursor down, counting echoed input
+        private boolean reading = false;    // The program is waiting for input
+
+        Frame(OutputStream terminal, Charset charset) {
+            this.terminal = terminal;
+            this.charset = charset;
+        }
+
+        @Override
+        public synchronized void write(int b) throws IOException {
+            pending.write(b);
+            if (reading) {
+                flush();
+            }
+        }
+
+        @Override
+        public synchronized void write(byte[] bytes, int offset, int length) throws IOException {
+            pending.write(bytes, offset, length);
+            if (reading) {
+                flush(); // Written by another thread while the console waits; show it now
+            }
+        }
+
+        // Writes out everything buffered in one write
+        @Override
+        public synchronized void flush() throws IOException {
+            if (pending.size() == 0) {
+                return;
+            }
+            String text = pending.toString(charset);
+            pending.reset();
+            String output = newScreen ? draw(text) : text;
+            newScreen = false;
+            if (tracking) {
+                screen.append(text);
+            }
+            rowsUsed += text.chars().filter(c -> c == '\n').count();
+            terminal.write(output.getBytes(charset));
+            terminal.flush();
+        }
+
+        synchronized void startScreen() {
+            // Complete lines drawn before any input keep their place, unless the screen scrolled since
+            shown = new ArrayList<>();
+            if (rowsUsed < ROWS) {
+                String[] lines = screen.toString().split("\n", -1);
+                for (int i = 0; i < lines.length - 1; i++) {
+                    shown.add(lines[i]);
+                }
+            }
+            screen.setLength(0);
+            rowsUsed = 0;
+            tracking = true;
+            newScreen = true;
+        }
+
+        synchronized void beforeRead() throws IOException {
+            flush();
+            tracking = false; // The echo of what is typed moves the cursor
+            rowsUsed++;
+            reading = true;
+        }
+
+        synchronized void afterRead() {
+            reading = false;
+        }
+
+        // First output of a screen: redraw only the changed lines if both screens fit, else everything
+        private String draw(String text) {
+            String[] lines = text.split("\n", -1);
+            StringBuilder out = new StringBuilder(text.length() + 64);
+            if (!fits(lines)) {
+                return out.append(ESC).append("H").append(ESC).append("2J").append(text).toString();
+            }
+            for (int i = 0; i < lines.length; i++) {
+                boolean last = i == lines.length - 1;
+                if (!last && i < shown.size() && shown.get(i).equals(lines[i])) {
+                    continue;
+                }
+                out.append(ESC).append(i + 1).append(";1H").append(lines[i]);
+                if (!last) {
+                    out.append(ESC).append("K");
+                }
+            }
+            return out.append(ESC).append("J").toString(); // Clear the rest of the last line and below
+        }
+
+        // True if the lines fit the terminal without wrapping or scrolling
+        private static boolean fits(String[] lines) {
+            if (lines.length > ROWS) {
+                return false;
+            }
+            for (String line : lines) {
+                if (line.length() > COLUMNS || line.indexOf('\t') >= 0 || line.indexOf('\r') >= 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    // System.in, flushing the frame before blocking for input
+    private static class TiedInput extends FilterInputStream {
+        TiedInput(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            before();
+            try {
+                return super.read();
+            } finally {
+                after();
+            }
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) throws IOException {
+            before();
+            try {
+                return super.read(bytes, offset, length);
+            } finally {
+                after();
+            }
+        }
+
+        private static void before() throws IOException {
+            Frame current = frame;
+            if (current != null) {
+                current.beforeRead();
+            } else {
+                System.out.flush();
+            }
+        }
+
+        private static void after() {
+            Frame current = frame;
+            if (current != null) {
+                current.afterRead();
+            }
+        }
+    }
+}
@@ -1,11 +1,19 @@
 package UI;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Scanner;
+import java.util.function.Function;
 
 public class UI {
-    private static Scanner scanner = new Scanner(System.in);
+    private static Scanner scanner = new Scanner(Terminal.input());
+
+    // Rows shown per page by displayPagedTable, overridable with -Dui.pageSize
+    private static final int PAGE_SIZE = Math.max(1, Integer.getInteger("ui.pageSize", 20));
+    // Widest a column grows when its width is taken from a sample of the rows
+    private static final int MAX_SAMPLED_WIDTH = 40;
 
     public static void displayReminderTable(List<String> headers, List<List<String>> rows) {
         if (headers == null || rows == null || headers.isEmpty() || rows.isEmpty()) {
@@ -23,47 +31,138 @@ public class UI {
             }
         }
 
-        int computedContentWidth = Arrays.stream(widths).sum() + 2 * widths.length + (widths.length - 1);
+        StringBuilder out = new StringBuilder();
+        appendTable(out, headers, rows, widths, tableWidth(widths));
+        System.out.print(out);
+        System.out.flush();
+    }
+
+    // Shows a table one page at a time, pulling rows from the iterator only when a page is needed.
+    // Column widths are at least the given ones (null for none) and the header's, and otherwise
+    // come from the first page; longer cells are cut. Pages already shown are kept for going back.
+    public static void displayPagedTable(List<String> headers, int[] widths, Iterator<List<String>> rows) {
+        List<List<List<String>>> pages = new ArrayList<>();
+        if (headers == null || rows == null || headers.isEmpty() || !rows.hasNext()) {
+            System.out.println("No data to display");
+            return;
+        }
+        pages.add(nextPage(rows));
+
+        int[] columnWidths = new int[headers.size()];
+        for (int i = 0; i < headers.size(); i++) {
+            columnWidths[i] = Math.max(headers.get(i).length(), widths != null && i < widths.length ? widths[i] : 0);
+        }
+        if (widths == null) {
+            for (List<String> row : pages.get(0)) {
+                for (int i = 0; i < row.size(); i++) {
+                    columnWidths[i] = Math.max(columnWidths[i], Math.min(MAX_SAMPLED_WIDTH, row.get(i).length()));
+                }
+            }
+        }
+        int tableWidth = tableWidth(columnWidths);
+
+        int current = 0;
+        while (true) {
+            boolean hasNext = current + 1 < pages.size() || rows.hasNext();
+            StringBuilder out = new StringBuilder();
+            appendTable(out, headers, pages.get(current), columnWidths, tableWidth);
+            if (current == 0 && !hasNext) {
+                System.out.print(out);
+                System.out.flush();
+                return;
+            }
+            out.append(hasNext ? String.format("Page %d%n", current + 1)
+                    : String.format("Page %d of %d%n", current + 1, pages.size()));
+            out.append(hasNext ? "[Enter] Next page   [p] Previous page   [q] Done: "
+                    : "[Enter] Done   [p] Previous page: ");
+            System.out.print(out);
+            System.out.flush();
+
+            switch (scanner.nextLine().trim().toLowerCase()) {
+                case "p" -> current = Math.max(0, current - 1);
+                case "q" -> {
+                    return;
+                }
+                default -> {
+                    if (!hasNext) {
+                        return;
+                    }
+                    if (current + 1 == pages.size()) {
+                        pages.add(nextPage(rows));
+                    }
+                    current++;
+                }
+            }
+        }
+    }
+
+    // Turns items into table rows as they are read
+    public static <T> Iterator<List<String>> mapRows(Iterator<T> items, Function<T, List<String>> toRow) {
+        return new Iterator<>() {
+            @Override
+            public boolean hasNext() {
+                return items.hasNext();
+            }
+
+            @Override
+            public List<String> next() {
+                return toRow.apply(items.next());
+            }
+        };
+    }
+
+    private static List<List<String>> nextPage(Iterator<List<String>> rows) {
+        List<List<String>> page = new ArrayList<>(PAGE_SIZE);
+        while (page.size() < PAGE_SIZE && rows.hasNext()) {
+            page.add(rows.next());
+        }
+        return page;
+    }
 
-        int tableWidth = Math.max(50, computedContentWidth);
+    private static int tableWidth(int[] widths) {
+        int computedContentWidth = Arrays.stream(widths).sum() + 2 * widths.length + (widths.length - 1);
+        return Math.max(50, computedContentWidth);
+    }
 
-        String topBorder = buildBorder("╔", "╗", tableWidth);
-        String headerSeparator = buildBorder("╠", "╣", tableWidth);
+    // Renders the whole table into out, so it reaches the terminal in one write
+    private static void appendTable(StringBuilder out, List<String> headers, List<List<String>> rows, int[] widths, int tableWidth) {
         String rowSeparator = buildBorder("╟", "╢", tableWidth);
-        String bottomBorder = buildBorder("╚", "╝", tableWidth);
 
-        System.out.println(topBorder);
-        printRow("║", headers, widths, tableWidth);
-        System.out.println(headerSeparator);
+        out.append(buildBorder("╔", "╗", tableWidth)).append(System.lineSeparator());
+        appendRow(out, "║", headers, widths, tableWidth);
+        out.append(buildBorder("╠", "╣", tableWidth)).append(System.lineSeparator());
         for (int i = 0; i < rows.size(); i++) {
-            printRow("║", rows.get(i), widths, tableWidth);
+            appendRow(out, "║", rows.get(i), widths, tableWidth);
             if (i < rows.size() - 1) {
-                System.out.println(rowSeparator);
+                out.append(rowSeparator).append(System.lineSeparator());
             }
         }
-        System.out.println(bottomBorder);
+        out.append(buildBorder("╚", "╝", tableWidth)).append(System.lineSeparator());
     }
 
     private static String buildBorder(String left, String right, int width) {
         return left + "═".repeat(width) + right;
     }
 
-    private static void printRow(String edge, List<String> cells, int[] widths, int tableWidth) {
+    private static void appendRow(StringBuilder out, String edge, List<String> cells, int[] widths, int tableWidth) {
         // Build content for the row: each cell as " " + left-aligned content + " "
         StringBuilder contentBuilder = new StringBuilder();
         for (int i = 0; i < cells.size(); i++) {
+            String cell = cells.get(i);
+            if (cell.length() > widths[i]) {
+                cell = cell.substring(0, Math.max(0, widths[i] - 1)) + "…";
+            }
             contentBuilder.append(" ")
-                    .append(String.format("%-" + widths[i] + "s", cells.get(i)))
+                    .append(cell)
+                    .append(" ".repeat(widths[i] - cell.length()))
                     .append(" ");
             if (i < cells.size() - 1) {
                 contentBuilder.append("│");
             }
         }
         String content = contentBuilder.toString();
-        // Center the content in a field of tableWidth
-        String centeredContent = centerText(content, tableWidth);
-        // Build the row with vertical edges
-        System.out.println(edge + centeredContent + edge);
+        // Center the content in a field of tableWidth and add the vertical edges
+        out.append(edge).append(centerText(content, tableWidth)).append(edge).append(System.lineSeparator());
     }
 
     public static void printBoxedMenu(String[] options, String title) {
@@ -115,13 +214,9 @@ public class UI {
     }
 
 
+    // Starts a new screen; the terminal is detected once, no process is started per screen
     public static void clearScreen() {
-        try {
-            new ProcessBuilder("cmd", "/c", "cls").inheritIO().start().waitFor();
-        } catch (Exception e) {
-            System.out.print("\033[H\033[2J");
-            System.out.flush();
-        }
+        Terminal.clear();
     }
 
     public static void waitForEnter() {
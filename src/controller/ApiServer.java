@@ -0,0 +1,585 @@
+package controller;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import core.*;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.format.DateTimeParseException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Headless HTTP/JSON server exposing the console operations to many users at once.
+// Every request carries its own user context through a session token issued at login
+// (Authorization: Bearer <token>), so nothing depends on Main.currentUser. Requests run one
+// per virtual thread when the JVM has them (Java 21+) and on a cached pool otherwise.
+//
+// Start with: java -cp bin controller.Main server [port]
+//
+//   POST   /api/register                          {username,password,firstName,lastName,gender,age}
+//   POST   /api/login                             {username,password} -> {token}
+//   POST   /api/logout
+//   GET    /api/medicines
+//   POST   /api/medicines                         {name,dosage,quantity,times[],startDate,endDate,expiryDate}
+//   DELETE /api/medicines/{name}
+//   POST   /api/medicines/{name}/schedule
+//   GET    /api/medicines/{name}/reminders        [?from=yyyy-MM-ddTHH:mm&to=...]
+//   POST   /api/medicines/{name}/taken            {date,time}  (409 if that dose was already taken)
+//   POST   /api/medicines/{name}/refill           {amount}
+//   GET    /api/medicines/{name}/stock
+//   GET    /api/notifications
+//   POST   /api/notifications/processed           {message}
+//   GET    /api/history
+public class ApiServer {
+    public static final int DEFAULT_PORT = 8080;
+
+    // Sessions idle for longer than this are dropped, overridable with -Dapi.sessionIdleMinutes
+    private static final Duration SESSION_IDLE = Duration.ofMinutes(Long.getLong("api.sessionIdleMinutes", 30));
+
+    // Request bodies larger than this are refused with 413, overridable with -Dapi.maxBodyBytes
+    private static final int MAX_BODY_BYTES = Integer.getInteger("api.maxBodyBytes", 64 * 1024);
+
+    private static final Map<String, Session> sessions = new ConcurrentHashMap<>();
+    private static final SecureRandom random = new SecureRandom();
+
+    private static final AtomicLong lastSweep = new AtomicLong(System.nanoTime());
+
+    // Runs the expiry sweep; each run only touches medicines that expired since the last one
+    private static final ScheduledExecutorService housekeeping = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "api-housekeeping");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private static HttpServer server;
+
+    // Starts the server and returns; requests are served on the executor's threads
+    public static synchronized void start(int port) throws IOException {
+        server = HttpServer.create(new InetSocketAddress(port), 1024);
+        server.setExecutor(requestExecutor());
+        server.createContext("/api/", ApiServer::handle);
+        server.start();
+        housekeeping.scheduleAtFixedRate(() -> {
+            try {
+                ExpiryIndex.sweep(LocalDate.now());
+            } catch (RuntimeException e) {
+                e.printStackTrace(); // A failed run must not cancel the later ones
+            }
+        }, 0, 1, TimeUnit.HOURS);
+        System.out.println("Medicine Reminder API listening on port " + server.getAddress().getPort());
+    }
+
+    public static synchronized void stop() {
+        if (server != null) {
+            server.stop(0);
+            server = null;
+        }
+    }
+
+    // One virtual thread per request where available, a cached thread pool otherwise
+    static ExecutorService requestExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool();
+        }
+    }
+
+    private static void handle(HttpExchange exchange) {
+        // The core stores lock per user file, so requests of different users run in parallel
+        try {
+            Object body = route(exchange);
+            respond(exchange, 200, body);
+        } catch (ApiException e) {
+            respond(exchange, e.status, Map.of("error", e.getMessage()));
+        } catch (IllegalArgumentException | DateTimeParseException e) {
+            // Malformed JSON, enum names and dates; missing or mistyped fields are ApiExceptions
+            respond(exchange, 400, Map.of("error", "Bad request: " + e.getMessage()));
+        } catch (Exception e) {
+            e.printStackTrace();
+            respond(exchange, 500, Map.of("error", "Internal error"));
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private static Object route(HttpExchange exchange) throws IOException {
+        String method = exchange.getRequestMethod();
+        List<String> path = segments(exchange.getRequestURI().getRawPath());
+        // path.get(0) is "api"
+        if (path.size() < 2) {
+            throw new ApiException(404, "Not found");
+        }
+
+        switch (path.get(1)) {
+            case "register" -> {
+                requireMethod(method, "POST");
+                return register(readBody(exchange));
+            }
+            case "login" -> {
+                requireMethod(method, "POST");
+                return login(readBody(exchange));
+            }
+            default -> {
+            }
+        }
+
+        String username = authenticate(exchange);
+        String resource = path.get(1);
+
+        if (resource.equals("logout") && path.size() == 2) {
+            requireMethod(method, "POST");
+            logout(exchange);
+            return Map.of("loggedOut", true);
+        }
+        if (resource.equals("medicines")) {
+            if (path.size() == 2) {
+                if (method.equals("GET")) {
+                    return listMedicines(username);
+                }
+                requireMethod(method, "POST");
+                return addMedicine(username, readBody(exchange));
+            }
+            String medicineName = path.get(2);
+            if (path.size() == 3) {
+                requireMethod(method, "DELETE");
+                if (!Medicine.removeMedicine(username, medicineName)) {
+                    throw new ApiException(404, "Medicine not found: " + medicineName);
+                }
+                return Map.of("removed", medicineName);
+            }
+            if (path.size() == 4) {
+                switch (path.get(3)) {
+                    case "schedule" -> {
+                        requireMethod(method, "POST");
+                        return generateSchedule(username, medicineName);
+                    }
+                    case "reminders" -> {
+                        requireMethod(method, "GET");
+                        return listReminders(username, medicineName, query(exchange));
+                    }
+                    case "taken" -> {
+                        requireMethod(method, "POST");
+                        return markTaken(username, medicineName, readBody(exchange));
+                    }
+                    case "refill" -> {
+                        requireMethod(method, "POST");
+                        return refill(username, medicineName, readBody(exchange));
+                    }
+                    case "stock" -> {
+                        requireMethod(method, "GET");
+                        return listStock(username, medicineName);
+                    }
+                    default -> {
+                    }
+                }
+            }
+        }
+        if (resource.equals("notifications")) {
+            if (path.size() == 2) {
+                requireMethod(method, "GET");
+                return listNotifications(username);
+            }
+            if (path.size() == 3 && path.get(2).equals("processed")) {
+                requireMethod(method, "POST");
+                Notification.markNotificationAsProcessed(username, string(readBody(exchange), "message"));
+                return Map.of("processed", true);
+            }
+        }
+        if (resource.equals("history") && path.size() == 2) {
+            requireMethod(method, "GET");
+            return listHistory(username);
+        }
+        throw new ApiException(404, "Not found");
+    }
+
+    private static Object register(Map<String, Object> body) {
+        String username = string(body, "username");
+        Object genderName = body.getOrDefault("gender", "OTHER");
+        if (!(genderName instanceof String)) {
+            throw new ApiException(400, "Gender must be a string");
+        }
+        Gender gender = Gender.valueOf(((String) genderName).toUpperCase());
+        int age = body.containsKey("age") ? number(body, "age") : 18;
+        if (username.isBlank()) {
+            throw new ApiException(400, "Username must not be empty");
+        }
+        if (!User.registerUser(username, string(body, "password"), string(body, "firstName"),
+                string(body, "lastName"), gender, age)) {
+            throw new ApiException(409, "Username already exists");
+        }
+        return Map.of("registered", username);
+    }
+
+    private static Object login(Map<String, Object> body) {
+        String username = string(body, "username");
+        if (!User.validateLogin(username, string(body, "password"))) {
+            throw new ApiException(401, "Invalid credentials");
+        }
+
+        // Same steps as a console login
+        ReminderManager.checkMissedDoses(username);
+        ReminderManager.checkDueReminders(username);
+        ReminderDispatcher.watch(username);
+
+        byte[] bytes = new byte[16];
+        random.nextBytes(bytes);
+        String token = HexFormat.of().formatHex(bytes);
+        sessions.put(token, new Session(username));
+        sweepExpiredSessions();
+        return Map.of("token", token, "username", username);
+    }
+
+    private static void logout(HttpExchange exchange) {
+        Session session = sessions.remove(token(exchange));
+        if (session != null && !hasSession(session.username)) {
+            release(session.username);
+        }
+    }
+
+    private static Object listMedicines(String username) {
+        List<Object> result = new ArrayList<>();
+        for (Medicine medicine : Medicine.getUserMedicines(username)) {
+            result.add(medicineJson(medicine));
+        }
+        return result;
+    }
+
+    private static Object addMedicine(String username, Map<String, Object> body) {
+        List<?> timeValues = list(body, "times");
+        if (timeValues.isEmpty()) {
+            throw new ApiException(400, "At least one time is required");
+        }
+        LocalTime[] times = new LocalTime[timeValues.size()];
+        for (int i = 0; i < times.length; i++) {
+            if (!(timeValues.get(i) instanceof String)) {
+                throw new ApiException(400, "Times must be strings");
+            }
+            times[i] = LocalTime.parse((String) timeValues.get(i));
+        }
+        int quantity = number(body, "quantity");
+        if (quantity < 0) {
+            throw new ApiException(400, "Quantity must not be negative");
+        }
+        Medicine medicine = new Medicine(username, string(body, "name"), string(body, "dosage"),
+                quantity, times, LocalDate.parse(string(body, "startDate")),
+                LocalDate.parse(string(body, "endDate")), LocalDate.parse(string(body, "expiryDate")));
+        if (!Medicine.addMedicine(medicine)) {
+            throw new ApiException(500, "Failed to add medicine");
+        }
+        return medicineJson(medicine);
+    }
+
+    private static Object generateSchedule(String username, String medicineName) throws IOException {
+        ScheduleResult result = Reminder.generateSchedule(username, medicineName);
+        if (result == null) {
+            throw new ApiException(404, "Medicine not found: " + medicineName);
+        }
+        Map<String, Object> json = new LinkedHashMap<>();
+        json.put("medicine", result.getMedicineName());
+        json.put("startDate", result.getStartDate().toString());
+        json.put("endDate", result.getEndDate().toString());
+        json.put("added", result.getAdded());
+        json.put("skipped", result.getSkipped());
+        json.put("elapsedMillis", result.getElapsedMillis());
+        return json;
+    }
+
+    private static Object listReminders(String username, String medicineName, Map<String, String> query) {
+        List<Reminder> reminders;
+        if (query.containsKey("from") || query.containsKey("to")) {
+            LocalDateTime from = query.containsKey("from") ? LocalDateTime.parse(query.get("from")) : LocalDateTime.MIN;
+            LocalDateTime to = query.containsKey("to") ? LocalDateTime.parse(query.get("to")) : LocalDateTime.MAX;
+            reminders = Reminder.getRemindersBetween(username, medicineName, from, to);
+        } else {
+            reminders = Reminder.getRemindersByMedicine(username, medicineName);
+        }
+
+        List<Object> result = new ArrayList<>();
+        for (Reminder reminder : reminders) {
+            Map<String, Object> json = new LinkedHashMap<>();
+            json.put("date", reminder.getDate().toString());
+            json.put("time", reminder.getTime().toString());
+            json.put("taken", reminder.isTaken());
+            result.add(json);
+        }
+        return result;
+    }
+
+    private static Object markTaken(String username, String medicineName, Map<String, Object> body) {
+        LocalDateTime dueTime = LocalDateTime.of(LocalDate.parse(string(body, "date")), LocalTime.parse(string(body, "time")));
+        int remaining = NotificationManager.recordDoseTaken(username, medicineName, dueTime);
+        switch (remaining) {
+            case NotificationManager.MEDICINE_NOT_FOUND -> throw new ApiException(404, "Medicine not found: " + medicineName);
+            case NotificationManager.DOSE_NOT_SCHEDULED -> throw new ApiException(404, "No dose scheduled at " + dueTime);
+            case NotificationManager.DOSE_ALREADY_TAKEN -> throw new ApiException(409, "Dose already taken: " + dueTime);
+            case NotificationManager.DOSE_NOT_RECORDED -> throw new ApiException(500, "Dose could not be recorded");
+            case NotificationManager.STOCK_NOT_RECORDED -> throw new ApiException(500, "Dose recorded, but the stock could not be updated");
+            default -> { }
+        }
+        Map<String, Object> json = new LinkedHashMap<>();
+        json.put("medicine", medicineName);
+        json.put("scheduled", dueTime.toString());
+        json.put("remainingStock", remaining == NotificationManager.NOT_ENOUGH_STOCK ? 0 : remaining);
+        json.put("stockUpdated", remaining >= 0);
+        return json;
+    }
+
+    private static Object refill(String username, String medicineName, Map<String, Object> body) {
+        int amount = number(body, "amount");
+        if (amount <= 0) {
+            throw new ApiException(400, "Amount must be positive");
+        }
+        int quantity = Medicine.adjustMedicineStock(username, medicineName, StockLedger.Movement.REFILL, amount);
+        if (quantity == NotificationManager.MEDICINE_NOT_FOUND) {
+            throw new ApiException(404, "Medicine not found: " + medicineName);
+        }
+        if (quantity == NotificationManager.STOCK_NOT_RECORDED) {
+            throw new ApiException(500, "Stock could not be updated");
+        }
+        return Map.of("medicine", medicineName, "quantity", quantity);
+    }
+
+    private static Object listStock(String username, String medicineName) {
+        List<Object> result = new ArrayList<>();
+        for (StockLedger.Entry entry : StockLedger.history(username, medicineName)) {
+            Map<String, Object> json = new LinkedHashMap<>();
+            json.put("movement", entry.getMovement().name());
+            json.put("amount", entry.getAmount());
+            json.put("quantity", entry.getQuantityAfter());
+            json.put("time", entry.getTime().toString());
+            result.add(json);
+        }
+        return result;
+    }
+
+    private static Object listNotifications(String username) {
+        // Same pass the console dashboard runs, which only scans when a dose can have fallen due
+        DashboardState.open(username).refresh();
+
+        List<Object> result = new ArrayList<>();
+        for (Notification notification : Notification.getUserNotifications(username)) {
+            Map<String, Object> json = new LinkedHashMap<>();
+            json.put("type", notification.getType().name());
+            json.put("message", notification.getMessage());
+            json.put("processed", notification.isProcessed());
+            result.add(json);
+        }
+        return result;
+    }
+
+    private static Object listHistory(String username) {
+        List<Object> result = new ArrayList<>();
+        for (DoseHistory history : DoseHistoryManager.getDoseHistoryByUser(username)) {
+            Map<String, Object> json = new LinkedHashMap<>();
+            json.put("medicine", history.getMedicineName());
+            json.put("scheduled", history.getScheduledTime().toString());
+            json.put("taken", history.getTakenTime().toString());
+            result.add(json);
+        }
+        return result;
+    }
+
+    private static Map<String, Object> medicineJson(Medicine medicine) {
+        List<String> times = new ArrayList<>();
+        for (LocalTime time : medicine.getTimes()) {
+            times.add(time.toString());
+        }
+        Map<String, Object> json = new LinkedHashMap<>();
+        json.put("name", medicine.getName());
+        json.put("dosage", medicine.getDosage());
+        json.put("quantity", medicine.getQuantity());
+        json.put("times", times);
+        json.put("startDate", medicine.getStartDate().toString());
+        json.put("endDate", medicine.getEndDate().toString());
+        json.put("expiryDate", medicine.getExpiryDate().toString());
+        return json;
+    }
+
+    // Resolves the session of a request to its username, refreshing its idle timer
+    private static String authenticate(HttpExchange exchange) {
+        String token = token(exchange);
+        Session session = token == null ? null : sessions.get(token);
+        long now = System.nanoTime();
+        if (session == null || now - session.lastSeen > SESSION_IDLE.toNanos()) {
+            if (session != null) {
+                sessions.remove(token);
+                if (!hasSession(session.username)) {
+                    release(session.username);
+                }
+            }
+            throw new ApiException(401, "Login required");
+        }
+        session.lastSeen = now;
+        return session.username;
+    }
+
+    // Drops idle sessions, at most once a minute, so abandoned logins do not pile up
+    private static void sweepExpiredSessions() {
+        long now = System.nanoTime();
+        long last = lastSweep.get();
+        if (now - last < Duration.ofMinutes(1).toNanos() || !lastSweep.compareAndSet(last, now)) {
+            return;
+        }
+        Set<String> expiredUsers = new HashSet<>();
+        sessions.entrySet().removeIf(entry -> {
+            boolean expired = now - entry.getValue().lastSeen > SESSION_IDLE.toNanos();
+            if (expired) {
+                expiredUsers.add(entry.getValue().username);
+            }
+            return expired;
+        });
+        for (String username : expiredUsers) {
+            if (!hasSession(username)) {
+                release(username);
+            }
+        }
+    }
+
+    // Drops what was kept for a user once their last session is gone
+    private static void release(String username) {
+        ReminderDispatcher.unwatch(username);
+        DashboardState.close(username);
+    }
+
+    private static boolean hasSession(String username) {
+        for (Session session : sessions.values()) {
+            if (session.username.equals(username)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String token(HttpExchange exchange) {
+        String header = exchange.getRequestHeaders().getFirst("Authorization");
+        if (header == null || !header.startsWith("Bearer ")) {
+            return null;
+        }
+        return header.substring("Bearer ".length()).trim();
+    }
+
+    private static void requireMethod(String actual, String expected) {
+        if (!actual.equals(expected)) {
+            throw new ApiException(405, "Method not allowed");
+        }
+    }
+
+    private static List<String> segments(String rawPath) {
+        List<String> segments = new ArrayList<>();
+        for (String segment : rawPath.split("/")) {
+            if (!segment.isEmpty()) {
+                segments.add(URLDecoder.decode(segment, StandardCharsets.UTF_8));
+            }
+        }
+        return segments;
+    }
+
+    private static Map<String, String> query(HttpExchange exchange) {
+        Map<String, String> query = new HashMap<>();
+        String raw = exchange.getRequestURI().getRawQuery();
+        if (raw == null) {
+            return query;
+        }
+        for (String pair : raw.split("&")) {
+            String[] parts = pair.split("=", 2);
+            query.put(URLDecoder.decode(parts[0], StandardCharsets.UTF_8),
+                    parts.length > 1 ? URLDecoder.decode(parts[1], StandardCharsets.UTF_8) : "");
+        }
+        return query;
+    }
+
+    // Reads at most MAX_BODY_BYTES, so an oversized or endless body is refused before it is buffered
+    private static Map<String, Object> readBody(HttpExchange exchange) throws IOException {
+        String length = exchange.getRequestHeaders().getFirst("Content-Length");
+        if (length != null && length.matches("\\d{1,18}") && Long.parseLong(length) > MAX_BODY_BYTES) {
+            throw new ApiException(413, "Request body is larger than " + MAX_BODY_BYTES + " bytes");
+        }
+        try (InputStream in = exchange.getRequestBody()) {
+            byte[] bytes = in.readNBytes(MAX_BODY_BYTES + 1);
+            if (bytes.length > MAX_BODY_BYTES) {
+                throw new ApiException(413, "Request body is larger than " + MAX_BODY_BYTES + " bytes");
+            }
+            return Json.parseObject(new String(bytes, StandardCharsets.UTF_8));
+        }
+    }
+
+    private static String string(Map<String, Object> body, String name) {
+        Object value = body.get(name);
+        if (!(value instanceof String)) {
+            throw new ApiException(400, "Missing or non-string field: " + name);
+        }
+        return (String) value;
+    }
+
+    private static List<?> list(Map<String, Object> body, String name) {
+        Object value = body.get(name);
+        if (!(value instanceof List)) {
+            throw new ApiException(400, "Missing or non-list field: " + name);
+        }
+        return (List<?>) value;
+    }
+
+    // Reads a whole number; JSON numbers are parsed as doubles, so fractions and values outside
+    // the int range are rejected here rather than truncated
+    private static int number(Map<String, Object> body, String name) {
+        Object value = body.get(name);
+        if (!(value instanceof Number)) {
+            throw new ApiException(400, "Missing or non-numeric field: " + name);
+        }
+        double number = ((Number) value).doubleValue();
+        if (number != Math.rint(number) || number < Integer.MIN_VALUE || number > Integer.MAX_VALUE) {
+            throw new ApiException(400, "Field must be a whole number: " + name);
+        }
+        return (int) number;
+    }
+
+    private static void respond(HttpExchange exchange, int status, Object body) {
+        byte[] bytes = Json.write(body).getBytes(StandardCharsets.UTF_8);
+        try {
+            exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+            exchange.sendResponseHeaders(status, bytes.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(bytes);
+            }
+        } catch (IOException e) {
+            // The client went away; nothing left to tell it
+        }
+    }
+
+    private static class Session {
+        private final String username;
+        private volatile long lastSeen = System.nanoTime();
+
+        Session(String username) {
+            this.username = username;
+        }
+    }
+
+    // Error with the HTTP status to report it under
+    private static class ApiException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        private final int status;
+
+        ApiException(int status, String message) {
+            super(message);
+            this.status = status;
+        }
+    }
+}
@@ -0,0 +1,181 @@
+package controller;
+
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Local load driver for the API server.
+// Opens the given number of concurrent sessions, each registering (if needed) and logging in
+// its own user, adding one medicine with a schedule, and then issuing a mix of reads and
+// dose updates. Prints throughput, latency percentiles and error counts when done.
+//
+// Run with: java -cp bin controller.LoadDriver [--url=http://localhost:8080] [--sessions=1000] [--requests=20]
+public class LoadDriver {
+    private static final String[] READS = {"medicines", "notifications", "history", "reminders"};
+
+    private final String baseUrl;
+    private final HttpClient client;
+    private final ConcurrentLinkedQueue<long[]> latencies = new ConcurrentLinkedQueue<>();
+    private final AtomicLong errors = new AtomicLong();
+
+    LoadDriver(String baseUrl, ExecutorService executor) {
+        this.baseUrl = baseUrl;
+        this.client = HttpClient.newBuilder()
+                .executor(executor)
+                .connectTimeout(Duration.ofSeconds(10))
+                .build();
+    }
+
+    public static void main(String[] args) throws Exception {
+        String url = "http://localhost:" + ApiServer.DEFAULT_PORT;
+        int sessions = 1000;
+        int requests = 20;
+        for (String arg : args) {
+            String[] pair = arg.split("=", 2);
+            switch (pair[0]) {
+                case "--url" -> url = pair[1];
+                case "--sessions" -> sessions = Integer.parseInt(pair[1]);
+                case "--requests" -> requests = Integer.parseInt(pair[1]);
+                default -> {
+                    System.out.println("Usage: java -cp bin controller.LoadDriver [--url=URL] [--sessions=N] [--requests=N]");
+                    return;
+                }
+            }
+        }
+
+        ExecutorService executor = ApiServer.requestExecutor();
+        LoadDriver driver = new LoadDriver(url, executor);
+        long started = System.nanoTime();
+
+        List<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < sessions; i++) {
+            int session = i;
+            int count = requests;
+            futures.add(executor.submit(() -> driver.runSession(session, count)));
+        }
+        for (Future<?> future : futures) {
+            try {
+                future.get();
+            } catch (ExecutionException e) {
+                driver.errors.incrementAndGet();
+            }
+        }
+        executor.shutdown();
+
+        driver.report(sessions, System.nanoTime() - started);
+    }
+
+    // One simulated patient: login, set up a medicine, then the request mix
+    private void runSession(int session, int requests) {
+        long[] times = new long[requests + 4];
+        int index = 0;
+        String username = "load" + session;
+        String medicine = "LoadMed";
+        try {
+            long start = System.nanoTime();
+            HttpResponse<Void> registration = client.send(post("/api/register", Map.of("username", username,
+                    "password", "pw", "firstName", "Load", "lastName", "Test", "gender", "OTHER", "age", 30), null),
+                    HttpResponse.BodyHandlers.discarding());
+            times[index++] = System.nanoTime() - start;
+            boolean newUser = registration.statusCode() == 200;
+            if (!newUser && registration.statusCode() != 409) {
+                errors.incrementAndGet();
+            }
+
+            start = System.nanoTime();
+            HttpResponse<String> login = client.send(post("/api/login", Map.of("username", username, "password", "pw"), null),
+                    HttpResponse.BodyHandlers.ofString());
+            times[index++] = System.nanoTime() - start;
+            if (login.statusCode() != 200) {
+                errors.incrementAndGet();
+                return;
+            }
+            String token = (String) Json.parseObject(login.body()).get("token");
+
+            // Users left from an earlier run already have their medicine and schedule
+            LocalDate today = LocalDate.now();
+            if (newUser) {
+                times[index++] = timed(post("/api/medicines", Map.of("name", medicine, "dosage", "10 mg", "quantity", 1000,
+                        "times", List.of("08:00", "20:00"), "startDate", today.minusDays(7).toString(),
+                        "endDate", today.plusDays(7).toString(), "expiryDate", today.plusYears(1).toString()), token), 200);
+                times[index++] = timed(post("/api/medicines/" + encode(medicine) + "/schedule", Map.of(), token), 200);
+            }
+
+            for (int i = 0; i < requests; i++) {
+                if (i % 5 == 4) {
+                    LocalDate date = today.minusDays(i % 7);
+                    // The same dose comes up again later in the run and in later runs
+                    times[index++] = timed(post("/api/medicines/" + encode(medicine) + "/taken",
+                            Map.of("date", date.toString(), "time", "08:00"), token), 200, 409);
+                    continue;
+                }
+                String read = READS[i % READS.length];
+                String path = read.equals("reminders") ? "/api/medicines/" + encode(medicine) + "/reminders" : "/api/" + read;
+                times[index++] = timed(get(path, token), 200);
+            }
+        } catch (Exception e) {
+            errors.incrementAndGet();
+        } finally {
+            latencies.add(Arrays.copyOf(times, index));
+        }
+    }
+
+    // Sends a request and returns its latency, counting unexpected statuses as errors
+    private long timed(HttpRequest request, int... expectedStatuses) throws Exception {
+        long start = System.nanoTime();
+        HttpResponse<Void> response = client.send(request, HttpResponse.BodyHandlers.discarding());
+        long elapsed = System.nanoTime() - start;
+        if (Arrays.stream(expectedStatuses).noneMatch(status -> status == response.statusCode())) {
+            errors.incrementAndGet();
+        }
+        return elapsed;
+    }
+
+    private HttpRequest post(String path, Map<String, ?> body, String token) {
+        HttpRequest.Builder builder = HttpRequest.newBuilder(URI.create(baseUrl + path))
+                .timeout(Duration.ofSeconds(60))
+                .POST(HttpRequest.BodyPublishers.ofString(Json.write(body)));
+        if (token != null) {
+            builder.header("Authorization", "Bearer " + token);
+        }
+        return builder.build();
+    }
+
+    private HttpRequest get(String path, String token) {
+        return HttpRequest.newBuilder(URI.create(baseUrl + path))
+                .timeout(Duration.ofSeconds(60))
+                .header("Authorization", "Bearer " + token)
+                .GET()
+                .build();
+    }
+
+    private void report(int sessions, long elapsedNanos) {
+        long[] all = latencies.stream().flatMapToLong(Arrays::stream).sorted().toArray();
+        double seconds = elapsedNanos / 1e9;
+        System.out.println("Sessions:   " + sessions);
+        System.out.println("Requests:   " + all.length + " in " + String.format("%.2f", seconds) + " s ("
+                + String.format("%.0f", all.length / seconds) + " req/s)");
+        System.out.println("Errors:     " + errors.get());
+        if (all.length > 0) {
+            System.out.println("Latency ms: p50 " + millis(all, 0.50) + ", p95 " + millis(all, 0.95)
+                    + ", p99 " + millis(all, 0.99) + ", max " + millis(all, 1.0));
+        }
+    }
+
+    private static String millis(long[] sorted, double quantile) {
+        int index = (int) Math.min(sorted.length - 1, Math.ceil(quantile * sorted.length) - 1);
+        return String.format("%.1f", sorted[Math.max(0, index)] / 1e6);
+    }
+
+    private static String encode(String value) {
+        return URLEncoder.encode(value, StandardCharsets.UTF_8).replace("+", "%20");
+    }
+}
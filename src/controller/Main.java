@@ -2,18 +2,39 @@ package controller;
 
 import core.*;
 
+import java.io.IOException;
 import java.sql.SQLOutput;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Map;
 import java.util.Scanner;
 import UI.*;
 
 public class Main {
-    private static Scanner scanner = new Scanner(System.in);
+    private static Scanner scanner = new Scanner(Terminal.input());
     public static String currentUser = null;
 
     public static void main(String[] args) {
+        if (args.length > 0 && args[0].equals("server")) {
+            startServer(args);
+            return;
+        }
+        Terminal.install();
         showLandingPage();
     }
 
+    // Headless mode: serve the API until the process is stopped
+    private static void startServer(String[] args) {
+        try {
+            int port = args.length > 1 ? Integer.parseInt(args[1]) : ApiServer.DEFAULT_PORT;
+            ApiServer.start(port);
+        } catch (NumberFormatException e) {
+            System.err.printf("\n⚠ Invalid port: %s\n", args[1]);
+        } catch (IOException e) {
+            System.err.printf("\n⚠ Could not start server: %s\n", e.getMessage());
+        }
+    }
+
     private static void showLandingPage() {
         while (true) {
             UI.clearScreen();
@@ -51,8 +72,7 @@ public class Main {
         if (User.validateLogin(username, password)) {
             currentUser = username;
 
-            ReminderManager.checkMissedDoses(currentUser);
-            ReminderManager.checkDueReminders(currentUser);
+            ReminderDispatcher.watch(currentUser); // The dashboard's first pass raises what fell due while away
 
             showMainDashboard();
         } else {
@@ -62,18 +82,20 @@ public class Main {
     }
 
     private static void showMainDashboard() {
+        DashboardState dashboard = DashboardState.open(currentUser);
         while (true) {
             UI.clearScreen();
 
-            ReminderManager.checkDueReminders(currentUser);
-            ReminderManager.checkMissedDoses(currentUser);
+            // Only what changed since the last pass is read again
+            dashboard.refresh();
+            printDashboardSummary(dashboard);
 
-            String[] dashboardOptions = {"Manage Medicine", "Manage Reminders", "Dose History", "Missed Dose History", "Notifications", "Logout"};
+            String[] dashboardOptions = {"Manage Medicine", "Manage Reminders", "Dose History", "Missed Dose History", "Notifications", "Adherence Report", "Logout"};
             String title = currentUser + "'s " + "DASHBOARD";
             UI.printBoxedMenu(dashboardOptions, title);
 
 
-            int choice = getIntInput(1, 5);
+            int choice = getIntInput(1, dashboardOptions.length);
 
             switch (choice) {
                 case 1 -> manageMedicine();
@@ -81,12 +103,24 @@ public class Main {
                 case 3 -> DoseHistoryManager.displayDoseHistoryByUser(currentUser);
                 case 4 -> NotificationManager.displayMissedDoses(currentUser);
                 case 5 -> NotificationManager.displayMedicineTimeNotifications(currentUser);
-                case 6 -> { currentUser = null; return; }
+                case 6 -> DoseHistoryManager.displayAdherenceReport(currentUser);
+                case 7 -> { ReminderDispatcher.unwatch(currentUser); DashboardState.close(currentUser); currentUser = null; return; }
             }
             UI.waitForEnter();
         }
     }
 
+    private static void printDashboardSummary(DashboardState dashboard) {
+        System.out.printf("Medicines: %d   Pending notifications: %d   Missed doses: %d%n",
+                dashboard.getMedicines().size(), dashboard.getPendingCount(), dashboard.getMissedCount());
+        Map.Entry<String, LocalDateTime> next = dashboard.getNextDose();
+        if (next != null) {
+            System.out.printf("Next dose: %s at %s%n", next.getKey(),
+                    next.getValue().format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm")));
+        }
+        System.out.println();
+    }
+
     private static void manageReminders() {
         UI.clearScreen();
 
@@ -114,17 +148,19 @@ public class Main {
     public static void manageMedicine() {
         UI.clearScreen();
 
-        String[] medicineManagementOptions ={"Add Medcicine", "View Medicine List", "Remove Medicine", "Back"};
+        String[] medicineManagementOptions ={"Add Medcicine", "View Medicine List", "Remove Medicine", "Refill Medicine", "Stock History", "Back"};
         UI.printBoxedMenu(medicineManagementOptions, "MEDICINE MANAGEMENT");
 
-        int choice = getIntInput(1, 4);
+        int choice = getIntInput(1, 6);
 
-        if (choice == 4) return;
+        if (choice == 6) return;
 
         switch (choice) {
             case 1 -> MedicineManager.addMedicine();
             case 2 -> MedicineManager.viewMedicineList(currentUser);
             case 3 -> MedicineManager.removeMedicine();
+            case 4 -> MedicineManager.refillMedicine();
+            case 5 -> MedicineManager.viewStockHistory();
         }
     }
 
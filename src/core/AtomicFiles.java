@@ -0,0 +1,36 @@
+package core;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.*;
+
+// Whole-file rewrites published by atomic rename.
+// The new version is written to "<file>.tmp" next to the file and moved over it with
+// ATOMIC_MOVE, so anyone opening the file gets the complete old version or the complete new
+// one, never a truncated or half-written file. Readers of such files need no lock: an open
+// reader keeps the version it opened. Writers still hold the file's UserLocks write lock, so
+// a rewrite cannot lose an append or another rewrite made at the same time.
+public class AtomicFiles {
+    // Writes the content of the new version
+    public interface Content {
+        void writeTo(BufferedWriter out) throws IOException;
+    }
+
+    // Replaces the file with a new version in the given charset, which must be the one its readers
+    // use. Nothing is replaced if writing fails.
+    public static void replace(String filePath, Charset charset, Content content) throws IOException {
+        Path target = Paths.get(filePath);
+        Path next = Paths.get(filePath + ".tmp");
+        if (target.getParent() != null) {
+            Files.createDirectories(target.getParent());
+        }
+        try (BufferedWriter out = Files.newBufferedWriter(next, charset)) {
+            content.writeTo(out);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(next);
+            throw e;
+        }
+        Files.move(next, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
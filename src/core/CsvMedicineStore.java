@@ -0,0 +1,162 @@
+package core;
+
+import core.io.CsvReader;
+import core.io.CsvWriter;
+import core.storage.MedicineStore;
+
+import java.io.*;
+import java.nio.charset.Charset;
+import java.util.*;
+import java.util.function.Consumer;
+
+// Medicines kept in medicines.txt as "username,name,dosage,quantity,times,startDate,endDate,expiryDate".
+// New medicines are appended and removal publishes a new version of the file by atomic
+// rename, so reads take no lock. Each medicines file is one partition. The quantity column
+// is the opening stock; the current stock comes from the stock ledger next to the file.
+@SuppressWarnings("try")
+class CsvMedicineStore implements MedicineStore {
+    private static final String FILE_NAME = "medicines.txt";
+
+    // Appends a new medicine to the file
+    @Override
+    public boolean add(Medicine medicine) {
+        String filePath = DataLayout.userFile(medicine.getUsername(), FILE_NAME);
+        ensureFileExists(filePath);
+
+        try (UserLocks.Held lock = UserLocks.write(filePath);
+             CsvWriter writer = new CsvWriter(new BufferedWriter(new FileWriter(filePath, true)))) {
+            medicine.write(writer);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return false;
+        }
+        return true;
+    }
+
+    // Retrieves all medicines added by a specific user
+    @Override
+    public List<Medicine> findByUser(String username) {
+        String filePath = DataLayout.userFile(username, FILE_NAME);
+        ensureFileExists(filePath);
+        List<Medicine> medicines = new ArrayList<>();
+
+        try (CsvReader reader = new CsvReader(new FileReader(filePath))) {
+            while (reader.next()) {
+                if (reader.fieldEquals(0, username) && isComplete(reader)) {
+                    medicines.add(Medicine.read(reader));
+                }
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        applyStock(filePath, medicines);
+        return medicines;
+    }
+
+    // Retrieves one medicine of a user by name, or null if the user has no such medicine
+    @Override
+    public Medicine find(String username, String medicineName) {
+        String filePath = DataLayout.userFile(username, FILE_NAME);
+        ensureFileExists(filePath);
+        Medicine medicine = null;
+
+        try (CsvReader reader = new CsvReader(new FileReader(filePath))) {
+            while (reader.next()) {
+                if (reader.fieldEquals(0, username) && reader.fieldEquals(1, medicineName) && isComplete(reader)) {
+                    medicine = Medicine.read(reader);
+                    break;
+                }
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        if (medicine != null) {
+            applyStock(filePath, List.of(medicine));
+        }
+        return medicine;
+    }
+
+    // Removes a specific medicine and returns true if removed, false otherwise. The rest of the
+    // file is copied to a new version that replaces it atomically.
+    @Override
+    public boolean remove(String username, String medicineName) {
+        String filePath = DataLayout.userFile(username, FILE_NAME);
+        ensureFileExists(filePath);
+        boolean[] removed = {false};
+
+        try (UserLocks.Held lock = UserLocks.write(filePath);
+             CsvReader reader = new CsvReader(new FileReader(filePath))) {
+            AtomicFiles.replace(filePath, Charset.defaultCharset(), out -> {
+                CsvWriter writer = new CsvWriter(out);
+                while (reader.next()) {
+                    if (reader.fieldEquals(0, username) && reader.fieldEquals(1, medicineName)) {
+                        removed[0] = true; // Mark as found and removed
+                        continue; // Skip copying this medicine to the new file
+                    }
+                    reader.writeRawRecord(out);
+                    writer.endRecord();
+                }
+            });
+        } catch (IOException e) {
+            e.printStackTrace();
+            return false;
+        }
+        return removed[0]; // Return true if at least one medicine was removed
+    }
+
+    // Every medicines file: the shared one, or one per user when sharded
+    @Override
+    public List<String> partitions() {
+        return DataLayout.allFiles(FILE_NAME);
+    }
+
+    // Calls the consumer for every medicine in a medicines file, whoever it belongs to
+    @Override
+    public void forEachIn(String filePath, Consumer<Medicine> consumer) {
+        ensureFileExists(filePath);
+        // Fetched before the medicines lock, since the ledger takes a lock of its own
+        Map<String, Integer> stock = StockLedger.quantitiesNextTo(filePath);
+
+        try (CsvReader reader = new CsvReader(new FileReader(filePath))) {
+            while (reader.next()) {
+                if (isComplete(reader)) {
+                    Medicine medicine = Medicine.read(reader);
+                    medicine.applyStock(stock);
+                    consumer.accept(medicine);
+                }
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    // Whether the current record is a whole medicine; the last one may still be being appended
+    private static boolean isComplete(CsvReader reader) {
+        return reader.isTerminated() && reader.fieldCount() >= 8;
+    }
+
+    // Replaces the quantities read from medicines.txt with the current ones from the stock ledger.
+    // Called after the medicines lock is released, since the ledger takes a lock of its own.
+    private static void applyStock(String filePath, List<Medicine> medicines) {
+        if (medicines.isEmpty()) {
+            return;
+        }
+        Map<String, Integer> stock = StockLedger.quantitiesNextTo(filePath);
+        for (Medicine medicine : medicines) {
+            medicine.applyStock(stock);
+        }
+    }
+
+    // Ensures the medicine file exists
+    private static void ensureFileExists(String filePath) {
+        File file = new File(filePath);
+        if (!file.exists()) {
+            try {
+                file.getParentFile().mkdirs();
+                file.createNewFile();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package core;
+
+import core.io.CsvReader;
+import core.io.CsvWriter;
+import core.storage.NotificationStore;
+
+import java.io.*;
+import java.nio.charset.Charset;
+import java.util.*;
+import java.util.function.Consumer;
+
+// Notifications kept in notifications.txt as "username,message,type,isProcessed".
+// New notifications are appended through the WriteBehindQueue, and duplicates are caught
+// by NotificationIndex before anything is queued. Marking one processed publishes a new
+// version of the file by atomic rename, so reads take no lock; they flush the queue for the
+// file first.
+@SuppressWarnings("try")
+class CsvNotificationStore implements NotificationStore {
+    private static final String FILE_NAME = "notifications.txt";
+
+    // Queues a notification for the notifications file. The dedup index learns of it first, so
+    // an identical notification raised before the queue is written is still caught, even if
+    // the first write fails and the record waits in the queue for a retry.
+    @Override
+    public boolean add(Notification notification) {
+        NotificationIndex.record(notification);
+        WriteBehindQueue.append(DataLayout.userFile(notification.getUsername(), FILE_NAME), notification,
+                CsvNotificationStore::appendAll);
+        return true;
+    }
+
+    // Appends a batch of queued notifications to their file through one writer
+    private static void appendAll(String filePath, List<Notification> notifications, boolean sync) throws IOException {
+        ensureFileExists(filePath);
+        try (UserLocks.Held lock = UserLocks.write(filePath);
+             FileOutputStream out = new FileOutputStream(filePath, true);
+             CsvWriter writer = new CsvWriter(new BufferedWriter(new OutputStreamWriter(out)))) {
+            for (Notification notification : notifications) {
+                notification.write(writer);
+            }
+            writer.flush();
+            if (sync) {
+                out.getFD().sync();
+            }
+        }
+    }
+
+    @Override
+    public boolean addIfAbsent(Notification notification) {
+        return NotificationIndex.addIfAbsent(notification, this);
+    }
+
+    // Calls the consumer for every notification in a notifications file, whoever it belongs to
+    static void forEachInFile(String filePath, Consumer<Notification> consumer) {
+        WriteBehindQueue.flush(filePath);
+        ensureFileExists(filePath);
+
+        try (CsvReader reader = new CsvReader(new FileReader(filePath))) {
+            while (reader.next()) {
+                if (isComplete(reader)) {
+                    consumer.accept(Notification.read(reader));
+                }
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    // Retrieves all notifications for a specific user
+    @Override
+    public List<Notification> findByUser(String username) {
+        String filePath = DataLayout.userFile(username, FILE_NAME);
+        WriteBehindQueue.flush(filePath);
+        ensureFileExists(filePath);
+        List<Notification> notifications = new ArrayList<>();
+
+        try (CsvReader reader = new CsvReader(new FileReader(filePath))) {
+            while (reader.next()) {
+                if (reader.fieldEquals(0, username) && isComplete(reader)) {
+                    notifications.add(Notification.read(reader));
+                }
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        return notifications;
+    }
+
+    // Marks notifications as processed by publishing a new version of the file
+    @Override
+    public void markProcessed(String username, Set<String> messages) {
+        if (messages.isEmpty()) {
+            return;
+        }
+        String filePath = DataLayout.userFile(username, FILE_NAME);
+        WriteBehindQueue.flush(filePath);
+        ensureFileExists(filePath);
+
+        try (UserLocks.Held lock = UserLocks.write(filePath);
+             CsvReader reader = new CsvReader(new FileReader(filePath))) {
+            AtomicFiles.replace(filePath, Charset.defaultCharset(), out -> {
+                CsvWriter writer = new CsvWriter(out);
+                while (reader.next()) {
+                    if (reader.fieldCount() >= 4 && reader.fieldEquals(0, username) && messages.contains(reader.field(1))) {
+                        Notification notification = Notification.read(reader);
+                        notification.markProcessed();  // Set the notification as processed
+                        notification.write(writer);
+                    } else {
+                        reader.writeRawRecord(out);
+                        writer.endRecord();
+                    }
+                }
+            });
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    // Whether the current record is a whole notification; the last one may still be being appended
+    private static boolean isComplete(CsvReader reader) {
+        return reader.isTerminated() && reader.fieldCount() >= 4;
+    }
+
+    // Ensures the notifications file exists
+    private static void ensureFileExists(String filePath) {
+        File file = new File(filePath);
+        if (!file.exists()) {
+            try {
+                file.getParentFile().mkdirs();
+                file.createNewFile();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+}
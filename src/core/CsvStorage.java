@@ -0,0 +1,118 @@
+package core;
+
+import core.storage.*;
+
+import java.io.IOException;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.Iterator;
+import java.util.List;
+import java.util.function.Consumer;
+
+// The CSV text file backend, selected with -Dstorage.backend=csv (the default).
+// Users live in users.txt behind UserDirectory, medicines in medicines.txt, reminders in
+// reminders.txt with its journal behind ReminderRepository, notifications in
+// notifications.txt and dose history in the binary segments of DoseHistorySegments, laid
+// out flat or per user as DataLayout says.
+public class CsvStorage implements StorageBackend {
+    public static final String NAME = "csv";
+
+    private final UserStore users = new Users();
+    private final MedicineStore medicines = new CsvMedicineStore();
+    private final ReminderStore reminders = new Reminders();
+    private final NotificationStore notifications = new CsvNotificationStore();
+    private final DoseHistoryStore doseHistory = new DoseHistories();
+
+    @Override
+    public String name() {
+        return NAME;
+    }
+
+    @Override
+    public UserStore users() {
+        return users;
+    }
+
+    @Override
+    public MedicineStore medicines() {
+        return medicines;
+    }
+
+    @Override
+    public ReminderStore reminders() {
+        return reminders;
+    }
+
+    @Override
+    public NotificationStore notifications() {
+        return notifications;
+    }
+
+    @Override
+    public DoseHistoryStore doseHistory() {
+        return doseHistory;
+    }
+
+    private static class Users implements UserStore {
+        @Override
+        public User find(String username) {
+            return UserDirectory.get(username);
+        }
+
+        @Override
+        public Registration register(User user) {
+            return UserDirectory.register(user);
+        }
+
+        @Override
+        public void forEach(Consumer<User> consumer) {
+            UserDirectory.forEach(consumer);
+        }
+    }
+
+    private static class Reminders implements ReminderStore {
+        @Override
+        public List<Reminder> findByMedicine(String username, String medicineName) {
+            return ReminderRepository.findByMedicine(username, medicineName);
+        }
+
+        @Override
+        public List<Reminder> findBetween(String username, String medicineName, LocalDateTime from, LocalDateTime to) {
+            return ReminderRepository.findBetween(username, medicineName, from, to);
+        }
+
+        @Override
+        public Reminder findFirstPending(String username, String medicineName, LocalDateTime from) {
+            return ReminderRepository.findFirstPending(username, medicineName, from);
+        }
+
+        @Override
+        public boolean add(Reminder reminder) {
+            return ReminderRepository.add(reminder);
+        }
+
+        @Override
+        public int addAll(String username, Iterator<Reminder> reminders, int batchSize) throws IOException {
+            return ReminderRepository.addAll(username, reminders, batchSize);
+        }
+
+        @Override
+        public Marking markAsTaken(String username, String medicineName, LocalDate date, LocalTime time) {
+            return ReminderRepository.markAsTaken(username, medicineName, date, time);
+        }
+    }
+
+    // Also used by the paged backend, whose store has no place for an append-only history
+    static class DoseHistories implements DoseHistoryStore {
+        @Override
+        public void append(DoseHistory doseHistory) {
+            DoseHistorySegments.append(doseHistory);
+        }
+
+        @Override
+        public List<DoseHistory> findByUser(String username) {
+            return DoseHistorySegments.readByUser(username);
+        }
+    }
+}
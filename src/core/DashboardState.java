@@ -0,0 +1,177 @@
+package core;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Per-session cache of what the console dashboard shows: the user's medicines, the next
+// pending dose of each, and the counts of pending and missed-dose notifications. The API
+// server keeps one per logged-in user too, shared by that user's request threads.
+// Each part is read from the stores the first time it is needed and kept until a change made
+// through Medicine, Reminder or Notification marks it dirty; the dashboard then re-reads only
+// that part. The due-dose scan runs only when the schedule changed or the earliest cached
+// dose has fallen due, so an idle dashboard loop reads and writes no files. The user's own
+// medicines are checked for expiry when they change and once a day; other users' medicines
+// are left to the sweep of the API server and the ExpiryIndex tool.
+// Changes made by another process (the API server, the tools) show up at the next login.
+public class DashboardState {
+    private static final Map<String, DashboardState> sessions = new ConcurrentHashMap<>();
+
+    private final String username;
+
+    // Set from any thread by the change hooks, cleared before the part is re-read
+    private volatile boolean medicinesDirty = true;
+    private volatile boolean dosesDirty = true;
+    private volatile boolean notificationsDirty = true;
+    private volatile boolean scanNeeded = true;
+
+    private List<Medicine> medicines = List.of();
+    private Map<String, LocalDateTime> nextDoses = Map.of();
+    private LocalDateTime nextDue = null;       // Earliest of nextDoses, or null if nothing is pending
+    private LocalDateTime scannedThrough = null; // Time of the last due-dose scan
+    private int pendingCount = 0;
+    private int missedCount = 0;
+    private LocalDate expiryCheckedOn = null;         // Day of the last expiry check
+    private List<Medicine> expiryCheckedFor = null;   // Medicines it checked
+
+    private DashboardState(String username) {
+        this.username = username;
+    }
+
+    // Returns the state of a logged-in user, creating it on first use
+    public static DashboardState open(String username) {
+        return sessions.computeIfAbsent(username, DashboardState::new);
+    }
+
+    // Drops the state at logout
+    public static void close(String username) {
+        sessions.remove(username);
+    }
+
+    // Change hooks, called after the stores were updated
+    static void medicinesChanged(String username) {
+        DashboardState state = sessions.get(username);
+        if (state != null) {
+            state.medicinesDirty = true;
+            state.dosesDirty = true;
+            state.scanNeeded = true;
+        }
+    }
+
+    static void remindersChanged(String username) {
+        DashboardState state = sessions.get(username);
+        if (state != null) {
+            state.dosesDirty = true;
+            state.scanNeeded = true;
+        }
+    }
+
+    static void notificationsChanged(String username) {
+        DashboardState state = sessions.get(username);
+        if (state != null) {
+            state.notificationsDirty = true;
+        }
+    }
+
+    // Raises the notifications that fell due or were missed since the last pass, if any can have
+    public synchronized void refresh() {
+        LocalDateTime now = LocalDateTime.now();
+        checkExpiry(now.toLocalDate());
+        loadNextDoses();
+        if (scanNeeded || (nextDue != null && !nextDue.isAfter(now))) {
+            scanNeeded = false;
+            ReminderScanner.scanDue(username);
+            scannedThrough = now;
+            dosesDirty = true; // The doses that fell due are no longer next
+        }
+        ReminderScanner.scanMissed(username);
+    }
+
+    public synchronized List<Medicine> getMedicines() {
+        if (medicinesDirty) {
+            medicinesDirty = false;
+            medicines = Medicine.getUserMedicines(username);
+        }
+        return medicines;
+    }
+
+    // Next pending dose per medicine name, in medicine order; medicines with none are left out
+    public synchronized Map<String, LocalDateTime> getNextDoses() {
+        loadNextDoses();
+        return nextDoses;
+    }
+
+    // Earliest pending dose over all medicines, or null if there is none
+    public Map.Entry<String, LocalDateTime> getNextDose() {
+        Map.Entry<String, LocalDateTime> next = null;
+        for (Map.Entry<String, LocalDateTime> dose : getNextDoses().entrySet()) {
+            if (next == null || dose.getValue().isBefore(next.getValue())) {
+                next = dose;
+            }
+        }
+        return next;
+    }
+
+    // Unprocessed dose, refill and expiry notifications
+    public synchronized int getPendingCount() {
+        loadNotifications();
+        return pendingCount;
+    }
+
+    // Missed-dose notifications
+    public synchronized int getMissedCount() {
+        loadNotifications();
+        return missedCount;
+    }
+
+    private void checkExpiry(LocalDate today) {
+        List<Medicine> current = getMedicines();
+        if (!today.equals(expiryCheckedOn) || current != expiryCheckedFor) {
+            ExpiryIndex.sweep(username, current, today);
+            expiryCheckedOn = today;
+            expiryCheckedFor = current;
+        }
+    }
+
+    private void loadNextDoses() {
+        if (!dosesDirty) {
+            return;
+        }
+        dosesDirty = false;
+        // From the last scan, so nothing between the scan and now is skipped by refresh()
+        LocalDateTime from = scannedThrough != null ? scannedThrough : LocalDateTime.now();
+        Map<String, LocalDateTime> doses = new LinkedHashMap<>();
+        LocalDateTime earliest = null;
+        for (Medicine medicine : getMedicines()) {
+            Reminder reminder = Reminder.getNextPendingReminder(username, medicine.getName(), from);
+            if (reminder != null) {
+                LocalDateTime dateTime = LocalDateTime.of(reminder.getDate(), reminder.getTime());
+                doses.put(medicine.getName(), dateTime);
+                if (earliest == null || dateTime.isBefore(earliest)) {
+                    earliest = dateTime;
+                }
+            }
+        }
+        nextDoses = doses;
+        nextDue = earliest;
+    }
+
+    private void loadNotifications() {
+        if (!notificationsDirty) {
+            return;
+        }
+        notificationsDirty = false;
+        int pending = 0;
+        int missed = 0;
+        for (Notification notification : Notification.getUserNotifications(username)) {
+            if (notification.getType() == NotificationType.MISSED_DOSE) {
+                missed++;
+            } else if (!notification.isProcessed()) {
+                pending++;
+            }
+        }
+        pendingCount = pending;
+        missedCount = missed;
+    }
+}
@@ -0,0 +1,108 @@
+package core;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+// Resolves where each data file lives.
+// In the flat layout every user shares data/medicines.txt, data/reminders.txt and so on.
+// In the sharded layout, created by ShardMigration, each user has their own directory
+// data/users/<hash>/<username>/ holding the same files with only that user's rows, so
+// per-user reads never touch anyone else's data. users.txt stays global in both layouts
+// because login has to find the user before knowing their shard.
+public class DataLayout {
+    private static final String USERS_DIRECTORY = "users";
+    private static final String SHARDED_MARKER = ".sharded";
+
+    private static Boolean sharded = null;
+    private static String checkedRoot = null;
+
+    // Root data directory, overridable with -Dmedicine.data.dir
+    public static String root() {
+        return System.getProperty("medicine.data.dir", "data");
+    }
+
+    // Whether the data directory has been migrated to the per-user layout
+    public static synchronized boolean isSharded() {
+        if (sharded == null || !root().equals(checkedRoot)) {
+            checkedRoot = root();
+            sharded = new File(usersDirectory(), SHARDED_MARKER).exists();
+        }
+        return sharded;
+    }
+
+    // Path of a file shared by all users, such as users.txt
+    public static String globalFile(String fileName) {
+        return new File(root(), fileName).getPath();
+    }
+
+    // Path of the file holding one user's rows
+    public static String userFile(String username, String fileName) {
+        if (!isSharded()) {
+            return globalFile(fileName);
+        }
+        return new File(userDirectory(username), fileName).getPath();
+    }
+
+    // Directory holding one user's files in the sharded layout
+    public static File userDirectory(String username) {
+        return new File(new File(usersDirectory(), shardOf(username)), directoryName(username));
+    }
+
+    // Every existing copy of a per-user file: the global file in the flat layout, or one per user when sharded
+    public static List<String> allFiles(String fileName) {
+        List<String> files = new ArrayList<>();
+        if (!isSharded()) {
+            files.add(globalFile(fileName));
+            return files;
+        }
+
+        File[] shards = usersDirectory().listFiles(File::isDirectory);
+        if (shards == null) {
+            return files;
+        }
+        for (File shard : shards) {
+            File[] users = shard.listFiles(File::isDirectory);
+            if (users == null) {
+                continue;
+            }
+            for (File user : users) {
+                File file = new File(user, fileName);
+                if (file.exists()) {
+                    files.add(file.getPath());
+                }
+            }
+        }
+        return files;
+    }
+
+    // Writes the marker that switches the data directory to the sharded layout
+    static synchronized void markSharded() throws IOException {
+        File marker = new File(usersDirectory(), SHARDED_MARKER);
+        marker.getParentFile().mkdirs();
+        marker.createNewFile();
+        checkedRoot = root();
+        sharded = true;
+    }
+
+    // Two hex digits of the username hash, spreading users over 256 shard directories
+    static String shardOf(String username) {
+        return String.format("%02x", username.hashCode() & 0xff);
+    }
+
+    private static File usersDirectory() {
+        return new File(root(), USERS_DIRECTORY);
+    }
+
+    // Usernames are encoded so they are always a single safe path segment
+    private static String directoryName(String username) {
+        String encoded = URLEncoder.encode(username, StandardCharsets.UTF_8);
+        if (encoded.equals(".") || encoded.equals("..")) {
+            encoded = encoded.replace(".", "%2E");
+        }
+        return encoded;
+    }
+}
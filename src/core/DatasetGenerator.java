@@ -0,0 +1,437 @@
+package core;
+
+import java.io.*;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.*;
+import java.util.concurrent.*;
+
+// Synthetic data set generator for benchmarks and load tests.
+// Writes users.txt, medicines.txt, reminders.txt, dose_history.txt and notifications.txt in
+// the flat layout and in the formats the application reads. Every user gets their own random
+// stream derived from the seed, so the output is identical for a given seed however many
+// threads write it. Users are split into contiguous ranges that are written in parallel to
+// part files, which are then concatenated in order.
+//
+// Reminders before --today are taken with probability --taken; every taken reminder has a
+// dose history row and every missed one a processed MISSED_DOSE notification, as the
+// application itself would have recorded them. Run ShardMigration afterwards for the
+// per-user layout.
+//
+// Run with: java -cp bin core.DatasetGenerator --users=100000 --medicines=5 --seed=42
+public class DatasetGenerator {
+    private static final String[] OUTPUT_FILES = {
+            "users.txt", "medicines.txt", "reminders.txt", "dose_history.txt", "notifications.txt"
+    };
+    private static final int USERS = 0, MEDICINES = 1, REMINDERS = 2, DOSE_HISTORY = 3, NOTIFICATIONS = 4;
+
+    // Files derived from the CSV files; they would describe the old data, so they are removed
+    private static final String[] DERIVED_FILES = {
+            "reminders.journal", "schedule_exceptions.txt", "scan_watermarks.txt", "stock_ledger.txt",
+            "stock_snapshot.txt"
+    };
+
+    private static final String[] FIRST_NAMES = {"Amina", "Rahim", "Nadia", "Karim", "Sara", "Tanvir", "Lena", "Omar"};
+    private static final String[] LAST_NAMES = {"Rahman", "Hossain", "Chowdhury", "Islam", "Ahmed", "Khan", "Das", "Roy"};
+    private static final String[] DOSAGES = {"5 mg", "10 mg", "50 mg", "100 mg", "250 mg", "500 mg", "1 tab", "2 tabs"};
+    private static final Gender[] GENDERS = Gender.values();
+    private static final int[] MINUTES = {0, 15, 30, 45};
+
+    private static final byte[] NEWLINE = System.lineSeparator().getBytes(StandardCharsets.US_ASCII);
+
+    // Generation settings, all overridable from the command line
+    public static class Options {
+        public int users = 1000;
+        public int medicinesPerUser = 5;
+        public int minDosesPerDay = 1;
+        public int maxDosesPerDay = 3;
+        public int minCourseDays = 7;
+        public int maxCourseDays = 90;
+        public double takenFraction = 0.8;
+        public long seed = 42;
+        public LocalDate today = LocalDate.of(2025, 6, 1);
+        public int threads = Runtime.getRuntime().availableProcessors();
+        public String output = DataLayout.root();
+        public boolean force = false;
+    }
+
+    // Row counts per output file, in OUTPUT_FILES order
+    public static class Result {
+        private final long[] rows;
+        private final long elapsedNanos;
+
+        Result(long[] rows, long elapsedNanos) {
+            this.rows = rows;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        public long getRows(String fileName) {
+            return rows[Arrays.asList(OUTPUT_FILES).indexOf(fileName)];
+        }
+
+        public long getTotalRows() {
+            return Arrays.stream(rows).sum();
+        }
+
+        public long getElapsedMillis() {
+            return elapsedNanos / 1_000_000;
+        }
+    }
+
+    public static void main(String[] args) {
+        Options options = new Options();
+        try {
+            for (String arg : args) {
+                parseOption(options, arg);
+            }
+            validate(options);
+        } catch (IllegalArgumentException e) {
+            System.err.printf("\n⚠ %s\n", e.getMessage());
+            System.out.println("Usage: java -cp bin core.DatasetGenerator [--users=N] [--medicines=M] [--doses=MIN-MAX]"
+                    + " [--course=MIN-MAX] [--taken=FRACTION] [--seed=S] [--today=YYYY-MM-DD] [--threads=T]"
+                    + " [--out=DIR] [--force]");
+            return;
+        }
+
+        try {
+            Result result = generate(options);
+            for (int i = 0; i < OUTPUT_FILES.length; i++) {
+                System.out.println("Wrote " + result.rows[i] + " rows to " + OUTPUT_FILES[i]);
+            }
+            long millis = Math.max(1, result.getElapsedMillis());
+            System.out.println("Generated " + result.getTotalRows() + " rows in " + millis + " ms ("
+                    + result.getTotalRows() * 1000 / millis + " rows/s)");
+        } catch (IOException e) {
+            System.err.printf("\n⚠ Generation failed: %s\n", e.getMessage());
+        }
+    }
+
+    // Username of the user with the given index
+    public static String username(int index) {
+        return String.format("user%07d", index);
+    }
+
+    // Name of a user's medicine with the given index
+    public static String medicineName(int index) {
+        return String.format("Med%03d", index);
+    }
+
+    // Writes a complete data set into options.output, replacing the files listed above
+    public static Result generate(Options options) throws IOException {
+        validate(options);
+        Path output = Paths.get(options.output);
+        Files.createDirectories(output);
+        if (!options.force && Files.exists(output.resolve("users.txt")) && Files.size(output.resolve("users.txt")) > 0) {
+            throw new IOException(output.resolve("users.txt") + " already has users, use --force to overwrite");
+        }
+        if (Files.exists(output.resolve("users").resolve(".sharded"))) {
+            throw new IOException(output + " uses the per-user layout, generate into an empty directory instead");
+        }
+
+        long started = System.nanoTime();
+        int partitions = Math.max(1, Math.min(options.users, options.threads * 4));
+        Path parts = Files.createTempDirectory(output, ".parts");
+        ExecutorService pool = Executors.newFixedThreadPool(options.threads);
+        long[] rows = new long[OUTPUT_FILES.length];
+
+        try {
+            List<Future<long[]>> futures = new ArrayList<>();
+            for (int p = 0; p < partitions; p++) {
+                int from = (int) ((long) options.users * p / partitions);
+                int to = (int) ((long) options.users * (p + 1) / partitions);
+                int partition = p;
+                futures.add(pool.submit(() -> writePartition(options, parts, partition, from, to)));
+            }
+            for (Future<long[]> future : futures) {
+                long[] partRows = future.get();
+                for (int i = 0; i < rows.length; i++) {
+                    rows[i] += partRows[i];
+                }
+            }
+
+            for (String fileName : OUTPUT_FILES) {
+                concatenate(parts, fileName, partitions, output.resolve(fileName));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Generation interrupted", e);
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException(e.getCause());
+        } finally {
+            pool.shutdownNow();
+            deleteTree(parts);
+        }
+
+        for (String fileName : DERIVED_FILES) {
+            Files.deleteIfExists(output.resolve(fileName));
+        }
+        deleteTree(output.resolve("dose_history"));
+
+        return new Result(rows, System.nanoTime() - started);
+    }
+
+    // Writes the rows of users [from, to) to this partition's part files
+    private static long[] writePartition(Options options, Path parts, int partition, int from, int to) throws IOException {
+        RowWriter[] writers = new RowWriter[OUTPUT_FILES.length];
+        try {
+            for (int i = 0; i < OUTPUT_FILES.length; i++) {
+                writers[i] = new RowWriter(Files.newOutputStream(partFile(parts, OUTPUT_FILES[i], partition)));
+            }
+            for (int user = from; user < to; user++) {
+                writeUser(options, user, writers);
+            }
+        } finally {
+            for (RowWriter writer : writers) {
+                if (writer != null) {
+                    writer.close();
+                }
+            }
+        }
+
+        long[] rows = new long[OUTPUT_FILES.length];
+        for (int i = 0; i < rows.length; i++) {
+            rows[i] = writers[i].rows;
+        }
+        return rows;
+    }
+
+    private static void writeUser(Options options, int userIndex, RowWriter[] writers) throws IOException {
+        SplittableRandom random = new SplittableRandom(options.seed ^ (userIndex * 0x9E3779B97F4A7C15L));
+        byte[] username = username(userIndex).getBytes(StandardCharsets.US_ASCII);
+
+        writers[USERS].bytes(username).comma().ascii("password").comma()
+                .ascii(FIRST_NAMES[random.nextInt(FIRST_NAMES.length)]).comma()
+                .ascii(LAST_NAMES[random.nextInt(LAST_NAMES.length)]).comma()
+                .ascii(GENDERS[random.nextInt(GENDERS.length)].name()).comma()
+                .number(random.nextInt(18, 91)).endRow();
+
+        for (int m = 0; m < options.medicinesPerUser; m++) {
+            byte[] medicine = medicineName(m).getBytes(StandardCharsets.US_ASCII);
+            LocalTime[] times = randomTimes(random, random.nextInt(options.minDosesPerDay, options.maxDosesPerDay + 1));
+            int courseDays = random.nextInt(options.minCourseDays, options.maxCourseDays + 1);
+            LocalDate startDate = options.today.minusDays(random.nextInt(0, options.maxCourseDays + 1));
+            LocalDate endDate = startDate.plusDays(courseDays - 1);
+            LocalDate expiryDate = endDate.plusDays(random.nextInt(30, 721));
+
+            RowWriter medicines = writers[MEDICINES];
+            medicines.bytes(username).comma().bytes(medicine).comma()
+                    .ascii(DOSAGES[random.nextInt(DOSAGES.length)]).comma()
+                    .number(random.nextInt(10, 201)).comma();
+            for (LocalTime time : times) {
+                medicines.time(time).ascii(";");
+            }
+            medicines.comma().date(startDate).comma().date(endDate).comma().date(expiryDate).endRow();
+
+            // Same order as schedule generation: time by time, each over the whole course
+            for (LocalTime time : times) {
+                for (LocalDate date = startDate; !date.isAfter(endDate); date = date.plusDays(1)) {
+                    boolean past = date.isBefore(options.today);
+                    boolean taken = past && random.nextDouble() < options.takenFraction;
+
+                    writers[REMINDERS].bytes(username).comma().bytes(medicine).comma()
+                            .time(time).comma().date(date).comma().ascii(taken ? "true" : "false").endRow();
+
+                    if (taken) {
+                        int delaySeconds = random.nextInt(0, 1800);
+                        LocalTime takenAt = time.plusSeconds(delaySeconds);
+                        LocalDate takenOn = takenAt.isBefore(time) ? date.plusDays(1) : date;
+                        writers[DOSE_HISTORY].bytes(username).comma().bytes(medicine).comma()
+                                .date(date).ascii(" ").seconds(time).comma()
+                                .date(takenOn).ascii(" ").seconds(takenAt).endRow();
+                    } else if (past) {
+                        writers[NOTIFICATIONS].bytes(username).comma().bytes(medicine)
+                                .ascii(" missed at ").time(time).ascii(" on ").date(date)
+                                .comma().ascii(NotificationType.MISSED_DOSE.name()).comma().ascii("true").endRow();
+                    }
+                }
+            }
+        }
+    }
+
+    // Distinct dose times between 06:00 and 22:45, sorted
+    private static LocalTime[] randomTimes(SplittableRandom random, int count) {
+        TreeSet<Integer> hours = new TreeSet<>();
+        while (hours.size() < Math.min(count, 17)) {
+            hours.add(random.nextInt(6, 23));
+        }
+        LocalTime[] times = new LocalTime[hours.size()];
+        int i = 0;
+        for (int hour : hours) {
+            times[i++] = LocalTime.of(hour, MINUTES[random.nextInt(MINUTES.length)]);
+        }
+        return times;
+    }
+
+    // Appends the part files of one output file, in partition order, to the final file
+    private static void concatenate(Path parts, String fileName, int partitions, Path target) throws IOException {
+        try (FileChannel out = FileChannel.open(target, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            for (int p = 0; p < partitions; p++) {
+                try (FileChannel in = FileChannel.open(partFile(parts, fileName, p), StandardOpenOption.READ)) {
+                    long position = 0;
+                    long size = in.size();
+                    while (position < size) {
+                        position += in.transferTo(position, size - position, out);
+                    }
+                }
+            }
+        }
+    }
+
+    private static Path partFile(Path parts, String fileName, int partition) {
+        return parts.resolve(fileName + "." + partition);
+    }
+
+    private static void deleteTree(Path path) throws IOException {
+        if (!Files.exists(path)) {
+            return;
+        }
+        try (java.util.stream.Stream<Path> paths = Files.walk(path)) {
+            for (Path file : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator) {
+                Files.delete(file);
+            }
+        }
+    }
+
+    private static void parseOption(Options options, String arg) {
+        String[] pair = arg.split("=", 2);
+        String value = pair.length > 1 ? pair[1] : "";
+        try {
+            switch (pair[0]) {
+                case "--users" -> options.users = Integer.parseInt(value);
+                case "--medicines" -> options.medicinesPerUser = Integer.parseInt(value);
+                case "--doses" -> {
+                    int[] range = parseRange(value);
+                    options.minDosesPerDay = range[0];
+                    options.maxDosesPerDay = range[1];
+                }
+                case "--course" -> {
+                    int[] range = parseRange(value);
+                    options.minCourseDays = range[0];
+                    options.maxCourseDays = range[1];
+                }
+                case "--taken" -> options.takenFraction = Double.parseDouble(value);
+                case "--seed" -> options.seed = Long.parseLong(value);
+                case "--today" -> options.today = LocalDate.parse(value);
+                case "--threads" -> options.threads = Integer.parseInt(value);
+                case "--out" -> options.output = value;
+                case "--force" -> options.force = true;
+                default -> throw new IllegalArgumentException("Unknown option " + arg);
+            }
+        } catch (NumberFormatException | java.time.format.DateTimeParseException e) {
+            throw new IllegalArgumentException("Invalid value in " + arg);
+        }
+    }
+
+    private static void validate(Options options) {
+        if (options.users < 0 || options.medicinesPerUser < 0 || options.minDosesPerDay < 1
+                || options.maxDosesPerDay < options.minDosesPerDay || options.minCourseDays < 1
+                || options.maxCourseDays < options.minCourseDays || options.takenFraction < 0
+                || options.takenFraction > 1 || options.threads < 1) {
+            throw new IllegalArgumentException("Invalid generator options");
+        }
+    }
+
+    // "3" or "1-3"
+    private static int[] parseRange(String value) {
+        String[] bounds = value.split("-", 2);
+        int min = Integer.parseInt(bounds[0]);
+        return new int[]{min, bounds.length > 1 ? Integer.parseInt(bounds[1]) : min};
+    }
+
+    // Buffered ASCII row writer; dates and times are formatted into the buffer directly
+    private static class RowWriter implements Closeable {
+        private final OutputStream out;
+        private final byte[] buffer = new byte[1 << 20];
+        private int position = 0;
+        private long rows = 0;
+
+        RowWriter(OutputStream out) {
+            this.out = out;
+        }
+
+        RowWriter bytes(byte[] data) throws IOException {
+            ensure(data.length);
+            System.arraycopy(data, 0, buffer, position, data.length);
+            position += data.length;
+            return this;
+        }
+
+        RowWriter ascii(String text) throws IOException {
+            ensure(text.length());
+            for (int i = 0; i < text.length(); i++) {
+                buffer[position++] = (byte) text.charAt(i);
+            }
+            return this;
+        }
+
+        RowWriter comma() throws IOException {
+            ensure(1);
+            buffer[position++] = ',';
+            return this;
+        }
+
+        RowWriter number(int value) throws IOException {
+            return ascii(Integer.toString(value));
+        }
+
+        // yyyy-MM-dd
+        RowWriter date(LocalDate date) throws IOException {
+            ensure(10);
+            digits(date.getYear(), 4);
+            buffer[position++] = '-';
+            digits(date.getMonthValue(), 2);
+            buffer[position++] = '-';
+            digits(date.getDayOfMonth(), 2);
+            return this;
+        }
+
+        // HH:mm, as LocalTime.toString writes whole minutes
+        RowWriter time(LocalTime time) throws IOException {
+            ensure(5);
+            digits(time.getHour(), 2);
+            buffer[position++] = ':';
+            digits(time.getMinute(), 2);
+            return this;
+        }
+
+        // HH:mm:ss
+        RowWriter seconds(LocalTime time) throws IOException {
+            time(time);
+            ensure(3);
+            buffer[position++] = ':';
+            digits(time.getSecond(), 2);
+            return this;
+        }
+
+        void endRow() throws IOException {
+            bytes(NEWLINE);
+            rows++;
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.write(buffer, 0, position);
+            position = 0;
+            out.close();
+        }
+
+        private void digits(int value, int width) {
+            for (int i = width - 1; i >= 0; i--) {
+                buffer[position + i] = (byte) ('0' + value % 10);
+                value /= 10;
+            }
+            position += width;
+        }
+
+        private void ensure(int length) throws IOException {
+            if (position + length > buffer.length) {
+                out.write(buffer, 0, position);
+                position = 0;
+            }
+        }
+    }
+}
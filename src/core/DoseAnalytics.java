@@ -0,0 +1,372 @@
+package core;
+
+import core.storage.MedicineStore;
+import core.storage.Storage;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.ZoneOffset;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import UI.*;
+
+// Adherence analytics over the dose history.
+// The binary history is streamed once, record by record, and folded into per-medicine
+// summaries: how many of the doses due so far were taken, how late they were (p50/p90/p99
+// through a mergeable QuantileSketch) and, for a single user, the current and longest runs
+// of days on which every due dose was taken. Memory depends on the number of medicines and
+// course days, never on the size of the history.
+// The population report splits the work into one unit per medicine store partition and one per
+// history segment, scans them on the fork-join pool and merges the partial summaries. A history
+// unit looks up the medicine of each (user, medicine) pair it meets once, and counts a taken
+// dose only if it falls in that medicine's course up to now, the window forUser counts in.
+//
+// Run with: java -cp bin core.DoseAnalytics
+public class DoseAnalytics {
+    // Units a fork-join leaf scans on its own before merging
+    private static final int UNITS_PER_TASK = 16;
+
+    // Adherence figures of one medicine, one user or the whole population
+    public static class Summary {
+        private long scheduled = 0;
+        private long taken = 0;
+        private final QuantileSketch lateness = new QuantileSketch(); // Seconds after the scheduled time
+        private int currentStreak = 0;
+        private int longestStreak = 0;
+
+        // Share of the doses due so far that were taken, from 0 to 1
+        public double getAdherence() {
+            return scheduled == 0 ? 0 : (double) taken / scheduled;
+        }
+
+        // Minutes late at the given quantile (0 to 1) of the taken doses
+        public double getLatenessMinutes(double quantile) {
+            return lateness.quantile(quantile) / 60;
+        }
+
+        public long getScheduled() {
+            return scheduled;
+        }
+
+        public long getTaken() {
+            return taken;
+        }
+
+        public int getCurrentStreak() {
+            return currentStreak;
+        }
+
+        public int getLongestStreak() {
+            return longestStreak;
+        }
+
+        // Streaks are per user and are not carried across a merge
+        void merge(Summary other) {
+            scheduled += other.scheduled;
+            taken += other.taken;
+            lateness.merge(other.lateness);
+        }
+
+        void recordLateness(long scheduledEpochSecond, long takenEpochSecond) {
+            lateness.add(Math.max(0, takenEpochSecond - scheduledEpochSecond));
+        }
+    }
+
+    // Overall summary plus one summary per medicine name
+    public static class Report {
+        private final Summary overall = new Summary();
+        private final Map<String, Summary> byMedicine = new TreeMap<>();
+
+        public Summary getOverall() {
+            return overall;
+        }
+
+        public Map<String, Summary> getByMedicine() {
+            return byMedicine;
+        }
+
+        Summary medicine(String medicineName) {
+            return byMedicine.computeIfAbsent(medicineName, name -> new Summary());
+        }
+
+        Report merge(Report other) {
+            overall.merge(other.overall);
+            other.byMedicine.forEach((name, summary) -> medicine(name).merge(summary));
+            return this;
+        }
+    }
+
+    // Report for one user's medicines, including streaks
+    public static Report forUser(String username, LocalDateTime now) {
+        Report report = new Report();
+        Map<String, Course> courses = new HashMap<>();
+        for (Medicine medicine : Medicine.getUserMedicines(username)) {
+            courses.put(medicine.getName(), new Course(medicine, now));
+            report.medicine(medicine.getName());
+        }
+
+        String directory = DoseHistorySegments.directoryOf(username);
+        int userId = DoseHistorySegments.userIdOf(directory, username);
+        long nowEpochSecond = DoseHistorySegments.toEpochSecond(now);
+        if (userId >= 0) {
+            Map<Integer, String> names = new HashMap<>();
+            int segments = DoseHistorySegments.segmentCount(directory);
+            for (int segment = 0; segment < segments; segment++) {
+                DoseHistorySegments.scanSegment(directory, segment, (user, medicineId, scheduled, taken) -> {
+                    if (user != userId) {
+                        return;
+                    }
+                    String name = names.computeIfAbsent(medicineId, id -> DoseHistorySegments.nameOf(directory, id));
+                    report.medicine(name).recordLateness(scheduled, taken);
+                    report.overall.recordLateness(scheduled, taken);
+                    Course course = courses.get(name);
+                    if (course != null && scheduled <= nowEpochSecond) {
+                        course.countTaken(scheduled);
+                    }
+                });
+            }
+        }
+
+        // Fold the per-day counts into totals and streaks, per medicine and for the user as a whole
+        LocalDate today = now.toLocalDate();
+        LocalDate first = today;
+        for (Course course : courses.values()) {
+            if (course.start.isBefore(first)) {
+                first = course.start;
+            }
+        }
+        int days = (int) (today.toEpochDay() - first.toEpochDay()) + 1;
+        boolean[] due = new boolean[days];
+        boolean[] missed = new boolean[days];
+
+        for (Map.Entry<String, Course> entry : courses.entrySet()) {
+            Course course = entry.getValue();
+            Summary summary = report.medicine(entry.getKey());
+            boolean[] medicineDue = new boolean[days];
+            boolean[] medicineMissed = new boolean[days];
+            for (int day = 0; day < course.taken.length; day++) {
+                int expected = course.expected(day);
+                if (expected == 0) {
+                    continue;
+                }
+                int index = (int) (course.start.toEpochDay() - first.toEpochDay()) + day;
+                summary.scheduled += expected;
+                summary.taken += Math.min(course.taken[day], expected);
+                medicineDue[index] = due[index] = true;
+                if (course.taken[day] < expected) {
+                    medicineMissed[index] = missed[index] = true;
+                }
+            }
+            setStreaks(summary, medicineDue, medicineMissed);
+            report.overall.scheduled += summary.scheduled;
+            report.overall.taken += summary.taken;
+        }
+        setStreaks(report.overall, due, missed);
+        return report;
+    }
+
+    // Report over every user, per medicine name; scanned in parallel on the fork-join pool
+    public static Report forAll(LocalDateTime now) {
+        List<Unit> units = new ArrayList<>();
+        MedicineStore medicines = Storage.medicines();
+        for (String partition : medicines.partitions()) {
+            units.add(report -> medicines.forEachIn(partition, medicine -> {
+                long scheduled = dosesDue(medicine, now);
+                report.medicine(medicine.getName()).scheduled += scheduled;
+                report.overall.scheduled += scheduled;
+            }));
+        }
+        long nowEpochSecond = DoseHistorySegments.toEpochSecond(now);
+        for (String directory : DoseHistorySegments.allDirectories()) {
+            int segments = DoseHistorySegments.segmentCount(directory);
+            for (int segment = 0; segment < segments; segment++) {
+                int index = segment;
+                units.add(report -> {
+                    Map<Integer, String> names = new HashMap<>();
+                    Map<Long, Window> windows = new HashMap<>();
+                    DoseHistorySegments.scanSegment(directory, index, (user, medicineId, scheduled, taken) -> {
+                        String name = names.computeIfAbsent(medicineId, id -> DoseHistorySegments.nameOf(directory, id));
+                        Summary summary = report.medicine(name);
+                        summary.recordLateness(scheduled, taken);
+                        report.overall.recordLateness(scheduled, taken);
+                        Window window = windows.computeIfAbsent(((long) user << 32) | medicineId, key -> {
+                            String username = names.computeIfAbsent(user, id -> DoseHistorySegments.nameOf(directory, id));
+                            return Window.of(username == null ? null : medicines.find(username, name), nowEpochSecond);
+                        });
+                        if (window.contains(scheduled)) {
+                            summary.taken++;
+                            report.overall.taken++;
+                        }
+                    });
+                });
+            }
+        }
+        return ForkJoinPool.commonPool().invoke(new ScanTask(units, 0, units.size()));
+    }
+
+    public static void main(String[] args) {
+        Report report = forAll(LocalDateTime.now());
+        UI.printBoxedTitle("ADHERENCE OF ALL USERS");
+        UI.displayReminderTable(headers(), rows(report));
+    }
+
+    // Table headers shared by the dashboard and the population report
+    static List<String> headers() {
+        return List.of("Medicine", "Adherence", "Taken", "Late p50/p90/p99 (min)", "Streak (now/best)");
+    }
+
+    // One row per medicine followed by the overall row
+    static List<List<String>> rows(Report report) {
+        List<List<String>> rows = new ArrayList<>();
+        report.byMedicine.forEach((name, summary) -> rows.add(row(name, summary)));
+        rows.add(row("All medicines", report.overall));
+        return rows;
+    }
+
+    private static List<String> row(String label, Summary summary) {
+        return List.of(
+                label,
+                summary.scheduled == 0 ? "-" : String.format("%.1f%%", summary.getAdherence() * 100),
+                summary.taken + " / " + summary.scheduled,
+                String.format("%.0f / %.0f / %.0f", summary.getLatenessMinutes(0.50),
+                        summary.getLatenessMinutes(0.90), summary.getLatenessMinutes(0.99)),
+                summary.currentStreak + " / " + summary.longestStreak
+        );
+    }
+
+    // Doses of a medicine due from its start date up to now, without building a Course
+    private static long dosesDue(Medicine medicine, LocalDateTime now) {
+        int days = courseDays(medicine, now.toLocalDate());
+        if (days == 0) {
+            return 0;
+        }
+        boolean endsToday = !medicine.getEndDate().isBefore(now.toLocalDate());
+        return endsToday
+                ? (long) (days - 1) * medicine.getTimes().length + dosesDueBy(medicine, now.toLocalTime())
+                : (long) days * medicine.getTimes().length;
+    }
+
+    // Days of the course from its start date up to today or its end date, whichever comes first
+    private static int courseDays(Medicine medicine, LocalDate today) {
+        LocalDate last = medicine.getEndDate().isBefore(today) ? medicine.getEndDate() : today;
+        return (int) Math.max(0, last.toEpochDay() - medicine.getStartDate().toEpochDay() + 1);
+    }
+
+    // Doses of one day scheduled at or before the given time
+    private static int dosesDueBy(Medicine medicine, LocalTime time) {
+        int due = 0;
+        for (LocalTime dose : medicine.getTimes()) {
+            if (!dose.isAfter(time)) {
+                due++;
+            }
+        }
+        return due;
+    }
+
+    // Current and longest run of due days without a missed dose
+    private static void setStreaks(Summary summary, boolean[] due, boolean[] missed) {
+        int run = 0;
+        for (int day = 0; day < due.length; day++) {
+            if (!due[day]) {
+                continue;
+            }
+            run = missed[day] ? 0 : run + 1;
+            summary.longestStreak = Math.max(summary.longestStreak, run);
+        }
+        summary.currentStreak = run;
+    }
+
+    // One independent piece of the population scan
+    private interface Unit {
+        void scanInto(Report report);
+    }
+
+    private static class ScanTask extends RecursiveTask<Report> {
+        private static final long serialVersionUID = 1L;
+
+        private final List<Unit> units;
+        private final int from;
+        private final int to;
+
+        ScanTask(List<Unit> units, int from, int to) {
+            this.units = units;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected Report compute() {
+            if (to - from <= UNITS_PER_TASK) {
+                Report report = new Report();
+                for (int i = from; i < to; i++) {
+                    units.get(i).scanInto(report);
+                }
+                return report;
+            }
+            int middle = (from + to) >>> 1;
+            ScanTask left = new ScanTask(units, from, middle);
+            left.fork();
+            Report right = new ScanTask(units, middle, to).compute();
+            return left.join().merge(right);
+        }
+    }
+
+    // Scheduled times, as epoch seconds, that fall in one medicine's course up to now; empty for
+    // history of a medicine that was removed
+    private static class Window {
+        private static final Window NONE = new Window(0, -1);
+
+        private final long from;
+        private final long to; // Inclusive
+
+        private Window(long from, long to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        static Window of(Medicine medicine, long nowEpochSecond) {
+            if (medicine == null) {
+                return NONE;
+            }
+            long end = DoseHistorySegments.toEpochSecond(medicine.getEndDate().plusDays(1).atStartOfDay()) - 1;
+            return new Window(DoseHistorySegments.toEpochSecond(medicine.getStartDate().atStartOfDay()),
+                    Math.min(end, nowEpochSecond));
+        }
+
+        boolean contains(long scheduledEpochSecond) {
+            return scheduledEpochSecond >= from && scheduledEpochSecond <= to;
+        }
+    }
+
+    // Doses due per day of one medicine's course up to now, and doses taken per day
+    private static class Course {
+        private final LocalDate start;
+        private final LocalDate today;
+        private final int timesPerDay;
+        private final int dueToday;
+        private final int[] taken;
+
+        Course(Medicine medicine, LocalDateTime now) {
+            this.start = medicine.getStartDate();
+            this.today = now.toLocalDate();
+            this.timesPerDay = medicine.getTimes().length;
+            this.taken = new int[courseDays(medicine, today)];
+            this.dueToday = dosesDueBy(medicine, now.toLocalTime());
+        }
+
+        // Doses due on the given day of the course; today only counts times already passed
+        int expected(int day) {
+            return start.plusDays(day).equals(today) ? dueToday : timesPerDay;
+        }
+
+        void countTaken(long scheduledEpochSecond) {
+            long day = LocalDateTime.ofEpochSecond(scheduledEpochSecond, 0, ZoneOffset.UTC).toLocalDate().toEpochDay()
+                    - start.toEpochDay();
+            if (day >= 0 && day < taken.length) {
+                taken[(int) day]++;
+            }
+        }
+    }
+}
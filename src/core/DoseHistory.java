@@ -1,7 +1,12 @@
 package core;
 
+import core.io.CsvReader;
+import core.io.CsvWriter;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
 import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
 
 public class DoseHistory {
     private String username;
@@ -36,21 +41,39 @@ public class DoseHistory {
 
     // Converts a DoseHistory entry to CSV format: username,medicineName,scheduledTime,takenTime
     public String toCSV() {
-        DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
-        return username + "," + medicineName + "," + scheduledTime.format(formatter) + "," + takenTime.format(formatter);
+        StringWriter buffer = new StringWriter();
+        try {
+            writeFields(new CsvWriter(buffer));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return buffer.toString();
     }
 
     // Parses a CSV line to a DoseHistory object.
     public static DoseHistory fromCSV(String csvLine) {
-        String[] values = csvLine.split(",");
-        if (values.length == 4) {
-            String username = values[0];
-            String medicineName = values[1];
-            DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
-            LocalDateTime scheduledTime = LocalDateTime.parse(values[2], formatter);
-            LocalDateTime takenTime = LocalDateTime.parse(values[3], formatter);
-            return new DoseHistory(username, medicineName, scheduledTime, takenTime);
+        try (CsvReader reader = CsvReader.of(csvLine)) {
+            return reader.next() ? read(reader) : null;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // Decodes the current record, or returns null if it does not have exactly four fields
+    static DoseHistory read(CsvReader reader) {
+        if (reader.fieldCount() != 4) {
+            return null;
         }
-        return null;
+        return new DoseHistory(reader.field(0), reader.field(1), reader.dateTimeField(2), reader.dateTimeField(3));
+    }
+
+    // Encodes this entry as one record
+    void write(CsvWriter writer) throws IOException {
+        writeFields(writer);
+        writer.endRecord();
+    }
+
+    private void writeFields(CsvWriter writer) throws IOException {
+        writer.field(username).field(medicineName).field(scheduledTime).field(takenTime);
     }
 }
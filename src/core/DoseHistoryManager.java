@@ -1,54 +1,21 @@
 package core;
 
-import java.io.*;
+import core.storage.Storage;
+
+import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
-import java.util.stream.Collectors;
 import UI.*;
 
 public class DoseHistoryManager {
-    private static final String FILE_PATH = "data/dose_history.txt";
-
-    // Ensure the CSV file exists; create if not.
-    public static void ensureCSVExists() {
-        File file = new File(FILE_PATH);
-        if (!file.exists()) {
-            try {
-                file.getParentFile().mkdirs();
-                file.createNewFile();
-            } catch (IOException e) {
-                e.printStackTrace();
-            }
-        }
-    }
-
-    // Adds a dose history entry to the CSV file.
+    // Adds a dose history entry to the dose history store.
     public static void addDoseHistory(DoseHistory doseHistory) {
-        ensureCSVExists();
-        try (BufferedWriter writer = new BufferedWriter(new FileWriter(FILE_PATH, true))) {
-            writer.write(doseHistory.toCSV());
-            writer.newLine();
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
+        Storage.doseHistory().append(doseHistory);
     }
 
     // Retrieves the dose history for a specific user.
     public static List<DoseHistory> getDoseHistoryByUser(String username) {
-        ensureCSVExists();
-        List<DoseHistory> historyList = new ArrayList<>();
-        try (BufferedReader reader = new BufferedReader(new FileReader(FILE_PATH))) {
-            String line;
-            while ((line = reader.readLine()) != null) {
-                DoseHistory history = DoseHistory.fromCSV(line);
-                if (history != null && history.getUsername().equals(username)) {
-                    historyList.add(history);
-                }
-            }
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
-        return historyList;
+        return Storage.doseHistory().findByUser(username);
     }
 
     // Displays all dose history for a specific user with Scheduled Time and Taken Time.
@@ -62,15 +29,29 @@ public class DoseHistoryManager {
             return;
         }
 
+        // Rows are formatted a page at a time; the medicine column is sized from the first page
         List<String> headers = List.of("Medicine", "Scheduled Time", "Taken Time");
-        List<List<String>> rows = history.stream()
+        DateTimeFormatter format = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm");
+        UI.displayPagedTable(headers, null, history.stream()
                 .map(h -> List.of(
                         h.getMedicineName(),
-                        h.getScheduledTime().format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm")),
-                        h.getTakenTime().format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm"))
+                        h.getScheduledTime().format(format),
+                        h.getTakenTime().format(format)
                 ))
-                .collect(Collectors.toList());
+                .iterator());
+    }
+
+    // Displays adherence, lateness and streaks of a user's medicines.
+    public static void displayAdherenceReport(String username) {
+        UI.clearScreen();
+        UI.printBoxedTitle("ADHERENCE REPORT OF " + username);
+
+        DoseAnalytics.Report report = DoseAnalytics.forUser(username, LocalDateTime.now());
+        if (report.getByMedicine().isEmpty()) {
+            System.out.println("No medicines or dose history found");
+            return;
+        }
 
-        UI.displayReminderTable(headers, rows);
+        UI.displayReminderTable(DoseAnalytics.headers(), DoseAnalytics.rows(report));
     }
 }
@@ -0,0 +1,480 @@
+package core;
+
+import core.io.CsvReader;
+import core.io.CsvWriter;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Binary dose history storage.
+// Each record is 24 bytes: user id and medicine id as ints, then the scheduled and taken
+// times as epoch-second longs (the local date-time read as UTC, so it round-trips exactly).
+// Records are appended to segment files of a fixed maximum size inside a dose_history/
+// directory and scanned through memory-mapped buffers, so a scan is a tight loop over
+// primitives instead of line splitting and date parsing. New records arrive through the
+// WriteBehindQueue, which hands each directory its records in batches; every read flushes
+// the directory's queued records first. Ids are assigned per directory and kept in names.txt. dose_history.txt remains available as a CSV export, and is imported
+// once when a directory has no segments yet, under the directory's write lock and into
+// temporary files that only become segments when the whole file was read. Names and segments
+// added by another process are picked up before each access, under the directory's lock.
+@SuppressWarnings("try")
+public class DoseHistorySegments {
+    private static final String DIRECTORY_NAME = "dose_history";
+    private static final String CSV_NAME = "dose_history.txt";
+    private static final String NAMES_FILE = "names.txt";
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".bin";
+    private static final String IMPORT_SUFFIX = ".import";
+
+    static final int RECORD_SIZE = 24;
+
+    // Records per segment file before a new one is started, overridable with -Ddose.segment.records
+    private static final int SEGMENT_RECORDS = Integer.getInteger("dose.segment.records", 1 << 20);
+
+    private static final Map<String, Directory> directories = new ConcurrentHashMap<>();
+
+    // Receives raw records during a scan
+    public interface RecordVisitor {
+        void visit(int userId, int medicineId, long scheduledEpochSecond, long takenEpochSecond);
+    }
+
+    // Queues one dose history record for the segments holding the user's history
+    public static void append(DoseHistory doseHistory) {
+        WriteBehindQueue.append(directoryOf(doseHistory.getUsername()), doseHistory, DoseHistorySegments::appendAll);
+    }
+
+    // Appends a batch of queued records to a segment directory in one write
+    private static void appendAll(String path, List<DoseHistory> records, boolean sync) throws IOException {
+        try (UserLocks.Held lock = UserLocks.write(path)) {
+            Directory directory = directoryAt(path);
+            directory.importOnce(); // Before the first append, which would make it look imported
+            ByteBuffer batch = ByteBuffer.allocate(records.size() * RECORD_SIZE);
+            for (DoseHistory doseHistory : records) {
+                batch.putInt(directory.userId(doseHistory.getUsername(), true))
+                        .putInt(directory.medicineId(doseHistory.getMedicineName()))
+                        .putLong(toEpochSecond(doseHistory.getScheduledTime()))
+                        .putLong(toEpochSecond(doseHistory.getTakenTime()));
+            }
+            batch.flip();
+            directory.write(batch, sync);
+        }
+    }
+
+    // Returns the dose history of one user in the order it was recorded
+    public static List<DoseHistory> readByUser(String username) {
+        List<DoseHistory> history = new ArrayList<>();
+        String path = directoryOf(username);
+        WriteBehindQueue.flush(path);
+        importIfNeeded(path);
+        try (UserLocks.Held lock = UserLocks.read(path)) {
+            Directory directory = directoryAt(path);
+            int userId = directory.userId(username, false);
+            if (userId < 0) {
+                return history;
+            }
+
+            List<String> names = directory.names;
+            directory.scan((user, medicine, scheduled, taken) -> {
+                if (user == userId) {
+                    history.add(new DoseHistory(username, names.get(medicine),
+                            fromEpochSecond(scheduled), fromEpochSecond(taken)));
+                }
+            });
+        }
+        return history;
+    }
+
+    // Every segment directory: the single shared one in the flat layout, or one per user when
+    // sharded. Users whose history is still only in dose_history.txt are included; their
+    // directory is created from it when first scanned.
+    public static List<String> allDirectories() {
+        Set<String> paths = new LinkedHashSet<>(DataLayout.allFiles(DIRECTORY_NAME));
+        for (String csv : DataLayout.allFiles(CSV_NAME)) {
+            paths.add(new File(new File(csv).getParentFile(), DIRECTORY_NAME).getPath());
+        }
+        return new ArrayList<>(paths);
+    }
+
+    // Number of segment files in a segment directory
+    public static int segmentCount(String directoryPath) {
+        WriteBehindQueue.flush(directoryPath);
+        importIfNeeded(directoryPath);
+        try (UserLocks.Held lock = UserLocks.read(directoryPath)) {
+            return directoryAt(directoryPath).segmentCount;
+        }
+    }
+
+    // Visits the records of one segment file; ids are resolved with nameOf. Segments can be
+    // scanned in parallel, each holding the directory's read lock only while it runs.
+    public static void scanSegment(String directoryPath, int segment, RecordVisitor visitor) {
+        WriteBehindQueue.flush(directoryPath);
+        importIfNeeded(directoryPath);
+        try (UserLocks.Held lock = UserLocks.read(directoryPath)) {
+            directoryAt(directoryPath).scanSegment(segment, visitor);
+        }
+    }
+
+    // Name registered under an id in a segment directory, or null if there is none
+    public static String nameOf(String directoryPath, int id) {
+        importIfNeeded(directoryPath);
+        try (UserLocks.Held lock = UserLocks.read(directoryPath)) {
+            List<String> names = directoryAt(directoryPath).names;
+            return id >= 0 && id < names.size() ? names.get(id) : null;
+        }
+    }
+
+    // Id of a user in a segment directory, or -1 if they have no history there
+    public static int userIdOf(String directoryPath, String username) {
+        WriteBehindQueue.flush(directoryPath);
+        importIfNeeded(directoryPath);
+        try (UserLocks.Held lock = UserLocks.read(directoryPath)) {
+            return directoryAt(directoryPath).userId(username, false);
+        }
+    }
+
+    // Writes the history held in each segment directory back out as dose_history.txt next to it,
+    // in the platform charset the file has always been written in
+    public static void exportCsv() throws IOException {
+        WriteBehindQueue.flush();
+        for (String path : DataLayout.allFiles(DIRECTORY_NAME)) {
+            Path csv = Paths.get(path).resolveSibling(CSV_NAME);
+            importIfNeeded(path); // Never overwrite a CSV file that was not imported yet
+            try (UserLocks.Held lock = UserLocks.read(path);
+                 CsvWriter writer = new CsvWriter(Files.newBufferedWriter(csv, Charset.defaultCharset()))) {
+                Directory directory = directoryAt(path);
+                List<String> names = directory.names;
+                IOException[] failure = new IOException[1];
+                directory.scan((user, medicine, scheduled, taken) -> {
+                    if (failure[0] != null) {
+                        return;
+                    }
+                    try {
+                        new DoseHistory(names.get(user), names.get(medicine),
+                                fromEpochSecond(scheduled), fromEpochSecond(taken)).write(writer);
+                    } catch (IOException e) {
+                        failure[0] = e;
+                    }
+                });
+                if (failure[0] != null) {
+                    throw failure[0];
+                }
+            }
+        }
+    }
+
+    // Run with: java -cp bin core.DoseHistorySegments export
+    public static void main(String[] args) {
+        if (args.length == 1 && args[0].equals("export")) {
+            try {
+                exportCsv();
+                System.out.println("Dose history exported to " + CSV_NAME);
+            } catch (IOException e) {
+                System.err.printf("\n⚠ Export failed: %s\n", e.getMessage());
+            }
+        } else {
+            System.out.println("Usage: java -cp bin core.DoseHistorySegments export");
+        }
+    }
+
+    static long toEpochSecond(LocalDateTime dateTime) {
+        return dateTime.toEpochSecond(ZoneOffset.UTC);
+    }
+
+    static LocalDateTime fromEpochSecond(long epochSecond) {
+        return LocalDateTime.ofEpochSecond(epochSecond, 0, ZoneOffset.UTC);
+    }
+
+    // Segment directory holding the given user's history
+    public static String directoryOf(String username) {
+        return DataLayout.userFile(username, DIRECTORY_NAME);
+    }
+
+    // Returns the directory at a path, brought up to date with the files; call with its lock held
+    private static Directory directoryAt(String path) {
+        Directory directory = directories.computeIfAbsent(path, key -> {
+            Directory opened = new Directory(Paths.get(key));
+            opened.open();
+            return opened;
+        });
+        directory.refresh();
+        return directory;
+    }
+
+    // Imports dose_history.txt if the directory has not been checked for it yet; call without
+    // holding its lock, since readers cannot take the write lock the import needs
+    private static void importIfNeeded(String path) {
+        Directory directory = directories.get(path);
+        if (directory != null && directory.imported) {
+            return;
+        }
+        try (UserLocks.Held lock = UserLocks.write(path)) {
+            directoryAt(path).importOnce();
+        }
+    }
+
+    // Name dictionary and segment files of one dose_history/ directory
+    private static class Directory {
+        private final Path path;
+        private final Map<String, Integer> userIds = new ConcurrentHashMap<>();
+        private final Map<String, Integer> medicineIds = new ConcurrentHashMap<>();
+        // Replaced, never changed, so a scan can keep the list it started with
+        private volatile List<String> names = List.of();
+        private volatile int segmentCount = 0;
+        private long namesRead = 0; // Bytes of names.txt already loaded
+        private volatile boolean imported = false; // Segments exist, or dose_history.txt was imported
+
+        Directory(Path path) {
+            this.path = path;
+        }
+
+        // Creates the directory; the dictionary and segments are loaded by refresh()
+        void open() {
+            try {
+                Files.createDirectories(path);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+
+        // Converts dose_history.txt into the first segments if there are none yet, in this
+        // process or another; called with the directory's write lock held, right after refresh()
+        void importOnce() {
+            if (imported) {
+                return;
+            }
+            try {
+                if (segmentCount == 0) {
+                    importCsv();
+                }
+                imported = true;
+            } catch (IOException e) {
+                e.printStackTrace(); // Nothing was committed, so the next access tries again
+            }
+        }
+
+        // Loads the names and segments another process added since the last call. names.txt
+        // only grows, so just its new complete lines are read.
+        synchronized void refresh() {
+            Path namesFile = path.resolve(NAMES_FILE);
+            try {
+                long size = Files.exists(namesFile) ? Files.size(namesFile) : 0;
+                if (size < namesRead) {
+                    // Replaced by something shorter, start over
+                    userIds.clear();
+                    medicineIds.clear();
+                    names = List.of();
+                    namesRead = 0;
+                }
+                if (size > namesRead) {
+                    loadNames(namesFile);
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            int count = segmentCount;
+            while (Files.exists(segment(count))) {
+                count++;
+            }
+            segmentCount = count;
+        }
+
+        private void loadNames(Path namesFile) throws IOException {
+            byte[] added;
+            try (SeekableByteChannel channel = Files.newByteChannel(namesFile, StandardOpenOption.READ)) {
+                channel.position(namesRead);
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                ByteBuffer buffer = ByteBuffer.allocate(8192);
+                while (channel.read(buffer) > 0) {
+                    bytes.write(buffer.array(), 0, buffer.position());
+                    buffer.clear();
+                }
+                added = bytes.toByteArray();
+            }
+            int end = added.length;
+            while (end > 0 && added[end - 1] != '\n') {
+                end--; // A line still being written is read next time
+            }
+            if (end == 0) {
+                return;
+            }
+            List<String> loaded = new ArrayList<>(names);
+            for (String line : new String(added, 0, end, StandardCharsets.UTF_8).split("\\R")) {
+                String[] data = line.split(",", 3);
+                if (data.length < 3) {
+                    continue;
+                }
+                int id = Integer.parseInt(data[1]);
+                while (loaded.size() <= id) {
+                    loaded.add(null);
+                }
+                loaded.set(id, data[2]);
+                (data[0].equals("U") ? userIds : medicineIds).put(data[2], id);
+            }
+            names = loaded;
+            namesRead += end;
+        }
+
+        int userId(String username, boolean create) {
+            Integer id = userIds.get(username);
+            if (id == null && create) {
+                id = register("U", username, userIds);
+            }
+            return id == null ? -1 : id;
+        }
+
+        int medicineId(String medicineName) {
+            Integer id = medicineIds.get(medicineName);
+            return id != null ? id : register("M", medicineName, medicineIds);
+        }
+
+        // Appends whole records to the last segment, starting a new one when it is full, and
+        // forces them to disk when sync is set. A partial record left by an interrupted write is
+        // cut off first, so the new records start on a record boundary.
+        void write(ByteBuffer records, boolean sync) throws IOException {
+            while (records.hasRemaining()) {
+                long used = segmentCount == 0 ? Long.MAX_VALUE : Files.size(segment(segmentCount - 1));
+                used -= used % RECORD_SIZE; // Complete records only
+                long capacity = (long) SEGMENT_RECORDS * RECORD_SIZE;
+                if (used >= capacity) {
+                    segmentCount++;
+                    used = 0;
+                }
+                ByteBuffer chunk = records.slice();
+                chunk.limit((int) Math.min(chunk.remaining(), capacity - used));
+                try (FileChannel channel = FileChannel.open(segment(segmentCount - 1),
+                        StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+                    channel.truncate(used);
+                    channel.position(used);
+                    while (chunk.hasRemaining()) {
+                        channel.write(chunk);
+                    }
+                    if (sync) {
+                        channel.force(false);
+                    }
+                }
+                records.position(records.position() + chunk.limit());
+            }
+        }
+
+        // Visits every complete record of every segment through a read-only mapping
+        void scan(RecordVisitor visitor) {
+            for (int i = 0; i < segmentCount; i++) {
+                scanSegment(i, visitor);
+            }
+        }
+
+        void scanSegment(int index, RecordVisitor visitor) {
+            try (FileChannel channel = FileChannel.open(segment(index), StandardOpenOption.READ)) {
+                long size = channel.size() - channel.size() % RECORD_SIZE;
+                if (size == 0) {
+                    return;
+                }
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+                while (buffer.hasRemaining()) {
+                    visitor.visit(buffer.getInt(), buffer.getInt(), buffer.getLong(), buffer.getLong());
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+
+        // Adds a name to the dictionary; called with the directory's write lock held, right
+        // after refresh(), so everything in names.txt past namesRead is a torn line
+        private synchronized int register(String kind, String name, Map<String, Integer> ids) {
+            int id = names.size();
+            byte[] line = (kind + "," + id + "," + name + "\n").getBytes(StandardCharsets.UTF_8);
+            try (FileChannel channel = FileChannel.open(path.resolve(NAMES_FILE),
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+                channel.truncate(namesRead);
+                channel.position(namesRead);
+                ByteBuffer buffer = ByteBuffer.wrap(line);
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                namesRead += line.length;
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            List<String> registered = new ArrayList<>(names);
+            registered.add(name);
+            names = registered;
+            ids.put(name, id);
+            return id;
+        }
+
+        // Converts the rows of the neighbouring dose_history.txt into the first segments. They are
+        // written to .import files and renamed into place last to first, so segment 0, which
+        // marks the directory as imported, only appears once every record was written.
+        private void importCsv() throws IOException {
+            Path csv = path.resolveSibling(CSV_NAME);
+            if (!Files.exists(csv)) {
+                return;
+            }
+            List<Path> parts = new ArrayList<>();
+            DataOutputStream out = null;
+            int records = SEGMENT_RECORDS;
+            // The platform charset dose_history.txt is written in; a malformed byte becomes a
+            // replacement character instead of failing the import
+            try (CsvReader reader = new CsvReader(new InputStreamReader(new FileInputStream(csv.toFile()), Charset.defaultCharset()))) {
+                while (reader.next()) {
+                    DoseHistory history;
+                    try {
+                        history = DoseHistory.read(reader);
+                    } catch (RuntimeException e) {
+                        continue; // A row cut short or damaged in the legacy file
+                    }
+                    if (history == null) {
+                        continue;
+                    }
+                    if (records == SEGMENT_RECORDS) {
+                        if (out != null) {
+                            out.close();
+                        }
+                        Path part = importing(parts.size());
+                        parts.add(part);
+                        out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(part), 64 * 1024));
+                        records = 0;
+                    }
+                    out.writeInt(userId(history.getUsername(), true));
+                    out.writeInt(medicineId(history.getMedicineName()));
+                    out.writeLong(toEpochSecond(history.getScheduledTime()));
+                    out.writeLong(toEpochSecond(history.getTakenTime()));
+                    records++;
+                }
+                if (out != null) {
+                    out.close();
+                }
+                for (int i = parts.size() - 1; i >= 0; i--) {
+                    Files.move(parts.get(i), segment(i), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                }
+            } catch (IOException | RuntimeException e) {
+                if (out != null) {
+                    out.close();
+                }
+                for (Path part : parts) {
+                    Files.deleteIfExists(part);
+                }
+                throw e;
+            }
+            segmentCount = parts.size();
+        }
+
+        private Path importing(int index) {
+            return path.resolve(String.format("%s%06d%s%s", SEGMENT_PREFIX, index, SEGMENT_SUFFIX, IMPORT_SUFFIX));
+        }
+
+        private Path segment(int index) {
+            return path.resolve(String.format("%s%06d%s", SEGMENT_PREFIX, index, SEGMENT_SUFFIX));
+        }
+    }
+}
@@ -0,0 +1,188 @@
+package core;
+
+import core.storage.MedicineStore;
+import core.storage.Storage;
+
+import java.time.LocalDate;
+import java.util.*;
+
+// Index of every medicine ordered by expiry date, driving EXPIRED_MEDICINE notifications.
+// Medicines are filed in a TreeMap keyed by expiry date, with a reverse map for removal, and
+// kept up to date as medicines are added and removed. A sweep polls only the dates that have
+// been reached, so it costs O(expired x log n) rather than a scan of every medicine.
+// The index is built with one scan of the medicine store the first time it is used. Medicines
+// that already expired are left out if their notification exists, which the notification
+// dedup index answers without reading the file again, so nothing is reported twice and
+// nothing is missed, whichever process added the medicine. The scan runs outside the index
+// monitor; medicines added or removed meanwhile are applied once it is published.
+// The index covers every user, so it is only swept by the API server and the tool below. A
+// console session checks just its own user's medicines with sweep(username, ...).
+//
+// Run with: java -cp bin core.ExpiryIndex [--today=yyyy-MM-dd]
+public class ExpiryIndex {
+    private static final TreeMap<LocalDate, Set<String>> byExpiry = new TreeMap<>();
+    private static final Map<String, LocalDate> expiryOf = new HashMap<>();
+    private static String loadedRoot = null;
+
+    // Serializes index loads, which read every medicines file without holding the index monitor
+    private static final Object loadLock = new Object();
+    private static boolean loading = false;
+    // Adds (with their expiry date) and removals (null) made while a load was running
+    private static final Map<String, LocalDate> changedWhileLoading = new LinkedHashMap<>();
+
+    public static void main(String[] args) {
+        LocalDate today = LocalDate.now();
+        for (String arg : args) {
+            String[] pair = arg.split("=", 2);
+            if (pair[0].equals("--today") && pair.length == 2) {
+                today = LocalDate.parse(pair[1]);
+            } else {
+                System.out.println("Usage: java -cp bin core.ExpiryIndex [--today=yyyy-MM-dd]");
+                return;
+            }
+        }
+
+        long started = System.nanoTime();
+        int raised = sweep(today);
+        System.out.printf("%d new EXPIRED_MEDICINE notifications (%d ms)%n", raised, (System.nanoTime() - started) / 1_000_000);
+    }
+
+    // Files a newly added medicine
+    static synchronized void add(Medicine medicine) {
+        String key = StockLedger.key(medicine.getUsername(), medicine.getName());
+        if (isLoaded()) {
+            put(key, medicine.getExpiryDate());
+        } else if (loading) {
+            changedWhileLoading.remove(key);
+            changedWhileLoading.put(key, medicine.getExpiryDate());
+        }
+    }
+
+    // Drops a removed medicine
+    static synchronized void remove(String username, String medicineName) {
+        String key = StockLedger.key(username, medicineName);
+        if (isLoaded()) {
+            take(key);
+        } else if (loading) {
+            changedWhileLoading.remove(key);
+            changedWhileLoading.put(key, null);
+        }
+    }
+
+    // Raises a notification for each of one user's medicines whose expiry date has been reached,
+    // unless it was raised before. Used by a console session, which reads only its own user's
+    // files and leaves the index to the global sweep. Returns the number of notifications added.
+    public static int sweep(String username, List<Medicine> medicines, LocalDate today) {
+        int raised = 0;
+        for (Medicine medicine : medicines) {
+            if (!medicine.getExpiryDate().isAfter(today)
+                    && NotificationManager.addExpiredMedicineNotification(username, message(medicine.getName(), medicine.getExpiryDate()))) {
+                raised++;
+            }
+        }
+        return raised;
+    }
+
+    // Raises a notification for every medicine whose expiry date has been reached and removes
+    // it from the index. Returns the number of notifications added.
+    public static int sweep(LocalDate today) {
+        ensureLoaded();
+        List<String> expired = new ArrayList<>();
+        List<LocalDate> dates = new ArrayList<>();
+        synchronized (ExpiryIndex.class) {
+            Map.Entry<LocalDate, Set<String>> first;
+            while ((first = byExpiry.firstEntry()) != null && !first.getKey().isAfter(today)) {
+                byExpiry.pollFirstEntry();
+                for (String key : first.getValue()) {
+                    expiryOf.remove(key);
+                    expired.add(key);
+                    dates.add(first.getKey());
+                }
+            }
+        }
+
+        // Written outside the index lock, since the notification store takes its own
+        int raised = 0;
+        for (int i = 0; i < expired.size(); i++) {
+            String[] parts = expired.get(i).split("\u0000", 2);
+            if (NotificationManager.addExpiredMedicineNotification(parts[0], message(parts[1], dates.get(i)))) {
+                raised++;
+            }
+        }
+        return raised;
+    }
+
+    private static boolean isLoaded() {
+        return DataLayout.root().equals(loadedRoot);
+    }
+
+    // Scans the medicine store once, skipping expired medicines that were already reported.
+    // The scan and the notification lookups run outside the index monitor.
+    private static void ensureLoaded() {
+        synchronized (loadLock) {
+            synchronized (ExpiryIndex.class) {
+                if (isLoaded()) {
+                    return;
+                }
+                loading = true;
+                changedWhileLoading.clear();
+            }
+
+            Map<String, LocalDate> found = new LinkedHashMap<>();
+            try {
+                LocalDate today = LocalDate.now();
+                MedicineStore medicines = Storage.medicines();
+                for (String partition : medicines.partitions()) {
+                    medicines.forEachIn(partition, medicine -> {
+                        LocalDate expiryDate = medicine.getExpiryDate();
+                        if (expiryDate.isAfter(today) || !NotificationIndex.contains(medicine.getUsername(),
+                                NotificationType.EXPIRED_MEDICINE, message(medicine.getName(), expiryDate))) {
+                            found.put(StockLedger.key(medicine.getUsername(), medicine.getName()), expiryDate);
+                        }
+                    });
+                }
+            } finally {
+                synchronized (ExpiryIndex.class) {
+                    loading = false;
+                }
+            }
+
+            synchronized (ExpiryIndex.class) {
+                byExpiry.clear();
+                expiryOf.clear();
+                found.forEach(ExpiryIndex::put);
+                changedWhileLoading.forEach((key, expiryDate) -> {
+                    if (expiryDate != null) {
+                        put(key, expiryDate);
+                    } else {
+                        take(key);
+                    }
+                });
+                changedWhileLoading.clear();
+                loadedRoot = DataLayout.root();
+            }
+        }
+    }
+
+    private static String message(String medicineName, LocalDate expiryDate) {
+        return String.format("%s expired on %s", medicineName, expiryDate);
+    }
+
+    private static void put(String key, LocalDate expiryDate) {
+        take(key);
+        byExpiry.computeIfAbsent(expiryDate, date -> new HashSet<>()).add(key);
+        expiryOf.put(key, expiryDate);
+    }
+
+    private static void take(String key) {
+        LocalDate expiryDate = expiryOf.remove(key);
+        if (expiryDate == null) {
+            return;
+        }
+        Set<String> keys = byExpiry.get(expiryDate);
+        keys.remove(key);
+        if (keys.isEmpty()) {
+            byExpiry.remove(expiryDate);
+        }
+    }
+}
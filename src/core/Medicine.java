@@ -1,5 +1,9 @@
 package core;
 
+import core.io.CsvReader;
+import core.io.CsvWriter;
+import core.storage.Storage;
+
 import java.io.*;
 import java.time.LocalDate;
 import java.time.LocalTime;
@@ -15,8 +19,6 @@ public class Medicine {
     private LocalDate endDate;
     private LocalDate expiryDate;
 
-    private static final String FILE_PATH = "data/medicines.txt";
-
     public Medicine(String username, String name, String dosage, int quantity, LocalTime[] times, LocalDate startDate, LocalDate endDate, LocalDate expiryDate) {
         this.username = username;
         this.name = name;
@@ -28,173 +30,105 @@ public class Medicine {
         this.expiryDate = expiryDate;
     }
 
-    // Adds a new medicine to the file
+    // Adds a new medicine to the store
     public static boolean addMedicine(Medicine medicine) {
-        ensureFileExists();
-
-        try (BufferedWriter writer = new BufferedWriter(new FileWriter(FILE_PATH, true))) {
-            StringBuilder timesString = new StringBuilder();
-            for (LocalTime time : medicine.times) {
-                timesString.append(time.toString()).append(";");
-            }
-            String medicineData = String.join(",", medicine.username, medicine.name, medicine.dosage,
-                    String.valueOf(medicine.quantity), timesString.toString(),
-                    medicine.startDate.toString(), medicine.endDate.toString(),
-                    medicine.expiryDate.toString());
-            writer.write(medicineData);
-            writer.newLine();
-            return true;
-        } catch (IOException e) {
-            e.printStackTrace();
+        if (!Storage.medicines().add(medicine)) {
             return false;
         }
+        StockLedger.record(medicine.username, medicine.name, StockLedger.Movement.OPENING, medicine.quantity, medicine.quantity);
+        ExpiryIndex.add(medicine);
+
+        // In virtual schedule mode the medicine's past slots exist as soon as it is added
+        if (VirtualSchedule.isEnabled()) {
+            ReminderScanner.rewind(medicine.username, medicine.startDate.atStartOfDay());
+            ReminderDispatcher.refresh(medicine.username, medicine.name);
+        }
+        DashboardState.medicinesChanged(medicine.username);
+        return true;
     }
 
     // Retrieves all medicines added by a specific user
     public static List<Medicine> getUserMedicines(String username) {
-        ensureFileExists();
-        List<Medicine> medicines = new ArrayList<>();
-
-        try (BufferedReader reader = new BufferedReader(new FileReader(FILE_PATH))) {
-            String line;
-            while ((line = reader.readLine()) != null) {
-                String[] data = line.split(",");
-                if (data[0].equals(username)) {
-                    String[] timesArray = data[4].split(";");
-                    LocalTime[] times = new LocalTime[timesArray.length];
-                    for (int i = 0; i < timesArray.length; i++) {
-                        times[i] = LocalTime.parse(timesArray[i]);
-                    }
-                    Medicine medicine = new Medicine(data[0], data[1], data[2], Integer.parseInt(data[3]), times,
-                            LocalDate.parse(data[5]), LocalDate.parse(data[6]),
-                            LocalDate.parse(data[7]));
-                    medicines.add(medicine);
-                }
-            }
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
-        return medicines;
+        return Storage.medicines().findByUser(username);
+    }
+
+    // Retrieves one medicine of a user by name, or null if the user has no such medicine
+    public static Medicine getUserMedicine(String username, String medicineName) {
+        return Storage.medicines().find(username, medicineName);
     }
 
-    // Updates the stock quantity of a specific medicine
+    // Sets the stock of a medicine to the given quantity, recorded as a correction in the stock ledger
     public static void updateMedicineStock(String username, String medicineName, int newQuantity) {
-        ensureFileExists();
-        List<Medicine> medicines = new ArrayList<>();
-
-        try (BufferedReader reader = new BufferedReader(new FileReader(FILE_PATH))) {
-            String line;
-            while ((line = reader.readLine()) != null) {
-                String[] data = line.split(",");
-                if (data[0].equals(username) && data[1].equals(medicineName)) {
-                    String[] timesArray = data[4].split(";");
-                    LocalTime[] times = new LocalTime[timesArray.length];
-                    for (int i = 0; i < timesArray.length; i++) {
-                        times[i] = LocalTime.parse(timesArray[i]);
-                    }
-                    Medicine medicine = new Medicine(data[0], data[1], data[2], newQuantity, times,
-                            LocalDate.parse(data[5]), LocalDate.parse(data[6]),
-                            LocalDate.parse(data[7]));
-                    medicines.add(medicine);
-                } else {
-                    String[] timesArray = data[4].split(";");
-                    LocalTime[] times = new LocalTime[timesArray.length];
-                    for (int i = 0; i < timesArray.length; i++) {
-                        times[i] = LocalTime.parse(timesArray[i]);
-                    }
-                    medicines.add(new Medicine(data[0], data[1], data[2], Integer.parseInt(data[3]), times,
-                            LocalDate.parse(data[5]), LocalDate.parse(data[6]),
-                            LocalDate.parse(data[7])));
-                }
+        Medicine medicine = getUserMedicine(username, medicineName);
+        if (medicine != null) {
+            if (StockLedger.correct(username, medicineName, newQuantity, medicine.quantity) >= 0) {
+                DashboardState.medicinesChanged(username);
             }
-        } catch (IOException e) {
-            e.printStackTrace();
         }
+    }
 
-        // Overwrite the file with updated data
-        try (BufferedWriter writer = new BufferedWriter(new FileWriter(FILE_PATH))) {
-            for (Medicine med : medicines) {
-                StringBuilder timesString = new StringBuilder();
-                for (LocalTime time : med.times) {
-                    timesString.append(time.toString()).append(";");
-                }
-                String medicineData = String.join(",", med.username, med.name, med.dosage,
-                        String.valueOf(med.quantity), timesString.toString(),
-                        med.startDate.toString(), med.endDate.toString(),
-                        med.expiryDate.toString());
-                writer.write(medicineData);
-                writer.newLine();
+    // Records a stock movement (a dose taken, a refill, ...) of the given size in the stock
+    // ledger, which makes a dose one short append. Returns the new quantity, or NotificationManager.NOT_ENOUGH_STOCK /
+    // MEDICINE_NOT_FOUND / STOCK_NOT_RECORDED when nothing was changed.
+    public static int adjustMedicineStock(String username, String medicineName, StockLedger.Movement movement,
+                                          int quantityChange) {
+        // A medicine with ledger records exists, so the store is only read for its opening stock
+        int openingQuantity = 0;
+        if (StockLedger.quantityOf(username, medicineName) == null) {
+            Medicine medicine = getUserMedicine(username, medicineName);
+            if (medicine == null) {
+                return NotificationManager.MEDICINE_NOT_FOUND;
             }
-        } catch (IOException e) {
-            e.printStackTrace();
+            openingQuantity = medicine.quantity;
         }
+        int quantity = StockLedger.record(username, medicineName, movement, quantityChange, openingQuantity);
+        if (quantity >= 0) {
+            DashboardState.medicinesChanged(username);
+        }
+        return quantity;
     }
 
-    // Removes a specific medicine from the file and returns true if removed, false otherwise
+    // Removes a specific medicine and returns true if removed, false otherwise
     public static boolean removeMedicine(String username, String medicineName) {
-        ensureFileExists();
-        List<Medicine> medicines = new ArrayList<>();
-        boolean removed = false;
-
-        try (BufferedReader reader = new BufferedReader(new FileReader(FILE_PATH))) {
-            String line;
-            while ((line = reader.readLine()) != null) {
-                String[] data = line.split(",");
-                if (data[0].equals(username) && data[1].equals(medicineName)) {
-                    removed = true; // Mark as found and removed
-                    continue; // Skip adding this medicine to the new list
-                }
-                String[] timesArray = data[4].split(";");
-                LocalTime[] times = new LocalTime[timesArray.length];
-                for (int i = 0; i < timesArray.length; i++) {
-                    times[i] = LocalTime.parse(timesArray[i]);
-                }
-                medicines.add(new Medicine(data[0], data[1], data[2], Integer.parseInt(data[3]), times,
-                        LocalDate.parse(data[5]), LocalDate.parse(data[6]), LocalDate.parse(data[7])));
-            }
-        } catch (IOException e) {
-            e.printStackTrace();
-            return false; // Return false if an error occurs while reading
-        }
-
-        // Overwrite the file with updated data
-        try (BufferedWriter writer = new BufferedWriter(new FileWriter(FILE_PATH))) {
-            for (Medicine med : medicines) {
-                StringBuilder timesString = new StringBuilder();
-                for (LocalTime time : med.times) {
-                    timesString.append(time.toString()).append(";");
-                }
-                String medicineData = String.join(",", med.username, med.name, med.dosage,
-                        String.valueOf(med.quantity), timesString.toString(),
-                        med.startDate.toString(), med.endDate.toString(),
-                        med.expiryDate.toString());
-                writer.write(medicineData);
-                writer.newLine();
+        boolean removed = Storage.medicines().remove(username, medicineName);
+
+        // Reminders are refreshed after the store is done, since their store locks on its own
+        if (removed) {
+            StockLedger.record(username, medicineName, StockLedger.Movement.REMOVAL, 0, 0);
+            ExpiryIndex.remove(username, medicineName);
+            ReminderDispatcher.refresh(username, medicineName);
+            if (VirtualSchedule.isEnabled()) {
+                VirtualSchedule.forget(username, medicineName);
             }
-        } catch (IOException e) {
-            e.printStackTrace();
-            return false; // Return false if an error occurs while writing
+            DashboardState.medicinesChanged(username);
         }
+        return removed;
+    }
 
-        return removed; // Return true if at least one medicine was removed
+    // Replaces the stored quantity with the current one from a stock ledger map, if it has one
+    void applyStock(Map<String, Integer> stock) {
+        quantity = stock.getOrDefault(StockLedger.key(username, name), quantity);
     }
 
+    // Decodes the current record: username,name,dosage,quantity,times,startDate,endDate,expiryDate
+    static Medicine read(CsvReader reader) {
+        return new Medicine(reader.field(0), reader.field(1), reader.field(2), reader.intField(3),
+                reader.timesField(4), reader.dateField(5), reader.dateField(6), reader.dateField(7));
+    }
 
-    // Ensures the medicine file exists
-    private static void ensureFileExists() {
-        File file = new File(FILE_PATH);
-        if (!file.exists()) {
-            try {
-                file.getParentFile().mkdirs();
-                file.createNewFile();
-            } catch (IOException e) {
-                e.printStackTrace();
-            }
-        }
+    // Encodes this medicine as one record
+    void write(CsvWriter writer) throws IOException {
+        writer.field(username).field(name).field(dosage).field(quantity).field(times)
+                .field(startDate).field(endDate).field(expiryDate);
+        writer.endRecord();
     }
 
     // Getters
 
+    public String getUsername() {
+        return username;
+    }
+
     public String getName() {
         return name;
     }
@@ -210,4 +144,16 @@ public class Medicine {
     public int getQuantity() {
         return quantity;
     }
+
+    public LocalTime[] getTimes() {
+        return times;
+    }
+
+    public LocalDate getStartDate() {
+        return startDate;
+    }
+
+    public LocalDate getEndDate() {
+        return endDate;
+    }
 }
@@ -12,7 +12,7 @@ import java.util.Scanner;
 import static controller.Main.currentUser;
 
 public class MedicineManager {
-    private static Scanner scanner = new Scanner(System.in);
+    private static Scanner scanner = new Scanner(Terminal.input());
 
     // Adds a new medicine
     public static void addMedicine() {
@@ -105,4 +105,65 @@ public class MedicineManager {
 
         UI.displayReminderTable(headers, rows);
     }
+
+    // Adds stock to a medicine
+    public static void refillMedicine() {
+        UI.clearScreen();
+
+        viewMedicineList(currentUser);
+
+        UI.printBoxedTitle("REFILL MEDICINE");
+
+        System.out.print("Enter medicine name: ");
+        String name = scanner.nextLine();
+
+        System.out.print("Enter quantity to add: ");
+        int amount = scanner.nextInt();
+        scanner.nextLine();  // Consume newline
+
+        if (amount <= 0) {
+            UI.printBoxedTitle("Quantity must be positive.");
+            return;
+        }
+        int quantity = Medicine.adjustMedicineStock(currentUser, name, StockLedger.Movement.REFILL, amount);
+        if (quantity == NotificationManager.MEDICINE_NOT_FOUND) {
+            UI.printBoxedTitle("Medicine not found.");
+        } else if (quantity == NotificationManager.STOCK_NOT_RECORDED) {
+            UI.printBoxedTitle("The refill could not be saved. Please try again.");
+        } else {
+            UI.printBoxedTitle(name + " now has " + quantity + " left.");
+        }
+    }
+
+    // Shows every stock movement of a medicine
+    public static void viewStockHistory() {
+        UI.clearScreen();
+
+        viewMedicineList(currentUser);
+
+        System.out.print("\nEnter medicine name: ");
+        String name = scanner.nextLine();
+
+        UI.printBoxedTitle("STOCK HISTORY OF " + name);
+
+        List<StockLedger.Entry> entries = StockLedger.history(currentUser, name);
+        if (entries.isEmpty()) {
+            System.out.println("No stock movements found");
+            return;
+        }
+
+        List<String> headers = List.of("Time", "Movement", "Change", "Quantity");
+        List<List<String>> rows = new ArrayList<>();
+        for (StockLedger.Entry entry : entries) {
+            rows.add(List.of(
+                    entry.getTime().toString().replace('T', ' '),
+                    entry.getMovement().name(),
+                    entry.getMovement() == StockLedger.Movement.OPENING ? "=" + entry.getAmount()
+                            : String.format("%+d", entry.getAmount()),
+                    String.valueOf(entry.getQuantityAfter())
+            ));
+        }
+
+        UI.displayReminderTable(headers, rows);
+    }
 }
@@ -1,10 +1,11 @@
 package core;
 
+import core.io.CsvReader;
+import core.io.CsvWriter;
+import core.storage.Storage;
+
 import java.io.*;
-import java.time.LocalDateTime;
 import java.util.*;
-import java.nio.file.Files;
-import java.nio.file.Paths;
 
 
 public class Notification {
@@ -13,7 +14,7 @@ public class Notification {
     private NotificationType type;
     private boolean isProcessed;
 
-    private static final String FILE_PATH = "data/notifications.txt";
+    private static final NotificationType[] TYPES = NotificationType.values();
 
     // Constructor
     public Notification(String username, String message, NotificationType type, boolean isProcessed) {
@@ -23,74 +24,54 @@ public class Notification {
         this.isProcessed = isProcessed;
     }
 
-    // Adds a notification to the notifications file
+    // Adds a notification to the store
     public static boolean addNotification(Notification notification) {
-        ensureFileExists();
-
-        try (BufferedWriter writer = new BufferedWriter(new FileWriter(FILE_PATH, true))) {
-            String notificationData = String.join(",", notification.username, notification.message, notification.type.name(), String.valueOf(notification.isProcessed));
-            writer.write(notificationData);
-            writer.newLine();
-            return true;
-        } catch (IOException e) {
-            e.printStackTrace();
-            return false;
+        boolean added = Storage.notifications().add(notification);
+        if (added) {
+            DashboardState.notificationsChanged(notification.username);
+        }
+        return added;
+    }
+
+    // Adds a notification unless one with the same user, type and message exists; returns true if it was added
+    static boolean addIfAbsent(Notification notification) {
+        boolean added = Storage.notifications().addIfAbsent(notification);
+        if (added) {
+            DashboardState.notificationsChanged(notification.username);
         }
+        return added;
     }
 
     // Retrieves all notifications for a specific user
     public static List<Notification> getUserNotifications(String username) {
-        ensureFileExists();
-        List<Notification> notifications = new ArrayList<>();
-
-        try (BufferedReader reader = new BufferedReader(new FileReader(FILE_PATH))) {
-            String line;
-            while ((line = reader.readLine()) != null) {
-                String[] data = line.split(",");
-                if (data[0].equals(username)) {
-                    Notification notification = new Notification(data[0], data[1], NotificationType.valueOf(data[2]), Boolean.parseBoolean(data[3]));
-                    notifications.add(notification);
-                }
-            }
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
-        return notifications;
+        return Storage.notifications().findByUser(username);
     }
 
     // Marks a notification as processed
     public static void markNotificationAsProcessed(String username, String message) {
-        ensureFileExists();
-
-        try {
-            List<String> lines = new ArrayList<>(Files.readAllLines(Paths.get(FILE_PATH)));
-            BufferedWriter writer = new BufferedWriter(new FileWriter(FILE_PATH));
-
-            for (String line : lines) {
-                String[] data = line.split(",");
-                if (data[0].equals(username) && data[1].equals(message)) {
-                    data[3] = "true";  // Set the notification as processed
-                }
-                writer.write(String.join(",", data));
-                writer.newLine();
-            }
-            writer.close();
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
+        markNotificationsAsProcessed(username, Set.of(message));
     }
 
-    // Ensures the notifications file exists
-    private static void ensureFileExists() {
-        File file = new File(FILE_PATH);
-        if (!file.exists()) {
-            try {
-                file.getParentFile().mkdirs();
-                file.createNewFile();
-            } catch (IOException e) {
-                e.printStackTrace();
-            }
-        }
+    // Marks several notifications of a user as processed with a single rewrite
+    public static void markNotificationsAsProcessed(String username, Set<String> messages) {
+        Storage.notifications().markProcessed(username, messages);
+        DashboardState.notificationsChanged(username);
+    }
+
+    // Sets the notification as processed
+    void markProcessed() {
+        isProcessed = true;
+    }
+
+    // Decodes the current record: username,message,type,isProcessed
+    static Notification read(CsvReader reader) {
+        return new Notification(reader.field(0), reader.field(1), reader.enumField(2, TYPES), reader.booleanField(3));
+    }
+
+    // Encodes this notification as one record
+    void write(CsvWriter writer) throws IOException {
+        writer.field(username).field(message).field(type.name()).field(isProcessed);
+        writer.endRecord();
     }
 
     // Getters for notification properties
@@ -0,0 +1,112 @@
+package core;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+// Dedup index of every (username, type, message) ever written to a notifications file.
+// A Bloom filter sits in front of a hash set: most new messages are rejected by the filter
+// without touching the set, and existing ones are confirmed by the set, so a duplicate check
+// never reads a file. Each notifications file is scanned once, the first time one of its
+// users is checked, and every later append is recorded here as it is queued. The scan, and
+// the flush of queued writes before it, run outside the index's monitor, so checks never
+// wait on disk I/O behind each other or on the write-behind writer.
+public class NotificationIndex {
+    private static final String FILE_NAME = "notifications.txt";
+
+    // Filter size in bits (rounded up to a power of two), overridable with -Dnotification.index.bits
+    private static final int FILTER_BITS = Integer.highestOneBit(
+            Math.max(64, Integer.getInteger("notification.index.bits", 1 << 22)) * 2 - 1);
+    private static final int HASH_COUNT = 4;
+
+    private static final long[] filter = new long[FILTER_BITS / 64];
+    private static final Set<String> keys = new HashSet<>();
+    private static final Set<String> loadedFiles = new HashSet<>();
+
+    // Whether a notification with this type and message already exists for the user
+    public static boolean contains(String username, NotificationType type, String message) {
+        ensureLoaded(username);
+        String key = key(username, type, message);
+        synchronized (NotificationIndex.class) {
+            return mightContain(key) && keys.contains(key);
+        }
+    }
+
+    // Writes the notification to the store unless an identical one exists; returns true if it was written
+    static boolean addIfAbsent(Notification notification, CsvNotificationStore store) {
+        ensureLoaded(notification.getUsername());
+        String key = key(notification.getUsername(), notification.getType(), notification.getMessage());
+        synchronized (NotificationIndex.class) {
+            if (mightContain(key) && keys.contains(key)) {
+                return false;
+            }
+            put(key); // Claimed here, so a concurrent identical notification is turned away
+        }
+        return store.add(notification);
+    }
+
+    // Records a notification about to be queued for its file. Files not scanned yet get the
+    // key too, so an append racing with their first scan is not missed.
+    static synchronized void record(Notification notification) {
+        put(key(notification.getUsername(), notification.getType(), notification.getMessage()));
+    }
+
+    // Scans the notifications file holding this user's rows the first time it is needed
+    private static void ensureLoaded(String username) {
+        String filePath = DataLayout.userFile(username, FILE_NAME);
+        synchronized (NotificationIndex.class) {
+            if (loadedFiles.contains(filePath)) {
+                return;
+            }
+        }
+        // Flushes the file's queued writes and reads it without the monitor; two threads may
+        // both scan a new file, which only adds the same keys twice
+        List<String> found = new ArrayList<>();
+        CsvNotificationStore.forEachInFile(filePath, n -> found.add(key(n.getUsername(), n.getType(), n.getMessage())));
+        synchronized (NotificationIndex.class) {
+            if (loadedFiles.add(filePath)) {
+                for (String key : found) {
+                    put(key);
+                }
+            }
+        }
+    }
+
+    private static void put(String key) {
+        if (keys.add(key)) {
+            int h1 = key.hashCode();
+            int h2 = secondaryHash(key);
+            for (int i = 0; i < HASH_COUNT; i++) {
+                int bit = (h1 + i * h2) & (FILTER_BITS - 1);
+                filter[bit >>> 6] |= 1L << bit;
+            }
+        }
+    }
+
+    private static boolean mightContain(String key) {
+        int h1 = key.hashCode();
+        int h2 = secondaryHash(key);
+        for (int i = 0; i < HASH_COUNT; i++) {
+            int bit = (h1 + i * h2) & (FILTER_BITS - 1);
+            if ((filter[bit >>> 6] & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // FNV-1a over the characters, forced odd so the probe sequence covers the whole filter
+    private static int secondaryHash(String key) {
+        int hash = 0x811c9dc5;
+        for (int i = 0; i < key.length(); i++) {
+            hash ^= key.charAt(i);
+            hash *= 0x01000193;
+        }
+        return hash | 1;
+    }
+
+    private static String key(String username, NotificationType type, String message) {
+        return username + "\u0000" + type.name() + "\u0000" + message;
+    }
+}
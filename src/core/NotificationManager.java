@@ -1,5 +1,7 @@
 package core;
 
+import core.storage.ReminderStore.Marking;
+
 import java.io.*;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
@@ -10,7 +12,16 @@ import UI.*;
 
 public class NotificationManager {
 
-    private static final Scanner scanner = new Scanner(System.in);
+    private static final Scanner scanner = new Scanner(Terminal.input());
+
+    // Results of recordDoseTaken when the stock could not be updated
+    public static final int NOT_ENOUGH_STOCK = -1;
+    public static final int MEDICINE_NOT_FOUND = -2;
+    public static final int STOCK_NOT_RECORDED = -6;
+    // Results of recordDoseTaken when no dose was recorded
+    public static final int DOSE_NOT_SCHEDULED = -3;
+    public static final int DOSE_ALREADY_TAKEN = -4;
+    public static final int DOSE_NOT_RECORDED = -5;
 
     public static void displayMissedDoses(String username) {
         UI.clearScreen();
@@ -47,7 +58,10 @@ public class NotificationManager {
         System.out.println("║                    NOTIFICATION PANEL                    ║");
         System.out.println("╚══════════════════════════════════════════════════════════╝");
 
-        List<Notification> notifications = Notification.getUserNotifications(username)
+        List<Notification> all = Notification.getUserNotifications(username);
+        displayWarningNotifications(all);
+
+        List<Notification> notifications = all
                 .stream()
                 .filter(n -> n.getType() == NotificationType.MEDICINE_TIME && !n.isProcessed())
                 .collect(Collectors.toList());
@@ -75,6 +89,37 @@ public class NotificationManager {
         processSelectedNotification(notifications);
     }
 
+    // Shows pending refill and expiry warnings; they are marked as processed, all at once,
+    // only when the user acknowledges them, and are shown again until then
+    private static void displayWarningNotifications(List<Notification> notifications) {
+        List<Notification> warnings = notifications.stream()
+                .filter(n -> (n.getType() == NotificationType.REFILL || n.getType() == NotificationType.EXPIRED_MEDICINE)
+                        && !n.isProcessed())
+                .collect(Collectors.toList());
+        if (warnings.isEmpty()) {
+            return;
+        }
+
+        List<String> headers = List.of("#", "Type", "Warning");
+        List<List<String>> rows = new ArrayList<>();
+        for (int i = 0; i < warnings.size(); i++) {
+            Notification warning = warnings.get(i);
+            rows.add(List.of(String.valueOf(i + 1), warning.getType().toString(), warning.getMessage()));
+        }
+        UI.displayReminderTable(headers, rows);
+
+        String[] options = { "Acknowledge warnings", "Remind me later" };
+        UI.printBoxedMenu(options, "Acknowledge these warnings?");
+        if (readIntInput() == 1) {
+            Set<String> messages = new HashSet<>();
+            for (Notification warning : warnings) {
+                messages.add(warning.getMessage());
+            }
+            Notification.markNotificationsAsProcessed(warnings.get(0).getUsername(), messages);
+            System.out.println("Warnings acknowledged.");
+        }
+    }
+
     private static void processSelectedNotification(List<Notification> notifications) {
         System.out.print("Enter notification number to process (0 to cancel): ");
         int choice = readIntInput();
@@ -112,14 +157,25 @@ public class NotificationManager {
             int choice = readIntInput();
 
             if (choice == 1) {
-                // Mark as taken: update reminder, record dose history, update stock.
-                Reminder.markReminderAsTaken(notification.getUsername(), medicineName,
-                        dueTime.toLocalDate(), dueTime.toLocalTime());
-                DoseHistoryManager.addDoseHistory(new DoseHistory(
-                        notification.getUsername(), medicineName, dueTime, LocalDateTime.now()));
-                updateMedicineStock(notification.getUsername(), medicineName, -1);
-                System.out.println("Dose marked as taken. Dose history updated.");
+                int remaining = recordDoseTaken(notification.getUsername(), medicineName, dueTime);
+                switch (remaining) {
+                    case DOSE_ALREADY_TAKEN -> System.out.println("This dose was already marked as taken.");
+                    case DOSE_NOT_SCHEDULED -> System.out.println("No dose of " + medicineName + " is scheduled at that time.");
+                    case MEDICINE_NOT_FOUND -> System.out.println("Medicine not found in your inventory.");
+                    case DOSE_NOT_RECORDED -> System.out.println("The dose could not be saved. Please try again.");
+                    case STOCK_NOT_RECORDED -> System.out.println("Dose marked as taken, but the stock of " + medicineName + " could not be updated.");
+                    default -> {
+                        if (remaining == NOT_ENOUGH_STOCK) {
+                            System.out.println("Not enough stock to update.");
+                        } else {
+                            System.out.println("Medicine stock updated: " + medicineName + " now has " + remaining + " left.");
+                        }
+                        System.out.println("Dose marked as taken. Dose history updated.");
+                    }
+                }
             } else if (choice == 2) {
+                Reminder.markReminderAsSkipped(notification.getUsername(), medicineName,
+                        dueTime.toLocalDate(), dueTime.toLocalTime());
                 System.out.println("Dose marked as not taken. It will appear in Missed Doses.");
             }
             // Mark notification as processed (so it won't appear again).
@@ -130,42 +186,31 @@ public class NotificationManager {
     }
 
 
-    private static void updateMedicineStock(String username, String medicineName, int quantityChange) {
-        List<Medicine> medicines = Medicine.getUserMedicines(username);
-        for (Medicine medicine : medicines) {
-            if (medicine.getName().equals(medicineName)) {
-                int newQuantity = medicine.getQuantity() + quantityChange;
-                if (newQuantity >= 0) {
-                    Medicine.updateMedicineStock(username, medicineName, newQuantity);
-                    System.out.println("Medicine stock updated: " + medicineName + " now has " + newQuantity + " left.");
-                } else {
-                    System.out.println("Not enough stock to update.");
-                }
-                return;
+    // Records a dose as taken without any console interaction: marks the reminder, adds the
+    // dose history entry and takes one unit from stock. Returns the remaining stock, or
+    // NOT_ENOUGH_STOCK / MEDICINE_NOT_FOUND / STOCK_NOT_RECORDED when the stock could not be updated.
+    // Nothing is recorded unless the reminder went from untaken to taken; then the result is
+    // DOSE_NOT_SCHEDULED, DOSE_ALREADY_TAKEN, DOSE_NOT_RECORDED, or MEDICINE_NOT_FOUND when
+    // there is no such medicine at all.
+    public static int recordDoseTaken(String username, String medicineName, LocalDateTime dueTime) {
+        Marking marking = Reminder.markReminderAsTaken(username, medicineName, dueTime.toLocalDate(), dueTime.toLocalTime());
+        return switch (marking) {
+            case MARKED -> {
+                DoseHistoryManager.addDoseHistory(new DoseHistory(username, medicineName, dueTime, LocalDateTime.now()));
+                yield updateMedicineStock(username, medicineName, -1); // One DOSE movement per dose
             }
-        }
-        System.out.println("Medicine not found in your inventory.");
+            case ALREADY_TAKEN -> DOSE_ALREADY_TAKEN;
+            case NOT_FOUND -> Medicine.getUserMedicine(username, medicineName) == null ? MEDICINE_NOT_FOUND : DOSE_NOT_SCHEDULED;
+            case FAILED -> DOSE_NOT_RECORDED;
+        };
     }
 
-    public static void markNotificationAsProcessed(String username, String message) {
-        try {
-            List<String> lines = new ArrayList<>(java.nio.file.Files.readAllLines(java.nio.file.Paths.get("data/notifications.txt")));
-            BufferedWriter writer = new BufferedWriter(new FileWriter("data/notifications.txt"));
-
-            for (String line : lines) {
-                String[] data = line.split(",");
-                if (data.length >= 4 && data[0].equals(username) && data[1].equals(message)) {
-                    data[3] = "true";  // mark as processed
-                    line = String.join(",", data);
-                }
-                writer.write(line);
-                writer.newLine();
-            }
+    private static int updateMedicineStock(String username, String medicineName, int quantityChange) {
+        return Medicine.adjustMedicineStock(username, medicineName, StockLedger.Movement.DOSE, quantityChange);
+    }
 
-            writer.close();
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
+    public static void markNotificationAsProcessed(String username, String message) {
+        Notification.markNotificationAsProcessed(username, message);
     }
 
     private static int readIntInput() {
@@ -181,25 +226,40 @@ public class NotificationManager {
         return number;
     }
 
+    // Adds the MEDICINE_TIME notification for one scheduled dose, unless it was already raised
+    public static void addMedicineTimeNotification(String username, String medicineName, LocalDateTime dueTime) {
+        String message = String.format("%s due at %s",
+                medicineName,
+                dueTime.format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm")));
+        addMedicineTimeNotification(username, message);
+    }
+
     // Duplicate-check version for Medicine Time Notifications
     public static void addMedicineTimeNotification(String username, String message) {
-        // Now check among all notifications with the same type and message, regardless of processed status
-        boolean exists = Notification.getUserNotifications(username).stream()
-                .anyMatch(n -> n.getType() == NotificationType.MEDICINE_TIME
-                        && n.getMessage().equals(message));
-        if (!exists) {
-            Notification notification = new Notification(
-                    username,
-                    message,
-                    NotificationType.MEDICINE_TIME,
-                    false
-            );
-            Notification.addNotification(notification);
-        }
+        // The dedup index covers all notifications with the same type and message, regardless of processed status
+        Notification notification = new Notification(
+                username,
+                message,
+                NotificationType.MEDICINE_TIME,
+                false
+        );
+        Notification.addIfAbsent(notification);
+    }
+
+    // Adds a REFILL notification unless the same one was already raised; returns true if it was added
+    public static boolean addRefillNotification(String username, String message) {
+        Notification refillNotification = new Notification(username, message, NotificationType.REFILL, false);
+        return Notification.addIfAbsent(refillNotification);
+    }
+
+    // Adds an EXPIRED_MEDICINE notification unless the same one was already raised; returns true if it was added
+    public static boolean addExpiredMedicineNotification(String username, String message) {
+        Notification expiredNotification = new Notification(username, message, NotificationType.EXPIRED_MEDICINE, false);
+        return Notification.addIfAbsent(expiredNotification);
     }
 
     public static void addMissedDoseNotification(String username, String message) {
         Notification missedDoseNotification = new Notification(username, message, NotificationType.MISSED_DOSE, false);
-        Notification.addNotification(missedDoseNotification);
+        Notification.addIfAbsent(missedDoseNotification);
     }
 }
@@ -0,0 +1,556 @@
+package core;
+
+import core.io.CsvReader;
+import core.io.CsvWriter;
+import core.storage.*;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+// The paged B+tree backend, selected with -Dstorage.backend=btree.
+// Users, medicines, reminders and notifications are kept in one file, data/store.db, as
+// B+trees of a PageStore, keyed so that every lookup is a point lookup or one contiguous
+// range scan instead of a read of a whole file:
+//   users           username                             -> user record
+//   medicines       username, name                       -> medicine record
+//   reminders       username, medicine, date, time       -> taken flag
+//   notifications   username, sequence number            -> notification record
+//   notice keys     username, type, message              -> (dedup of notifications)
+// Strings in keys end in a zero byte and numbers are big-endian with the sign bit flipped,
+// so keys sort field by field. Records are stored in the same CSV form as the text files.
+// Stock stays in the stock ledger and dose history in its binary segments, which both
+// backends share; the quantity in a medicine record is its opening stock.
+//
+// Run with: java -cp bin core.PagedStorage [--force]
+// to copy the CSV data under data/ into data/store.db.
+public class PagedStorage implements StorageBackend {
+    public static final String NAME = "btree";
+    private static final String FILE_NAME = "store.db";
+    private static final String NOTIFICATIONS_FILE = "notifications.txt";
+
+    private static final int USERS = 0;
+    private static final int MEDICINES = 1;
+    private static final int REMINDERS = 2;
+    private static final int NOTIFICATIONS = 3;
+    private static final int NOTIFICATION_KEYS = 4;
+
+    // Entries read per lock hold when a whole tree is walked
+    private static final int SCAN_BATCH = 1024;
+
+    private static final byte[] NONE = new byte[0];
+    private static final byte[] TAKEN = {1};
+    private static final byte[] NOT_TAKEN = {0};
+
+    // One page store per data directory, opened on first use
+    private final Map<String, PageStore> stores = new ConcurrentHashMap<>();
+
+    private final UserStore users = new Users();
+    private final MedicineStore medicines = new Medicines();
+    private final ReminderStore reminders = new Reminders();
+    private final NotificationStore notifications = new Notifications();
+    private final DoseHistoryStore doseHistory = new CsvStorage.DoseHistories();
+
+    @Override
+    public String name() {
+        return NAME;
+    }
+
+    @Override
+    public UserStore users() {
+        return users;
+    }
+
+    @Override
+    public MedicineStore medicines() {
+        return medicines;
+    }
+
+    @Override
+    public ReminderStore reminders() {
+        return reminders;
+    }
+
+    @Override
+    public NotificationStore notifications() {
+        return notifications;
+    }
+
+    @Override
+    public DoseHistoryStore doseHistory() {
+        return doseHistory;
+    }
+
+    public static void main(String[] args) {
+        boolean force = args.length == 1 && args[0].equals("--force");
+        if (args.length > 0 && !force) {
+            System.out.println("Usage: java -cp bin core.PagedStorage [--force]");
+            return;
+        }
+
+        File file = new File(DataLayout.globalFile(FILE_NAME));
+        if (file.exists() && !force) {
+            System.out.println(file.getPath() + " already exists; run with --force to replace it.");
+            return;
+        }
+        if (file.exists() && !file.delete()) {
+            System.err.printf("\n⚠ Could not delete %s\n", file.getPath());
+            return;
+        }
+
+        long started = System.nanoTime();
+        try {
+            long[] counts = importCsv(new CsvStorage(), new PagedStorage());
+            System.out.printf("Imported %d users, %d medicines, %d reminders and %d notifications into %s (%d ms)%n",
+                    counts[0], counts[1], counts[2], counts[3], file.getPath(), (System.nanoTime() - started) / 1_000_000);
+        } catch (IOException | UncheckedIOException e) {
+            System.err.printf("\n⚠ Import failed: %s\n", e.getMessage());
+        }
+    }
+
+    // Copies every user with their medicines, reminders and notifications from one backend to the other
+    private static long[] importCsv(CsvStorage from, PagedStorage to) throws IOException {
+        long[] counts = new long[4];
+        List<User> users = new ArrayList<>();
+        from.users().forEach(users::add);
+        for (User user : users) {
+            to.users().register(user);
+            counts[0]++;
+        }
+
+        // Medicines come back from the CSV store with their current stock, which the ledger keeps as well
+        for (String partition : from.medicines().partitions()) {
+            List<Medicine> batch = new ArrayList<>();
+            from.medicines().forEachIn(partition, batch::add);
+            for (Medicine medicine : batch) {
+                to.medicines().add(medicine);
+                List<Reminder> reminders = from.reminders().findByMedicine(medicine.getUsername(), medicine.getName());
+                counts[2] += to.reminders().addAll(medicine.getUsername(), reminders.iterator(), SCAN_BATCH);
+                counts[1]++;
+            }
+        }
+
+        // Each notifications file is read once, rather than once per user
+        for (String path : DataLayout.allFiles(NOTIFICATIONS_FILE)) {
+            List<Notification> batch = new ArrayList<>();
+            CsvNotificationStore.forEachInFile(path, batch::add);
+            for (Notification notification : batch) {
+                if (to.notifications().add(notification)) {
+                    counts[3]++;
+                }
+            }
+        }
+        return counts;
+    }
+
+    private class Users implements UserStore {
+        @Override
+        public User find(String username) {
+            byte[] record = read(() -> tree(USERS).get(new Key().text(username).bytes()), null);
+            return record == null ? null : decodeOne(record, User::read);
+        }
+
+        @Override
+        public Registration register(User user) {
+            byte[] key = new Key().text(user.getUsername()).bytes();
+            byte[] record = encode(user::write);
+            return write(() -> {
+                BPlusTree tree = tree(USERS);
+                if (tree.get(key) != null) {
+                    return Registration.EXISTS;
+                }
+                tree.put(key, record);
+                return Registration.REGISTERED;
+            }, Registration.FAILED);
+        }
+
+        @Override
+        public void forEach(Consumer<User> consumer) {
+            forEachBatch(USERS, NONE, records -> decode(records, User::read).forEach(consumer));
+        }
+    }
+
+    private class Medicines implements MedicineStore {
+        @Override
+        public boolean add(Medicine medicine) {
+            byte[] key = new Key().text(medicine.getUsername()).text(medicine.getName()).bytes();
+            byte[] record = encode(medicine::write);
+            return write(() -> {
+                tree(MEDICINES).put(key, record);
+                return true;
+            }, false);
+        }
+
+        @Override
+        public List<Medicine> findByUser(String username) {
+            byte[] prefix = new Key().text(username).bytes();
+            List<byte[]> records = new ArrayList<>();
+            read(() -> {
+                tree(MEDICINES).scan(prefix, prefix, (key, value) -> records.add(value));
+                return null;
+            }, null);
+            return withStock(decode(records, Medicine::read));
+        }
+
+        @Override
+        public Medicine find(String username, String medicineName) {
+            byte[] record = read(() -> tree(MEDICINES).get(new Key().text(username).text(medicineName).bytes()), null);
+            Medicine medicine = record == null ? null : decodeOne(record, Medicine::read);
+            return medicine == null ? null : withStock(List.of(medicine)).get(0);
+        }
+
+        @Override
+        public boolean remove(String username, String medicineName) {
+            byte[] key = new Key().text(username).text(medicineName).bytes();
+            return write(() -> tree(MEDICINES).remove(key) != null, false);
+        }
+
+        // The whole tree is one partition; it is walked in batches, so no lock is held while the consumer runs
+        @Override
+        public List<String> partitions() {
+            return List.of(store().getPath());
+        }
+
+        @Override
+        public void forEachIn(String partition, Consumer<Medicine> consumer) {
+            forEachBatch(MEDICINES, NONE, records -> withStock(decode(records, Medicine::read)).forEach(consumer));
+        }
+
+        // Replaces the opening quantities with the current ones from the stock ledger
+        private List<Medicine> withStock(List<Medicine> medicines) {
+            Map<String, Map<String, Integer>> ledgers = new HashMap<>();
+            for (Medicine medicine : medicines) {
+                medicine.applyStock(ledgers.computeIfAbsent(StockLedger.ledgerOf(medicine.getUsername()),
+                        StockLedger::quantitiesIn));
+            }
+            return medicines;
+        }
+    }
+
+    private class Reminders implements ReminderStore {
+        @Override
+        public List<Reminder> findByMedicine(String username, String medicineName) {
+            byte[] prefix = new Key().text(username).text(medicineName).bytes();
+            List<Reminder> reminders = new ArrayList<>();
+            read(() -> {
+                tree(REMINDERS).scan(prefix, prefix, (key, value) -> reminders.add(reminder(username, medicineName, key, value)));
+                return null;
+            }, null);
+            return reminders;
+        }
+
+        @Override
+        public List<Reminder> findBetween(String username, String medicineName, LocalDateTime from, LocalDateTime to) {
+            byte[] prefix = new Key().text(username).text(medicineName).bytes();
+            byte[] start = slot(username, medicineName, from.toLocalDate(), from.toLocalTime());
+            List<Reminder> reminders = new ArrayList<>();
+            read(() -> {
+                tree(REMINDERS).scan(start, prefix, (key, value) -> {
+                    Reminder reminder = reminder(username, medicineName, key, value);
+                    LocalDateTime dateTime = LocalDateTime.of(reminder.getDate(), reminder.getTime());
+                    if (!dateTime.isBefore(to)) {
+                        return false;
+                    }
+                    if (!dateTime.isBefore(from)) {
+                        reminders.add(reminder);
+                    }
+                    return true;
+                });
+                return null;
+            }, null);
+            return reminders;
+        }
+
+        @Override
+        public Reminder findFirstPending(String username, String medicineName, LocalDateTime from) {
+            byte[] prefix = new Key().text(username).text(medicineName).bytes();
+            byte[] start = slot(username, medicineName, from.toLocalDate(), from.toLocalTime());
+            Reminder[] first = new Reminder[1];
+            read(() -> {
+                tree(REMINDERS).scan(start, prefix, (key, value) -> {
+                    Reminder reminder = reminder(username, medicineName, key, value);
+                    if (!reminder.isTaken() && !LocalDateTime.of(reminder.getDate(), reminder.getTime()).isBefore(from)) {
+                        first[0] = reminder;
+                        return false;
+                    }
+                    return true;
+                });
+                return null;
+            }, null);
+            return first[0];
+        }
+
+        @Override
+        public boolean add(Reminder reminder) {
+            byte[] key = slot(reminder.getUsername(), reminder.getMedicineName(), reminder.getDate(), reminder.getTime());
+            return write(() -> {
+                tree(REMINDERS).put(key, reminder.isTaken() ? TAKEN : NOT_TAKEN);
+                return true;
+            }, false);
+        }
+
+        // Writes the changed pages out every batchSize reminders
+        @Override
+        public int addAll(String username, Iterator<Reminder> reminders, int batchSize) throws IOException {
+            try {
+                return store().write(() -> {
+                    BPlusTree tree = tree(REMINDERS);
+                    int written = 0;
+                    while (reminders.hasNext()) {
+                        Reminder reminder = reminders.next();
+                        tree.put(slot(reminder.getUsername(), reminder.getMedicineName(), reminder.getDate(), reminder.getTime()),
+                                reminder.isTaken() ? TAKEN : NOT_TAKEN);
+                        if (++written % batchSize == 0) {
+                            store().flush();
+                        }
+                    }
+                    return written;
+                });
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+        }
+
+        @Override
+        public Marking markAsTaken(String username, String medicineName, LocalDate date, LocalTime time) {
+            byte[] key = slot(username, medicineName, date, time);
+            return write(() -> {
+                BPlusTree tree = tree(REMINDERS);
+                byte[] taken = tree.get(key);
+                if (taken == null) {
+                    return Marking.NOT_FOUND;
+                }
+                if (taken[0] != 0) {
+                    return Marking.ALREADY_TAKEN;
+                }
+                tree.put(key, TAKEN);
+                return Marking.MARKED;
+            }, Marking.FAILED);
+        }
+
+        private byte[] slot(String username, String medicineName, LocalDate date, LocalTime time) {
+            return new Key().text(username).text(medicineName)
+                    .number((int) date.toEpochDay()).number(time.toSecondOfDay()).bytes();
+        }
+
+        // Rebuilds a reminder from the date and time at the end of its key
+        private Reminder reminder(String username, String medicineName, byte[] key, byte[] taken) {
+            int end = key.length;
+            LocalDate date = LocalDate.ofEpochDay(Key.readInt(key, end - 8));
+            LocalTime time = LocalTime.ofSecondOfDay(Key.readInt(key, end - 4));
+            return new Reminder(username, medicineName, time, date, taken[0] != 0);
+        }
+    }
+
+    private class Notifications implements NotificationStore {
+        @Override
+        public boolean add(Notification notification) {
+            return write(() -> {
+                insert(notification);
+                return true;
+            }, false);
+        }
+
+        @Override
+        public boolean addIfAbsent(Notification notification) {
+            byte[] dedupKey = dedupKey(notification);
+            return write(() -> {
+                if (tree(NOTIFICATION_KEYS).get(dedupKey) != null) {
+                    return false;
+                }
+                insert(notification);
+                return true;
+            }, false);
+        }
+
+        @Override
+        public List<Notification> findByUser(String username) {
+            byte[] prefix = new Key().text(username).bytes();
+            List<byte[]> records = new ArrayList<>();
+            read(() -> {
+                tree(NOTIFICATIONS).scan(prefix, prefix, (key, value) -> records.add(value));
+                return null;
+            }, null);
+            return decode(records, Notification::read);
+        }
+
+        // Rewrites the matching records after the scan, since a longer record may split a page
+        @Override
+        public void markProcessed(String username, Set<String> messages) {
+            if (messages.isEmpty()) {
+                return;
+            }
+            byte[] prefix = new Key().text(username).bytes();
+            write(() -> {
+                BPlusTree tree = tree(NOTIFICATIONS);
+                Map<byte[], Notification> changed = new LinkedHashMap<>();
+                tree.scan(prefix, prefix, (key, value) -> {
+                    Notification notification = decodeOne(value, Notification::read);
+                    if (messages.contains(notification.getMessage()) && !notification.isProcessed()) {
+                        notification.markProcessed();
+                        changed.put(key, notification);
+                    }
+                    return true;
+                });
+                for (Map.Entry<byte[], Notification> entry : changed.entrySet()) {
+                    tree.put(entry.getKey(), encode(entry.getValue()::write));
+                }
+                return null;
+            }, null);
+        }
+
+        // Files the record under the next sequence number together with its dedup key; the caller holds the store
+        private void insert(Notification notification) throws IOException {
+            long sequence = store().nextValue(NOTIFICATIONS);
+            tree(NOTIFICATIONS).put(new Key().text(notification.getUsername()).number(sequence).bytes(),
+                    encode(notification::write));
+            tree(NOTIFICATION_KEYS).put(dedupKey(notification), NONE);
+        }
+
+        private byte[] dedupKey(Notification notification) {
+            return new Key().text(notification.getUsername()).text(notification.getType().name())
+                    .text(notification.getMessage()).bytes();
+        }
+    }
+
+    // Page store of the current data directory
+    private PageStore store() {
+        return stores.computeIfAbsent(DataLayout.globalFile(FILE_NAME), PageStore::new);
+    }
+
+    private BPlusTree tree(int slot) {
+        return new BPlusTree(store(), slot);
+    }
+
+    // Runs a read, returning the fallback if the store cannot be read
+    private <T> T read(PageStore.Operation<T> operation, T fallback) {
+        try {
+            return store().read(operation);
+        } catch (UncheckedIOException e) {
+            e.printStackTrace();
+            return fallback;
+        }
+    }
+
+    // Runs a change, returning the fallback if it could not be written
+    private <T> T write(PageStore.Operation<T> operation, T fallback) {
+        try {
+            return store().write(operation);
+        } catch (UncheckedIOException | IllegalArgumentException e) {
+            e.printStackTrace();
+            return fallback;
+        }
+    }
+
+    // Hands the records under a prefix to the consumer SCAN_BATCH at a time, each batch read
+    // under its own lock hold, so the consumer runs with the store unlocked
+    private void forEachBatch(int slot, byte[] prefix, Consumer<List<byte[]>> consumer) {
+        byte[] from = prefix;
+        while (true) {
+            byte[] start = from;
+            List<byte[]> keys = new ArrayList<>();
+            List<byte[]> records = new ArrayList<>();
+            read(() -> {
+                tree(slot).scan(start, prefix, (key, value) -> {
+                    keys.add(key);
+                    records.add(value);
+                    return records.size() < SCAN_BATCH;
+                });
+                return null;
+            }, null);
+            if (!records.isEmpty()) {
+                consumer.accept(records);
+            }
+            if (records.size() < SCAN_BATCH) {
+                return;
+            }
+            // The smallest key after the last one read
+            from = Arrays.copyOf(keys.get(keys.size() - 1), keys.get(keys.size() - 1).length + 1);
+        }
+    }
+
+    // Writes one record with the entity's CSV encoder
+    private interface Encoder {
+        void write(CsvWriter writer) throws IOException;
+    }
+
+    private static byte[] encode(Encoder encoder) {
+        StringWriter out = new StringWriter();
+        try (CsvWriter writer = new CsvWriter(out)) {
+            encoder.write(writer);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    // Decodes a batch of records through one reader
+    private static <T> List<T> decode(List<byte[]> records, Function<CsvReader, T> decoder) {
+        List<T> decoded = new ArrayList<>(records.size());
+        if (records.isEmpty()) {
+            return decoded;
+        }
+        StringBuilder text = new StringBuilder(records.size() * 64);
+        for (byte[] record : records) {
+            text.append(new String(record, StandardCharsets.UTF_8));
+        }
+        try (CsvReader reader = CsvReader.of(text.toString())) {
+            while (reader.next()) {
+                decoded.add(decoder.apply(reader));
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        return decoded;
+    }
+
+    private static <T> T decodeOne(byte[] record, Function<CsvReader, T> decoder) {
+        List<T> decoded = decode(List.of(record), decoder);
+        return decoded.isEmpty() ? null : decoded.get(0);
+    }
+
+    // Builds a composite key that sorts field by field
+    private static class Key {
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+
+        Key text(String value) {
+            bytes.writeBytes(value.getBytes(StandardCharsets.UTF_8));
+            bytes.write(0);
+            return this;
+        }
+
+        Key number(int value) {
+            int flipped = value ^ Integer.MIN_VALUE;
+            for (int shift = 24; shift >= 0; shift -= 8) {
+                bytes.write(flipped >>> shift);
+            }
+            return this;
+        }
+
+        Key number(long value) {
+            long flipped = value ^ Long.MIN_VALUE;
+            for (int shift = 56; shift >= 0; shift -= 8) {
+                bytes.write((int) (flipped >>> shift));
+            }
+            return this;
+        }
+
+        byte[] bytes() {
+            return bytes.toByteArray();
+        }
+
+        static int readInt(byte[] key, int offset) {
+            int value = 0;
+            for (int i = 0; i < 4; i++) {
+                value = (value << 8) | (key[offset + i] & 0xFF);
+            }
+            return value ^ Integer.MIN_VALUE;
+        }
+    }
+}
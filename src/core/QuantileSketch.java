@@ -0,0 +1,93 @@
+package core;
+
+import java.util.Arrays;
+
+// Mergeable quantile sketch for non-negative values.
+// Values are counted in logarithmic buckets whose width grows with the value, so every
+// quantile is answered within a fixed relative error (1% by default) while the sketch only
+// holds one counter per occupied bucket. Zero and values below one go to a separate counter.
+// Two sketches with the same accuracy merge by adding their counters, which is what lets
+// partial results from parallel scans be combined.
+public class QuantileSketch {
+    private static final double DEFAULT_RELATIVE_ACCURACY = 0.01;
+
+    private final double gamma;
+    private final double logGamma;
+    private long[] counts = new long[0];
+    private int offset = 0; // Bucket index stored in counts[0]
+    private long zeroCount = 0;
+    private long count = 0;
+
+    public QuantileSketch() {
+        this(DEFAULT_RELATIVE_ACCURACY);
+    }
+
+    public QuantileSketch(double relativeAccuracy) {
+        this.gamma = (1 + relativeAccuracy) / (1 - relativeAccuracy);
+        this.logGamma = Math.log(gamma);
+    }
+
+    public void add(double value) {
+        count++;
+        if (value < 1) {
+            zeroCount++;
+            return;
+        }
+        int index = (int) Math.ceil(Math.log(value) / logGamma);
+        ensureBucket(index);
+        counts[index - offset]++;
+    }
+
+    // Adds the other sketch's counts to this one
+    public void merge(QuantileSketch other) {
+        if (other.gamma != gamma) {
+            throw new IllegalArgumentException("Sketches with different accuracy cannot be merged");
+        }
+        count += other.count;
+        zeroCount += other.zeroCount;
+        for (int i = 0; i < other.counts.length; i++) {
+            if (other.counts[i] != 0) {
+                ensureBucket(other.offset + i);
+                counts[other.offset + i - offset] += other.counts[i];
+            }
+        }
+    }
+
+    // Estimated value at the given quantile (0 to 1), or 0 if nothing was added
+    public double quantile(double quantile) {
+        if (count == 0) {
+            return 0;
+        }
+        long rank = (long) Math.floor(quantile * (count - 1));
+        if (rank < zeroCount) {
+            return 0;
+        }
+        long seen = zeroCount;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen > rank) {
+                return 2 * Math.pow(gamma, offset + i) / (gamma + 1);
+            }
+        }
+        return 2 * Math.pow(gamma, offset + counts.length - 1) / (gamma + 1);
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    // Grows the counter array so it covers the given bucket index
+    private void ensureBucket(int index) {
+        if (counts.length == 0) {
+            counts = new long[8];
+            offset = index;
+        } else if (index < offset) {
+            long[] grown = new long[counts.length + (offset - index)];
+            System.arraycopy(counts, 0, grown, offset - index, counts.length);
+            counts = grown;
+            offset = index;
+        } else if (index - offset >= counts.length) {
+            counts = Arrays.copyOf(counts, Math.max(index - offset + 1, counts.length * 2));
+        }
+    }
+}
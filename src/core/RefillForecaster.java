@@ -0,0 +1,106 @@
+package core;
+
+import core.storage.MedicineStore;
+import core.storage.Storage;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+// Batch refill forecast over every medicine of every user.
+// Each partition of the medicine store is read once, with the current stock from the ledger.
+// For every course that has not ended, the stock is turned into days of supply at the
+// medicine's doses per day and compared with the days left until its end date. If the stock
+// will not last the course and runs out within the horizon, a REFILL notification naming
+// the run-out date is raised. The notification index drops repeats, and the run-out date
+// only moves when the stock does, so running this every night raises each warning once.
+//
+// Run with: java -cp bin core.RefillForecaster [--horizon=7] [--today=yyyy-MM-dd]
+public class RefillForecaster {
+    // Days ahead a run-out is reported, overridable with -Drefill.horizonDays or --horizon
+    private static final int DEFAULT_HORIZON_DAYS = Integer.getInteger("refill.horizonDays", 7);
+
+    // Counts of one forecast run
+    public static class Result {
+        private long medicines = 0;
+        private long shortages = 0;
+        private long raised = 0;
+
+        public long getMedicines() {
+            return medicines;
+        }
+
+        public long getShortages() {
+            return shortages;
+        }
+
+        public long getRaised() {
+            return raised;
+        }
+    }
+
+    public static void main(String[] args) {
+        int horizonDays = DEFAULT_HORIZON_DAYS;
+        LocalDate today = LocalDate.now();
+        for (String arg : args) {
+            String[] pair = arg.split("=", 2);
+            switch (pair[0]) {
+                case "--horizon" -> horizonDays = Integer.parseInt(pair[1]);
+                case "--today" -> today = LocalDate.parse(pair[1]);
+                default -> {
+                    System.out.println("Usage: java -cp bin core.RefillForecaster [--horizon=7] [--today=yyyy-MM-dd]");
+                    return;
+                }
+            }
+        }
+
+        long started = System.nanoTime();
+        Result result = forecast(today, horizonDays);
+        System.out.printf("Checked %d medicines: %d run out within %d days, %d new REFILL notifications (%d ms)%n",
+                result.medicines, result.shortages, horizonDays, result.raised, (System.nanoTime() - started) / 1_000_000);
+    }
+
+    // Scans every medicine once and raises the REFILL notifications that are due
+    public static Result forecast(LocalDate today, int horizonDays) {
+        Result result = new Result();
+        MedicineStore medicines = Storage.medicines();
+        for (String partition : medicines.partitions()) {
+            // Notifications are written after the scan, since the medicine store may be locked during it
+            List<Medicine> shortages = new ArrayList<>();
+            medicines.forEachIn(partition, medicine -> {
+                result.medicines++;
+                if (runOutDate(medicine, today, horizonDays) != null) {
+                    shortages.add(medicine);
+                }
+            });
+
+            for (Medicine medicine : shortages) {
+                result.shortages++;
+                if (NotificationManager.addRefillNotification(medicine.getUsername(),
+                        message(medicine, runOutDate(medicine, today, horizonDays)))) {
+                    result.raised++;
+                }
+            }
+        }
+        return result;
+    }
+
+    // Date the stock runs out, if that is before the end of the course and within the horizon; null otherwise
+    static LocalDate runOutDate(Medicine medicine, LocalDate today, int horizonDays) {
+        int dosesPerDay = medicine.getTimes().length;
+        if (dosesPerDay == 0 || medicine.getEndDate().isBefore(today)) {
+            return null;
+        }
+        LocalDate from = medicine.getStartDate().isAfter(today) ? medicine.getStartDate() : today;
+        long daysLeft = medicine.getEndDate().toEpochDay() - from.toEpochDay() + 1;
+        long daysOfSupply = Math.max(0, medicine.getQuantity()) / dosesPerDay;
+        if (daysOfSupply >= daysLeft || from.plusDays(daysOfSupply).isAfter(today.plusDays(horizonDays))) {
+            return null;
+        }
+        return from.plusDays(daysOfSupply);
+    }
+
+    private static String message(Medicine medicine, LocalDate runOut) {
+        return String.format("Refill %s: stock runs out on %s", medicine.getName(), runOut);
+    }
+}
@@ -1,5 +1,10 @@
 package core;
 
+import core.io.CsvReader;
+import core.io.CsvWriter;
+import core.storage.ReminderStore.Marking;
+import core.storage.Storage;
+
 import java.io.*;
 import java.time.DateTimeException;
 import java.time.LocalDate;
@@ -15,8 +20,8 @@ public class Reminder {
     private LocalDate date;
     private boolean isTaken;
 
-    private static final String FILE_PATH = "data/reminders.txt";
-    private static final String MEDICINE_FILE_PATH = "data/medicines.txt";
+    // Rows written between flushes during schedule generation, overridable with -Dreminder.batchSize
+    private static final int BATCH_SIZE = Integer.getInteger("reminder.batchSize", 1000);
 
     // Constructor
     public Reminder(String username, String medicineName, LocalTime time, LocalDate date, boolean isTaken) {
@@ -27,50 +32,89 @@ public class Reminder {
         this.isTaken = isTaken;
     }
 
-    // Adds a new reminder to the file
+    // Adds a new reminder to the store
     public static boolean addReminder(Reminder reminder) {
-        ensureFileExists();
-
-        try (BufferedWriter writer = new BufferedWriter(new FileWriter(FILE_PATH, true))) {
-            String reminderData = String.join(",", reminder.username, reminder.medicineName, reminder.time.toString(),
-                    reminder.date.toString(), String.valueOf(reminder.isTaken));
-            writer.write(reminderData);
-            writer.newLine();
-            return true;
-        } catch (IOException e) {
-            e.printStackTrace();
-            return false;
+        boolean added = Storage.reminders().add(reminder);
+        if (added) {
+            DashboardState.remindersChanged(reminder.username);
         }
+        return added;
     }
 
-    // Retrieves all reminders for a specific medicine
+    // Retrieves all reminders for a specific medicine, sorted by date and time
     public static List<Reminder> getRemindersByMedicine(String username, String medicineName) {
-        ensureFileExists();
-        List<Reminder> reminders = new ArrayList<>();
-
-        try (BufferedReader reader = new BufferedReader(new FileReader(FILE_PATH))) {
-            String line;
-            while ((line = reader.readLine()) != null) {
-                String[] data = line.split(",");
-                if (data[0].equals(username) && data[1].equals(medicineName)) {
-                    Reminder reminder = new Reminder(data[0], data[1], LocalTime.parse(data[2]),
-                            LocalDate.parse(data[3]), Boolean.parseBoolean(data[4]));
+        if (VirtualSchedule.isEnabled()) {
+            List<Reminder> reminders = new ArrayList<>();
+            Medicine medicine = Medicine.getUserMedicine(username, medicineName);
+            if (medicine != null) {
+                VirtualSchedule.iterate(medicine).forEachRemaining(reminders::add);
+            }
+            return reminders;
+        }
+        return Storage.reminders().findByMedicine(username, medicineName);
+    }
+
+    // Iterates the reminders for a specific medicine in date and time order. Computed schedules
+    // produce each reminder only as it is read.
+    public static Iterator<Reminder> iterateRemindersByMedicine(String username, String medicineName) {
+        if (VirtualSchedule.isEnabled()) {
+            Medicine medicine = Medicine.getUserMedicine(username, medicineName);
+            return medicine == null ? Collections.emptyIterator() : VirtualSchedule.iterate(medicine);
+        }
+        return Storage.reminders().findByMedicine(username, medicineName).iterator();
+    }
+
+    // Retrieves the reminders for a specific medicine scheduled in [from, to), sorted by date and time
+    public static List<Reminder> getRemindersBetween(String username, String medicineName, LocalDateTime from, LocalDateTime to) {
+        if (VirtualSchedule.isEnabled()) {
+            List<Reminder> reminders = new ArrayList<>();
+            Medicine medicine = Medicine.getUserMedicine(username, medicineName);
+            if (medicine == null) {
+                return reminders;
+            }
+            Iterator<Reminder> slots = VirtualSchedule.iterate(medicine, from.toLocalDate());
+            while (slots.hasNext()) {
+                Reminder reminder = slots.next();
+                LocalDateTime dateTime = LocalDateTime.of(reminder.getDate(), reminder.getTime());
+                if (!dateTime.isBefore(to)) {
+                    break;
+                }
+                if (!dateTime.isBefore(from)) {
                     reminders.add(reminder);
                 }
             }
-        } catch (IOException e) {
-            e.printStackTrace();
+            return reminders;
+        }
+        return Storage.reminders().findBetween(username, medicineName, from, to);
+    }
+
+    // Retrieves the first untaken reminder for a specific medicine scheduled at or after the given time
+    public static Reminder getNextPendingReminder(String username, String medicineName, LocalDateTime from) {
+        if (VirtualSchedule.isEnabled()) {
+            Medicine medicine = Medicine.getUserMedicine(username, medicineName);
+            if (medicine == null) {
+                return null;
+            }
+            Iterator<Reminder> slots = VirtualSchedule.iterate(medicine, from.toLocalDate());
+            while (slots.hasNext()) {
+                Reminder reminder = slots.next();
+                if (!reminder.isTaken() && !LocalDateTime.of(reminder.getDate(), reminder.getTime()).isBefore(from)) {
+                    return reminder;
+                }
+            }
+            return null;
         }
-        return reminders;
+        return Storage.reminders().findFirstPending(username, medicineName, from);
     }
 
     // Retrieves the next dose date and time for a specific medicine
     public static LocalDateTime getNextDoseDateTime(String username, String medicineName) {
-        ensureFileExists();
-        List<Reminder> reminders = getRemindersByMedicine(username, medicineName);
+        if (VirtualSchedule.isEnabled()) {
+            Medicine medicine = Medicine.getUserMedicine(username, medicineName);
+            return medicine == null ? null : VirtualSchedule.getNextDoseDateTime(medicine);
+        }
 
-        // Sorting reminders by date and time to find the next dose time
-        reminders.sort(Comparator.comparing(Reminder::getDate).thenComparing(Reminder::getTime));
+        List<Reminder> reminders = getRemindersByMedicine(username, medicineName);
 
         for (Reminder reminder : reminders) {
             if (!reminder.isTaken) {
@@ -81,86 +125,39 @@ public class Reminder {
     }
 
 
+    // Generates the schedule for a medicine and prints a summary of the run
     public static void generateMedicineSchedule(String username, String medicineName) {
-        ensureFileExists();
-        try (BufferedReader reader = new BufferedReader(new FileReader(MEDICINE_FILE_PATH))) {
-            String line;
-            boolean medicineFound = false;
-
-            while ((line = reader.readLine()) != null) {
-                String[] data = line.split(",");
-                if (data[0].equals(username) && data[1].equals(medicineName)) {
-                    medicineFound = true;
-
-                    // Parse medicine data
-                    String[] timesArray = data[4].split(";");
-                    LocalTime[] times = new LocalTime[timesArray.length];
-                    for (int i = 0; i < timesArray.length; i++) {
-                        times[i] = LocalTime.parse(timesArray[i]);
-                    }
-
-                    LocalDate startDate = LocalDate.parse(data[5]);
-                    LocalDate endDate = LocalDate.parse(data[6]);
-
-                    // Get existing reminders
-                    List<Reminder> existingReminders = getRemindersByMedicine(username, medicineName);
-                    Set<LocalDateTime> existingDateTimeSet = new HashSet<>();
-                    for (Reminder r : existingReminders) {
-                        existingDateTimeSet.add(LocalDateTime.of(r.getDate(), r.getTime()));
-                    }
-
-                    int newRemindersAdded = 0;
-                    int duplicatesSkipped = 0;
-
-                    // Generate reminders
-                    for (LocalTime time : times) {
-                        LocalDate currentDate = startDate;
-                        while (!currentDate.isAfter(endDate)) {
-                            LocalDateTime potentialDateTime = LocalDateTime.of(currentDate, time);
-
-                            if (!existingDateTimeSet.contains(potentialDateTime)) {
-                                Reminder reminder = new Reminder(
-                                        username,
-                                        medicineName,
-                                        time,
-                                        currentDate,
-                                        false
-                                );
-                                if (addReminder(reminder)) {
-                                    newRemindersAdded++;
-                                }
-                            } else {
-                                duplicatesSkipped++;
-                            }
-                            currentDate = currentDate.plusDays(1);
-                        }
-                    }
-
-                    // Print user feedback
-                    UI.printBoxedTitle("Schedule Generation Summary");
-                    UI.printBoxedTitle("Medicine Name: " + medicineName);
-                    String dateRange = startDate.toString() + " - " + endDate.toString();
-                    UI.printBoxedTitle("Date Range : " + dateRange);
-
-                    if (newRemindersAdded > 0) {
-                        UI.printBoxedTitle("Added " + newRemindersAdded + " Reminders");
-                    }
-                    if (duplicatesSkipped > 0) {
-                        UI.printBoxedTitle("Skipped " + duplicatesSkipped + " Reminders");
-                    }
-
-                    if (newRemindersAdded == 0 && duplicatesSkipped > 0) {
-                        UI.printBoxedTitle("Complete schedule already exists!");
-                    } else if (newRemindersAdded == 0) {
-                        UI.printBoxedTitle("No reminder generated, invalit config!");
-                    }
+        if (VirtualSchedule.isEnabled()) {
+            UI.printBoxedTitle("Schedule for " + medicineName + " is computed on demand");
+            return;
+        }
 
-                    break;
-                }
-            }
+        try {
+            ScheduleResult result = generateSchedule(username, medicineName);
 
-            if (!medicineFound) {
+            if (result == null) {
                 UI.printBoxedTitle("Error: Medicine" + medicineName + " not found for " + username);
+                return;
+            }
+
+            // Print user feedback
+            UI.printBoxedTitle("Schedule Generation Summary");
+            UI.printBoxedTitle("Medicine Name: " + medicineName);
+            String dateRange = result.getStartDate().toString() + " - " + result.getEndDate().toString();
+            UI.printBoxedTitle("Date Range : " + dateRange);
+
+            if (result.getAdded() > 0) {
+                UI.printBoxedTitle("Added " + result.getAdded() + " Reminders");
+                UI.printBoxedTitle("Wrote in " + result.getElapsedMillis() + " ms (" + result.getRowsPerSecond() + " rows/s)");
+            }
+            if (result.getSkipped() > 0) {
+                UI.printBoxedTitle("Skipped " + result.getSkipped() + " Reminders");
+            }
+
+            if (result.getAdded() == 0 && result.getSkipped() > 0) {
+                UI.printBoxedTitle("Complete schedule already exists!");
+            } else if (result.getAdded() == 0) {
+                UI.printBoxedTitle("No reminder generated, invalit config!");
             }
         } catch (IOException e) {
             System.err.printf("\n⚠ Error generating schedule: %s\n", e.getMessage());
@@ -169,6 +166,97 @@ public class Reminder {
         }
     }
 
+    // Generates every missing reminder between a medicine's start and end dates and streams them
+    // to the reminder store in batches. Returns null if the medicine does not exist.
+    // In virtual schedule mode nothing is materialized and the result reports no rows.
+    public static ScheduleResult generateSchedule(String username, String medicineName) throws IOException {
+        Medicine medicine = Medicine.getUserMedicine(username, medicineName);
+        if (medicine == null) {
+            return null;
+        }
+        if (VirtualSchedule.isEnabled()) {
+            return new ScheduleResult(medicineName, medicine.getStartDate(), medicine.getEndDate(), 0, 0, 0);
+        }
+
+        // Get existing reminders
+        List<Reminder> existingReminders = getRemindersByMedicine(username, medicineName);
+        Set<LocalDateTime> existingDateTimeSet = new HashSet<>();
+        for (Reminder r : existingReminders) {
+            existingDateTimeSet.add(LocalDateTime.of(r.getDate(), r.getTime()));
+        }
+
+        SlotIterator slots = new SlotIterator(username, medicineName, medicine.getTimes(),
+                medicine.getStartDate(), medicine.getEndDate(), existingDateTimeSet);
+        long started = System.nanoTime();
+        int added = Storage.reminders().addAll(username, slots, BATCH_SIZE);
+        long elapsed = System.nanoTime() - started;
+
+        if (added > 0) {
+            // New slots may lie behind the scan watermarks or ahead of the armed dispatcher
+            ReminderScanner.rewind(username, medicine.getStartDate().atStartOfDay());
+            ReminderDispatcher.refresh(username, medicineName);
+            DashboardState.remindersChanged(username);
+        }
+
+        return new ScheduleResult(medicineName, medicine.getStartDate(), medicine.getEndDate(), added, slots.skipped, elapsed);
+    }
+
+    // Walks every (time, date) slot of a medicine, time by time, yielding the slots
+    // that are not already scheduled and counting the ones that are
+    private static class SlotIterator implements Iterator<Reminder> {
+        private final String username;
+        private final String medicineName;
+        private final LocalTime[] times;
+        private final LocalDate startDate;
+        private final LocalDate endDate;
+        private final Set<LocalDateTime> existing;
+
+        private int timeIndex = 0;
+        private LocalDate currentDate;
+        private Reminder next;
+        private int skipped = 0;
+
+        SlotIterator(String username, String medicineName, LocalTime[] times, LocalDate startDate, LocalDate endDate,
+                     Set<LocalDateTime> existing) {
+            this.username = username;
+            this.medicineName = medicineName;
+            this.times = times;
+            this.startDate = startDate;
+            this.endDate = endDate;
+            this.existing = existing;
+            this.currentDate = startDate;
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (next == null && timeIndex < times.length) {
+                if (currentDate.isAfter(endDate)) {
+                    timeIndex++;
+                    currentDate = startDate;
+                    continue;
+                }
+                LocalTime time = times[timeIndex];
+                if (existing.contains(LocalDateTime.of(currentDate, time))) {
+                    skipped++;
+                } else {
+                    next = new Reminder(username, medicineName, time, currentDate, false);
+                }
+                currentDate = currentDate.plusDays(1);
+            }
+            return next != null;
+        }
+
+        @Override
+        public Reminder next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            Reminder reminder = next;
+            next = null;
+            return reminder;
+        }
+    }
+
     // Parses the times field (for example, "08:00,12:00,18:00" for three doses a day)
     private static LocalTime[] parseTimes(String timesData) {
         String[] timesArray = timesData.split(",");
@@ -179,54 +267,44 @@ public class Reminder {
         return times;
     }
 
-    // Add this method to update reminder status
-    public static boolean markReminderAsTaken(String username, String medicineName, LocalDate date, LocalTime time) {
-        List<String> lines = new ArrayList<>();
-        boolean found = false;
-
-        try (BufferedReader reader = new BufferedReader(new FileReader(FILE_PATH))) {
-            String line;
-            while ((line = reader.readLine()) != null) {
-                String[] data = line.split(",");
-                if (data[0].equals(username)
-                        && data[1].equals(medicineName)
-                        && data[3].equals(date.toString())
-                        && data[2].equals(time.toString())) {
-                    lines.add(String.join(",", data[0], data[1], data[2], data[3], "true")); // Mark as taken
-                    found = true;
-                } else {
-                    lines.add(line);
-                }
-            }
-        } catch (IOException e) {
-            e.printStackTrace();
-            return false;
+    // Add this method to update reminder status. Only MARKED means the dose was not taken before.
+    public static Marking markReminderAsTaken(String username, String medicineName, LocalDate date, LocalTime time) {
+        Marking marking;
+        if (VirtualSchedule.isEnabled()) {
+            Medicine medicine = Medicine.getUserMedicine(username, medicineName);
+            marking = medicine == null ? Marking.NOT_FOUND : VirtualSchedule.markTaken(medicine, date, time);
+        } else {
+            marking = Storage.reminders().markAsTaken(username, medicineName, date, time);
         }
-
-        if (found) {
-            try (BufferedWriter writer = new BufferedWriter(new FileWriter(FILE_PATH))) {
-                for (String line : lines) {
-                    writer.write(line);
-                    writer.newLine();
-                }
-            } catch (IOException e) {
-                e.printStackTrace();
-            }
+        if (marking == Marking.MARKED) {
+            DashboardState.remindersChanged(username);
         }
-        return found;
+        return marking;
     }
 
-    // Ensures the reminder file exists
-    private static void ensureFileExists() {
-        File file = new File(FILE_PATH);
-        if (!file.exists()) {
-            try {
-                file.getParentFile().mkdirs();
-                file.createNewFile();
-            } catch (IOException e) {
-                e.printStackTrace();
+    // Records a dose the user explicitly did not take. Only virtual schedules keep this,
+    // materialized reminders simply stay untaken.
+    public static boolean markReminderAsSkipped(String username, String medicineName, LocalDate date, LocalTime time) {
+        if (VirtualSchedule.isEnabled()) {
+            Medicine medicine = Medicine.getUserMedicine(username, medicineName);
+            if (medicine != null && VirtualSchedule.markSkipped(medicine, date, time)) {
+                DashboardState.remindersChanged(username);
+                return true;
             }
         }
+        return false;
+    }
+
+    // Decodes the current record: username,medicineName,time,date,isTaken
+    static Reminder read(CsvReader reader) {
+        return new Reminder(reader.field(0), reader.field(1), reader.timeField(2),
+                reader.dateField(3), reader.booleanField(4));
+    }
+
+    // Encodes this reminder as one record
+    void write(CsvWriter writer) throws IOException {
+        writer.field(username).field(medicineName).field(time).field(date).field(isTaken);
+        writer.endRecord();
     }
 
     // Getters for reminder properties
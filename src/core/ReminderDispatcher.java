@@ -0,0 +1,202 @@
+package core;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+// Background dispatcher that raises MEDICINE_TIME notifications at dose time.
+// Every watched (user, medicine) pair has one entry holding its next pending slot. Entries
+// sit in a queue ordered by due instant and a single timer task is armed for the head, so
+// the dispatcher wakes only when a dose is actually due, however many reminders exist.
+// When an entry fires it raises the notification and re-arms from the medicine's next
+// pending slot.
+// The class monitor guards only the queue and the maps. Reminders are read and notifications
+// written outside it, so logins, schedule changes and firing for different users do not wait
+// on each other's files. Each lookup takes a ticket under the monitor first, and its result is
+// only installed if no newer lookup of the same medicine was started meanwhile.
+public class ReminderDispatcher {
+    private static final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "reminder-dispatcher");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private static final PriorityQueue<Entry> queue = new PriorityQueue<>(Comparator.comparing(e -> e.dueAt));
+    private static final Map<String, Entry> entries = new HashMap<>();
+    private static final Set<String> watchedUsers = new HashSet<>();
+    private static final Map<String, Long> latestTickets = new HashMap<>(); // Newest lookup per medicine
+    private static long lastTicket = 0;
+
+    private static ScheduledFuture<?> armed;
+    private static LocalDateTime armedFor;
+
+    // Starts dispatching the reminders of every medicine of a user
+    public static void watch(String username) {
+        synchronized (ReminderDispatcher.class) {
+            if (!watchedUsers.add(username)) {
+                return;
+            }
+        }
+        List<Lookup> lookups = new ArrayList<>();
+        for (Medicine medicine : Medicine.getUserMedicines(username)) {
+            lookups.add(new Lookup(username, medicine.getName()));
+        }
+        schedule(lookups, LocalDateTime.now());
+    }
+
+    // Stops dispatching for a user and drops their pending entries
+    public static synchronized void unwatch(String username) {
+        if (!watchedUsers.remove(username)) {
+            return;
+        }
+        Iterator<Entry> iterator = entries.values().iterator();
+        while (iterator.hasNext()) {
+            Entry entry = iterator.next();
+            if (entry.username.equals(username)) {
+                entry.cancelled = true;
+                iterator.remove();
+            }
+        }
+        latestTickets.keySet().removeIf(key -> key.startsWith(username + "\u0000"));
+        arm();
+    }
+
+    // Re-reads the next pending slot of a medicine after its reminders changed
+    public static void refresh(String username, String medicineName) {
+        schedule(new ArrayList<>(List.of(new Lookup(username, medicineName))), LocalDateTime.now());
+    }
+
+    // Fires every entry that is due, then re-arms for the new head of the queue
+    private static void fire() {
+        LocalDateTime now = LocalDateTime.now();
+        List<Entry> due = new ArrayList<>();
+        synchronized (ReminderDispatcher.class) {
+            armed = null;
+            armedFor = null;
+            while (!queue.isEmpty() && !queue.peek().dueAt.isAfter(now)) {
+                Entry entry = queue.poll();
+                if (!entry.cancelled) {
+                    entries.remove(key(entry.username, entry.medicineName));
+                    due.add(entry);
+                }
+            }
+        }
+
+        // Normally one slot, more if the process was suspended past several doses
+        LocalDateTime until = now.plusNanos(1);
+        List<Lookup> lookups = new ArrayList<>();
+        for (Entry entry : due) {
+            for (Reminder reminder : Reminder.getRemindersBetween(entry.username, entry.medicineName, entry.dueAt, until)) {
+                if (!reminder.isTaken()) {
+                    NotificationManager.addMedicineTimeNotification(entry.username, entry.medicineName,
+                            LocalDateTime.of(reminder.getDate(), reminder.getTime()));
+                }
+            }
+            lookups.add(new Lookup(entry.username, entry.medicineName));
+        }
+        schedule(lookups, until);
+    }
+
+    // Replaces the entries of the given medicines with ones for their first pending slot at or
+    // after the given time, then re-arms. The slots are read outside the monitor.
+    private static void schedule(List<Lookup> lookups, LocalDateTime from) {
+        synchronized (ReminderDispatcher.class) {
+            lookups.removeIf(lookup -> !watchedUsers.contains(lookup.username));
+            for (Lookup lookup : lookups) {
+                lookup.ticket = ++lastTicket;
+                latestTickets.put(lookup.key(), lookup.ticket);
+            }
+        }
+        if (lookups.isEmpty()) {
+            synchronized (ReminderDispatcher.class) {
+                arm(); // A fired entry may have left a new head
+            }
+            return;
+        }
+
+        for (Lookup lookup : lookups) {
+            lookup.next = Reminder.getNextPendingReminder(lookup.username, lookup.medicineName, from);
+        }
+
+        synchronized (ReminderDispatcher.class) {
+            for (Lookup lookup : lookups) {
+                if (!watchedUsers.contains(lookup.username)
+                        || !Objects.equals(latestTickets.get(lookup.key()), lookup.ticket)) {
+                    continue; // Unwatched since, or a newer lookup will install its own result
+                }
+                Entry previous = entries.remove(lookup.key());
+                if (previous != null) {
+                    previous.cancelled = true; // Lazily dropped when it reaches the head of the queue
+                }
+                if (lookup.next != null) {
+                    Entry entry = new Entry(lookup.username, lookup.medicineName,
+                            LocalDateTime.of(lookup.next.getDate(), lookup.next.getTime()));
+                    entries.put(lookup.key(), entry);
+                    queue.add(entry);
+                }
+            }
+            arm();
+        }
+    }
+
+    // Makes sure exactly one timer task is pending, for the earliest live entry
+    private static void arm() {
+        while (!queue.isEmpty() && queue.peek().cancelled) {
+            queue.poll();
+        }
+        LocalDateTime head = queue.isEmpty() ? null : queue.peek().dueAt;
+        if (Objects.equals(head, armedFor)) {
+            return;
+        }
+
+        if (armed != null) {
+            armed.cancel(false);
+        }
+        armedFor = head;
+        if (head == null) {
+            armed = null;
+            return;
+        }
+        long delay = Math.max(0, Duration.between(LocalDateTime.now(), head).toMillis());
+        armed = timer.schedule(ReminderDispatcher::fire, delay, TimeUnit.MILLISECONDS);
+    }
+
+    private static String key(String username, String medicineName) {
+        return username + "\u0000" + medicineName;
+    }
+
+    // One read of a medicine's next pending slot, made outside the monitor
+    private static class Lookup {
+        private final String username;
+        private final String medicineName;
+        private long ticket;
+        private Reminder next;
+
+        Lookup(String username, String medicineName) {
+            this.username = username;
+            this.medicineName = medicineName;
+        }
+
+        String key() {
+            return ReminderDispatcher.key(username, medicineName);
+        }
+    }
+
+    // Next pending slot of one (user, medicine) pair
+    private static class Entry {
+        private final String username;
+        private final String medicineName;
+        private final LocalDateTime dueAt;
+        private boolean cancelled = false;
+
+        Entry(String username, String medicineName, LocalDateTime dueAt) {
+            this.username = username;
+            this.medicineName = medicineName;
+            this.dueAt = dueAt;
+        }
+    }
+}
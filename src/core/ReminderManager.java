@@ -9,6 +9,8 @@ import UI.*;
 import static controller.Main.currentUser;
 
 public class ReminderManager {
+    // Reminder times are shown to the minute, which is what the Time column is sized for
+    private static final DateTimeFormatter TIME_FORMAT = DateTimeFormatter.ofPattern("HH:mm");
 
     // Method to add a reminder for a selected medicine
     public static void addReminder(String username, String medicineName) {
@@ -21,30 +23,21 @@ public class ReminderManager {
         UI.clearScreen();
         UI.printBoxedTitle("ALL REMINDERS FOR " + medicineName);
 
-        List<Reminder> reminders = Reminder.getRemindersByMedicine(username, medicineName);
-
-        reminders.sort((r1, r2) -> {
-            int dateCompare = r1.getDate().compareTo(r2.getDate());
-            return dateCompare != 0 ? dateCompare : r1.getTime().compareTo(r2.getTime());
-        });
-
-        if (reminders.isEmpty()) {
+        // Already in date and time order; rows are built a page at a time
+        Iterator<Reminder> reminders = Reminder.iterateRemindersByMedicine(username, medicineName);
+        if (!reminders.hasNext()) {
             System.out.println("No reminders found for this medicine.");
             return;
         }
 
         List<String> headers = List.of("Medicine", "Time", "Date", "Taken?");
-        List<List<String>> rows = new ArrayList<>();
-        for (Reminder r : reminders) {
-            rows.add(List.of(
-                    r.getMedicineName(),
-                    r.getTime().toString(),
-                    r.getDate().toString(),
-                    r.isTaken() ? "Yes" : "No"
-            ));
-        }
-
-        UI.displayReminderTable(headers, rows);
+        int[] widths = {medicineName.length(), 5, 10, 3};
+        UI.displayPagedTable(headers, widths, UI.mapRows(reminders, r -> List.of(
+                r.getMedicineName(),
+                r.getTime().format(TIME_FORMAT),
+                r.getDate().toString(),
+                r.isTaken() ? "Yes" : "No"
+        )));
     }
 
     // Method to get the next dose date and time for a specific medicine
@@ -66,39 +59,13 @@ public class ReminderManager {
 
 
 
-    // Check for missed doses (past dates)
+    // Check for missed doses (past dates) completed since the last check
     public static void checkMissedDoses(String username) {
-        List<Medicine> medicines = Medicine.getUserMedicines(username);
-        LocalDate today = LocalDate.now();
-
-        for (Medicine medicine : medicines) {
-            for (Reminder reminder : Reminder.getRemindersByMedicine(username, medicine.getName())) {
-                if (reminder.getDate().isBefore(today) && !reminder.isTaken()) {
-                    String message = String.format("%s missed at %s on %s",
-                            medicine.getName(),
-                            reminder.getTime(),
-                            reminder.getDate());
-                    NotificationManager.addMissedDoseNotification(username, message);
-                }
-            }
-        }
+        ReminderScanner.scanMissed(username);
     }
 
-    // Check for due reminders (current/past date-times)
+    // Check for due reminders (current/past date-times) that fell due since the last check
     public static void checkDueReminders(String username) {
-        List<Medicine> medicines = Medicine.getUserMedicines(username);
-        LocalDateTime now = LocalDateTime.now();
-
-        for (Medicine med : medicines) {
-            for (Reminder rem : Reminder.getRemindersByMedicine(username, med.getName())) {
-                LocalDateTime reminderTime = LocalDateTime.of(rem.getDate(), rem.getTime());
-                if (!rem.isTaken() && reminderTime.isBefore(now)) {
-                    String message = String.format("%s due at %s",
-                            med.getName(),
-                            reminderTime.format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm")));
-                    NotificationManager.addMedicineTimeNotification(username, message);
-                }
-            }
-        }
+        ReminderScanner.scanDue(username);
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,410 @@
+package core;
+
+import core.io.CsvReader;
+import core.io.CsvWriter;
+import core.storage.ReminderStore.Marking;
+
+import java.io.*;
+import java.nio.charset.Charset;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// In-memory index over reminders.txt.
+// The file is parsed once and every reminder is filed under its (username, medicineName) key
+// in a list kept sorted by date and time, so lookups no longer rescan the whole file.
+// Status changes are not written into reminders.txt directly: they are appended to
+// reminders.journal as "TAKEN,user,medicine,date,time" records and replayed over the base
+// file on load. Once the journal grows past a threshold it is folded back into the base
+// file on a background thread.
+// Each reminders file gets its own store, guarded by the UserLocks stripe of that file, so
+// with a sharded data layout every user is indexed, updated and compacted in parallel.
+// Lookups take the read lock. A reload builds a new index and swaps it in, so lookups that
+// run at the same time keep reading the one they started with.
+@SuppressWarnings("try")
+public class ReminderRepository {
+    private static final String FILE_NAME = "reminders.txt";
+    private static final String JOURNAL_NAME = "reminders.journal";
+    private static final String TAKEN_RECORD = "TAKEN";
+    private static final String LEGACY_TAKEN_PREFIX = "TAKEN "; // Journals written as "TAKEN user,..."
+
+    // Journal size in bytes that triggers a compaction, overridable with -Dreminder.journal.compactBytes
+    private static final long COMPACTION_THRESHOLD = Long.getLong("reminder.journal.compactBytes", 1024 * 1024);
+
+    private static final Comparator<Reminder> BY_DATE_TIME =
+            Comparator.comparing(Reminder::getDate).thenComparing(Reminder::getTime);
+
+    private static final Map<String, Store> stores = new ConcurrentHashMap<>();
+
+    private static final ExecutorService compactor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "reminder-journal-compactor");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // Returns a copy of the reminders for a medicine, sorted by date and time
+    public static List<Reminder> findByMedicine(String username, String medicineName) {
+        String path = pathFor(username);
+        try (UserLocks.Held lock = UserLocks.read(path)) {
+            List<Reminder> reminders = storeAt(path).index.get(key(username, medicineName));
+            return reminders == null ? new ArrayList<>() : new ArrayList<>(reminders);
+        }
+    }
+
+    // Returns the reminders for a medicine scheduled in [from, to), sorted by date and time
+    public static List<Reminder> findBetween(String username, String medicineName,
+                                             LocalDateTime from, LocalDateTime to) {
+        String path = pathFor(username);
+        List<Reminder> result = new ArrayList<>();
+        try (UserLocks.Held lock = UserLocks.read(path)) {
+            List<Reminder> reminders = storeAt(path).index.get(key(username, medicineName));
+            if (reminders == null) {
+                return result;
+            }
+            for (int i = lowerBound(reminders, from); i < reminders.size(); i++) {
+                Reminder reminder = reminders.get(i);
+                if (!LocalDateTime.of(reminder.getDate(), reminder.getTime()).isBefore(to)) {
+                    break;
+                }
+                result.add(reminder);
+            }
+        }
+        return result;
+    }
+
+    // Returns the first untaken reminder for a medicine scheduled at or after the given time, or null
+    public static Reminder findFirstPending(String username, String medicineName, LocalDateTime from) {
+        String path = pathFor(username);
+        try (UserLocks.Held lock = UserLocks.read(path)) {
+            List<Reminder> reminders = storeAt(path).index.get(key(username, medicineName));
+            if (reminders == null) {
+                return null;
+            }
+            for (int i = lowerBound(reminders, from); i < reminders.size(); i++) {
+                if (!reminders.get(i).isTaken()) {
+                    return reminders.get(i);
+                }
+            }
+        }
+        return null;
+    }
+
+    // Appends a reminder to the file and files it in the index
+    public static boolean add(Reminder reminder) {
+        String path = pathFor(reminder.getUsername());
+        try (UserLocks.Held lock = UserLocks.write(path)) {
+            Store store = storeAt(path);
+
+            try (CsvWriter writer = new CsvWriter(new BufferedWriter(new FileWriter(store.basePath, true)))) {
+                reminder.write(writer);
+            } catch (IOException e) {
+                e.printStackTrace();
+                return false;
+            }
+
+            store.insertSorted(reminder);
+            store.rememberFileState();
+        }
+        return true;
+    }
+
+    // Streams many reminders of one user into the file through one buffered writer, flushing
+    // every batchSize rows, and files them in the index. Returns the number of reminders written.
+    public static int addAll(String username, Iterator<Reminder> reminders, int batchSize) throws IOException {
+        String path = pathFor(username);
+        try (UserLocks.Held lock = UserLocks.write(path)) {
+            return addAll(storeAt(path), reminders, batchSize);
+        }
+    }
+
+    private static int addAll(Store store, Iterator<Reminder> reminders, int batchSize) throws IOException {
+        Set<List<Reminder>> touched = Collections.newSetFromMap(new IdentityHashMap<>());
+        int written = 0;
+
+        try (CsvWriter writer = new CsvWriter(new BufferedWriter(new FileWriter(store.basePath, true), 64 * 1024))) {
+            while (reminders.hasNext()) {
+                Reminder reminder = reminders.next();
+                reminder.write(writer);
+
+                List<Reminder> list = store.index.computeIfAbsent(
+                        key(reminder.getUsername(), reminder.getMedicineName()), k -> new ArrayList<>());
+                list.add(reminder);
+                touched.add(list);
+
+                written++;
+                if (written % batchSize == 0) {
+                    writer.flush();
+                }
+            }
+        } finally {
+            // Sort each touched list once instead of inserting row by row
+            for (List<Reminder> list : touched) {
+                list.sort(BY_DATE_TIME);
+            }
+            store.rememberFileState();
+        }
+        return written;
+    }
+
+    // Marks the matching reminder as taken by appending a journal record
+    public static Marking markAsTaken(String username, String medicineName, LocalDate date, LocalTime time) {
+        String path = pathFor(username);
+        try (UserLocks.Held lock = UserLocks.write(path)) {
+            return markAsTaken(storeAt(path), username, medicineName, date, time);
+        }
+    }
+
+    private static Marking markAsTaken(Store store, String username, String medicineName, LocalDate date, LocalTime time) {
+        int position = store.findSlot(username, medicineName, date, time);
+        if (position < 0) {
+            return Marking.NOT_FOUND;
+        }
+        if (store.index.get(key(username, medicineName)).get(position).isTaken()) {
+            return Marking.ALREADY_TAKEN; // Nothing to record
+        }
+
+        try (CsvWriter writer = new CsvWriter(new BufferedWriter(new FileWriter(store.journalPath, true)))) {
+            writer.field(TAKEN_RECORD).field(username).field(medicineName).field(date).field(time);
+            writer.endRecord();
+        } catch (IOException e) {
+            e.printStackTrace();
+            return Marking.FAILED;
+        }
+
+        store.markTakenInIndex(username, medicineName, date, time);
+        store.rememberFileState();
+
+        if (new File(store.journalPath).length() >= COMPACTION_THRESHOLD && !store.compactionQueued) {
+            store.compactionQueued = true;
+            compactor.submit(() -> compact(store.basePath));
+        }
+        return Marking.MARKED;
+    }
+
+    // Folds the journal of every known reminders file into its base file
+    public static void compact() {
+        for (String path : DataLayout.allFiles(FILE_NAME)) {
+            compact(path);
+        }
+    }
+
+    private static void compact(String path) {
+        try (UserLocks.Held lock = UserLocks.write(path)) {
+            compact(storeAt(path));
+        }
+    }
+
+    // Folds the journal into a new base file and starts a fresh journal.
+    // The base file is streamed record by record so row order is preserved, and only rows that
+    // are still untaken are decoded; everything else is copied through as it was. The new version is
+    // written next to it and moved into place, so a crash never leaves a half-written base.
+    private static void compact(Store store) {
+        store.compactionQueued = false;
+        File journal = new File(store.journalPath);
+        if (journal.length() == 0) {
+            return;
+        }
+
+        // Read and written in the platform charset, like every other open of the base file
+        try (CsvReader reader = new CsvReader(new FileReader(store.basePath))) {
+            AtomicFiles.replace(store.basePath, Charset.defaultCharset(), out -> {
+                CsvWriter writer = new CsvWriter(out);
+                while (reader.next()) {
+                    if (reader.fieldCount() >= 5 && !reader.booleanField(4)) {
+                        Reminder reminder = Reminder.read(reader);
+                        int position = store.findSlot(reminder.getUsername(), reminder.getMedicineName(),
+                                reminder.getDate(), reminder.getTime());
+                        if (position >= 0 && store.index.get(key(reminder.getUsername(), reminder.getMedicineName()))
+                                .get(position).isTaken()) {
+                            new Reminder(reminder.getUsername(), reminder.getMedicineName(), reminder.getTime(),
+                                    reminder.getDate(), true).write(writer);
+                            continue;
+                        }
+                    }
+                    reader.writeRawRecord(out);
+                    writer.endRecord();
+                }
+            });
+        } catch (IOException e) {
+            e.printStackTrace();
+            return;
+        }
+
+        try {
+            new FileWriter(store.journalPath).close(); // Truncate the journal
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        store.rememberFileState();
+    }
+
+    // Reminders file holding the given user's reminders
+    private static String pathFor(String username) {
+        return DataLayout.userFile(username, FILE_NAME);
+    }
+
+    // Returns the loaded store of a reminders file; the caller holds its read or write lock
+    private static Store storeAt(String basePath) {
+        Store store = stores.computeIfAbsent(basePath,
+                path -> new Store(path, new File(new File(path).getParentFile(), JOURNAL_NAME).getPath()));
+        store.ensureLoaded();
+        return store;
+    }
+
+    // Position of the first reminder scheduled at or after the given date-time
+    private static int lowerBound(List<Reminder> reminders, LocalDateTime from) {
+        int low = 0;
+        int high = reminders.size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            Reminder reminder = reminders.get(mid);
+            if (LocalDateTime.of(reminder.getDate(), reminder.getTime()).isBefore(from)) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private static String key(String username, String medicineName) {
+        return username + "\u0000" + medicineName;
+    }
+
+    // Index, journal and change-detection state of one reminders file
+    private static class Store {
+        private final String basePath;
+        private final String journalPath;
+        // Changed in place only under the write lock, replaced when reloaded under a read lock
+        private volatile Map<String, List<Reminder>> index = new HashMap<>();
+        private boolean loaded = false;
+        private boolean compactionQueued = false;
+        private long loadedLastModified = -1;
+        private long loadedLength = -1;
+        private long journalLastModified = -1;
+        private long journalLength = -1;
+
+        Store(String basePath, String journalPath) {
+            this.basePath = basePath;
+            this.journalPath = journalPath;
+        }
+
+        // Loads the base file and replays the journal on first use, and again if either was
+        // changed by someone else. Readers may call this together, so it is synchronized.
+        synchronized void ensureLoaded() {
+            File file = new File(basePath);
+            File journal = new File(journalPath);
+            ensureFileExists(file);
+            ensureFileExists(journal);
+
+            if (loaded && file.lastModified() == loadedLastModified && file.length() == loadedLength
+                    && journal.lastModified() == journalLastModified && journal.length() == journalLength) {
+                return;
+            }
+
+            Map<String, List<Reminder>> index = new HashMap<>();
+            try (CsvReader reader = new CsvReader(new FileReader(file))) {
+                while (reader.next()) {
+                    Reminder reminder = Reminder.read(reader);
+                    index.computeIfAbsent(key(reminder.getUsername(), reminder.getMedicineName()),
+                            k -> new ArrayList<>()).add(reminder);
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+
+            for (List<Reminder> reminders : index.values()) {
+                reminders.sort(BY_DATE_TIME);
+            }
+
+            try (CsvReader reader = new CsvReader(new FileReader(journal))) {
+                while (reader.next()) {
+                    if (reader.fieldEquals(0, TAKEN_RECORD) && reader.fieldCount() >= 5) {
+                        markTakenInIndex(index, reader.field(1), reader.field(2), reader.dateField(3), reader.timeField(4));
+                    } else if (reader.fieldCount() >= 4 && reader.field(0).startsWith(LEGACY_TAKEN_PREFIX)) {
+                        markTakenInIndex(index, reader.field(0).substring(LEGACY_TAKEN_PREFIX.length()), reader.field(1),
+                                reader.dateField(2), reader.timeField(3));
+                    }
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+
+            this.index = index;
+            loaded = true;
+            rememberFileState();
+        }
+
+        // Returns the position of the first reminder in the given slot, or -1 if there is none
+        int findSlot(String username, String medicineName, LocalDate date, LocalTime time) {
+            return findSlot(index, username, medicineName, date, time);
+        }
+
+        private static int findSlot(Map<String, List<Reminder>> index, String username, String medicineName,
+                                    LocalDate date, LocalTime time) {
+            List<Reminder> reminders = index.get(key(username, medicineName));
+            if (reminders == null) {
+                return -1;
+            }
+            Reminder probe = new Reminder(username, medicineName, time, date, false);
+            int position = Collections.binarySearch(reminders, probe, BY_DATE_TIME);
+            if (position < 0) {
+                return -1;
+            }
+            while (position > 0 && BY_DATE_TIME.compare(reminders.get(position - 1), probe) == 0) {
+                position--;
+            }
+            return position;
+        }
+
+        // Replaces every indexed reminder in the given slot with a taken copy
+        void markTakenInIndex(String username, String medicineName, LocalDate date, LocalTime time) {
+            markTakenInIndex(index, username, medicineName, date, time);
+        }
+
+        private static void markTakenInIndex(Map<String, List<Reminder>> index, String username, String medicineName,
+                                             LocalDate date, LocalTime time) {
+            int position = findSlot(index, username, medicineName, date, time);
+            if (position < 0) {
+                return;
+            }
+            List<Reminder> reminders = index.get(key(username, medicineName));
+            Reminder probe = reminders.get(position);
+            while (position < reminders.size() && BY_DATE_TIME.compare(reminders.get(position), probe) == 0) {
+                reminders.set(position, new Reminder(username, medicineName, time, date, true));
+                position++;
+            }
+        }
+
+        void insertSorted(Reminder reminder) {
+            List<Reminder> reminders = index.computeIfAbsent(
+                    key(reminder.getUsername(), reminder.getMedicineName()), k -> new ArrayList<>());
+            int position = Collections.binarySearch(reminders, reminder, BY_DATE_TIME);
+            reminders.add(position < 0 ? -position - 1 : position, reminder);
+        }
+
+        void rememberFileState() {
+            File file = new File(basePath);
+            File journal = new File(journalPath);
+            loadedLastModified = file.lastModified();
+            loadedLength = file.length();
+            journalLastModified = journal.lastModified();
+            journalLength = journal.length();
+        }
+
+        private static void ensureFileExists(File file) {
+            if (!file.exists()) {
+                try {
+                    file.getParentFile().mkdirs();
+                    file.createNewFile();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package core;
+
+import core.io.CsvReader;
+import core.io.CsvWriter;
+
+import java.io.*;
+import java.nio.charset.Charset;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.*;
+
+// Incremental due and missed-dose scanner.
+// Each user has two persisted high-watermarks: everything scheduled before the due watermark
+// has already produced its MEDICINE_TIME notification, and every day before the missed
+// watermark has already produced its MISSED_DOSE notifications. A pass only looks at the
+// reminders between the watermark and now, then moves the watermark forward, so each event
+// is emitted once and idle passes cost next to nothing.
+public class ReminderScanner {
+    private static final String FILE_NAME = "scan_watermarks.txt";
+
+    // Watermarks per user: [due, missed]; a missing user has never been scanned
+    private static final Map<String, LocalDateTime[]> watermarks = new HashMap<>();
+    private static final Set<String> loadedFiles = new HashSet<>();
+
+    // Emits a MEDICINE_TIME notification for every untaken reminder that fell due since the last pass
+    public static void scanDue(String username) {
+        LocalDateTime now = LocalDateTime.now();
+        LocalDateTime from = getWatermarks(username)[0];
+
+        if (!from.isBefore(now)) {
+            return;
+        }
+
+        for (Medicine med : Medicine.getUserMedicines(username)) {
+            for (Reminder rem : Reminder.getRemindersBetween(username, med.getName(), from, now)) {
+                if (!rem.isTaken()) {
+                    NotificationManager.addMedicineTimeNotification(username, med.getName(),
+                            LocalDateTime.of(rem.getDate(), rem.getTime()));
+                }
+            }
+        }
+        advance(username, 0, now);
+    }
+
+    // Emits a MISSED_DOSE notification for every untaken reminder of the days completed since the last pass
+    public static void scanMissed(String username) {
+        LocalDateTime today = LocalDate.now().atStartOfDay();
+        LocalDateTime from = getWatermarks(username)[1];
+
+        if (!from.isBefore(today)) {
+            return;
+        }
+
+        for (Medicine medicine : Medicine.getUserMedicines(username)) {
+            for (Reminder reminder : Reminder.getRemindersBetween(username, medicine.getName(), from, today)) {
+                if (!reminder.isTaken()) {
+                    String message = String.format("%s missed at %s on %s",
+                            medicine.getName(),
+                            reminder.getTime(),
+                            reminder.getDate());
+                    NotificationManager.addMissedDoseNotification(username, message);
+                }
+            }
+        }
+        advance(username, 1, today);
+    }
+
+    // Moves both watermarks back so reminders scheduled from the given time are scanned again.
+    // The notification dedup index keeps already-emitted events from repeating.
+    public static synchronized void rewind(String username, LocalDateTime from) {
+        LocalDateTime[] marks = getWatermarks(username);
+        if (from.isBefore(marks[0]) || from.isBefore(marks[1])) {
+            marks[0] = min(marks[0], from);
+            marks[1] = min(marks[1], from);
+            save(username);
+        }
+    }
+
+    private static synchronized void advance(String username, int which, LocalDateTime to) {
+        LocalDateTime[] marks = getWatermarks(username);
+        if (to.isAfter(marks[which])) {
+            marks[which] = to;
+            save(username);
+        }
+    }
+
+    // Returns the user's watermarks, starting from the beginning of time if they were never scanned
+    private static synchronized LocalDateTime[] getWatermarks(String username) {
+        String filePath = DataLayout.userFile(username, FILE_NAME);
+        if (loadedFiles.add(filePath)) {
+            File file = new File(filePath);
+            if (file.exists()) {
+                try (CsvReader reader = new CsvReader(new FileReader(file))) {
+                    while (reader.next()) {
+                        if (reader.fieldCount() >= 3) {
+                            watermarks.put(reader.field(0), new LocalDateTime[]{
+                                    LocalDateTime.parse(reader.field(1)), LocalDateTime.parse(reader.field(2))});
+                        }
+                    }
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+        return watermarks.computeIfAbsent(username, k -> new LocalDateTime[]{LocalDateTime.MIN, LocalDateTime.MIN});
+    }
+
+    // Rewrites the watermark file holding this user, next to the old one and moved into place
+    private static void save(String username) {
+        String filePath = DataLayout.userFile(username, FILE_NAME);
+        try {
+            AtomicFiles.replace(filePath, Charset.defaultCharset(), out -> { // Read back with FileReader
+                CsvWriter writer = new CsvWriter(out);
+                for (Map.Entry<String, LocalDateTime[]> entry : watermarks.entrySet()) {
+                    if (!DataLayout.userFile(entry.getKey(), FILE_NAME).equals(filePath)) {
+                        continue;
+                    }
+                    writer.field(entry.getKey()).field(entry.getValue()[0].toString()).field(entry.getValue()[1].toString());
+                    writer.endRecord();
+                }
+            });
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private static LocalDateTime min(LocalDateTime a, LocalDateTime b) {
+        return a.isBefore(b) ? a : b;
+    }
+}
@@ -0,0 +1,55 @@
+package core;
+
+import java.time.LocalDate;
+
+// Outcome of one schedule generation run: how many reminders were written,
+// how many already existed, and how long the write took
+public class ScheduleResult {
+    private final String medicineName;
+    private final LocalDate startDate;
+    private final LocalDate endDate;
+    private final int added;
+    private final int skipped;
+    private final long elapsedNanos;
+
+    public ScheduleResult(String medicineName, LocalDate startDate, LocalDate endDate, int added, int skipped, long elapsedNanos) {
+        this.medicineName = medicineName;
+        this.startDate = startDate;
+        this.endDate = endDate;
+        this.added = added;
+        this.skipped = skipped;
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    public String getMedicineName() {
+        return medicineName;
+    }
+
+    public LocalDate getStartDate() {
+        return startDate;
+    }
+
+    public LocalDate getEndDate() {
+        return endDate;
+    }
+
+    public int getAdded() {
+        return added;
+    }
+
+    public int getSkipped() {
+        return skipped;
+    }
+
+    public long getElapsedMillis() {
+        return elapsedNanos / 1_000_000;
+    }
+
+    // Reminders written per second, or 0 when nothing was written
+    public long getRowsPerSecond() {
+        if (added == 0 || elapsedNanos == 0) {
+            return 0;
+        }
+        return added * 1_000_000_000L / elapsedNanos;
+    }
+}
@@ -0,0 +1,132 @@
+package core;
+
+import core.io.CsvReader;
+
+import java.io.*;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+// One-shot migration from the flat data layout to the per-user sharded layout.
+// Every row of the global files is copied into data/users/<hash>/<username>/<file>, the flat
+// files are moved to data/flat-backup/, and the sharded marker is written last so a failed
+// run leaves the application on the flat layout.
+//
+// Run with: java -cp bin core.ShardMigration
+public class ShardMigration {
+    private static final String[] PER_USER_FILES = {
+            "medicines.txt", "reminders.txt", "notifications.txt", "dose_history.txt", "schedule_exceptions.txt",
+            "scan_watermarks.txt", "stock_ledger.txt"
+    };
+    // Files written as UTF-8; every other file is read and written in the platform charset
+    private static final Set<String> UTF8_FILES = Set.of("stock_ledger.txt");
+    private static final String BACKUP_DIRECTORY = "flat-backup";
+
+    // Upper bound on simultaneously open per-user writers
+    private static final int MAX_OPEN_WRITERS = 256;
+
+    public static void main(String[] args) {
+        if (DataLayout.isSharded()) {
+            System.out.println("Data directory " + DataLayout.root() + " is already sharded.");
+            return;
+        }
+
+        try {
+            migrate();
+        } catch (IOException e) {
+            System.err.printf("\n⚠ Migration failed, flat layout left in place: %s\n", e.getMessage());
+        }
+    }
+
+    public static void migrate() throws IOException {
+        // Write out queued appends, fold pending status changes into reminders.txt so the journal
+        // does not need splitting, and bring dose_history.txt up to date with the binary segments.
+        // Each user's segments are rebuilt from their copy of the CSV the first time their history is read.
+        WriteBehindQueue.flush();
+        ReminderRepository.compact();
+        DoseHistorySegments.exportCsv();
+
+        for (String fileName : PER_USER_FILES) {
+            File source = new File(DataLayout.globalFile(fileName));
+            if (!source.exists()) {
+                continue;
+            }
+            long rows = split(source, fileName);
+            System.out.println("Split " + rows + " rows of " + fileName);
+        }
+
+        Path backup = Paths.get(DataLayout.root(), BACKUP_DIRECTORY);
+        Files.createDirectories(backup);
+        for (String fileName : PER_USER_FILES) {
+            Path source = Paths.get(DataLayout.globalFile(fileName));
+            if (Files.exists(source)) {
+                Files.move(source, backup.resolve(fileName), StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+        Files.deleteIfExists(Paths.get(DataLayout.root(), "reminders.journal"));
+        Files.deleteIfExists(Paths.get(DataLayout.root(), "stock_snapshot.txt")); // Rebuilt from each user's ledger
+        Path segments = Paths.get(DataLayout.root(), "dose_history");
+        if (Files.exists(segments)) {
+            Files.move(segments, backup.resolve("dose_history"), StandardCopyOption.REPLACE_EXISTING);
+        }
+
+        DataLayout.markSharded();
+        System.out.println("Data directory " + DataLayout.root() + " now uses the per-user layout.");
+    }
+
+    // Streams one global file and appends each row to its owner's copy of the file
+    private static long split(File source, String fileName) throws IOException {
+        Map<String, BufferedWriter> writers = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, BufferedWriter> eldest) {
+                if (size() <= MAX_OPEN_WRITERS) {
+                    return false;
+                }
+                try {
+                    eldest.getValue().close();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                return true;
+            }
+        };
+
+        // Users whose copy was already started in this run; the first open truncates any
+        // leftovers of an earlier failed run, later reopens append
+        Set<String> started = new HashSet<>();
+
+        // Copied in the charset the stores read each file with, so names keep their characters
+        Charset charset = UTF8_FILES.contains(fileName) ? StandardCharsets.UTF_8 : Charset.defaultCharset();
+        long rows = 0;
+        try (CsvReader reader = new CsvReader(new InputStreamReader(new FileInputStream(source), charset))) {
+            while (reader.next()) {
+                if (reader.fieldCount() < 2 || reader.fieldEquals(0, "")) {
+                    continue;
+                }
+                String username = reader.field(0);
+                BufferedWriter writer = writers.get(username);
+                if (writer == null) {
+                    File target = new File(DataLayout.userDirectory(username), fileName);
+                    target.getParentFile().mkdirs();
+                    writer = new BufferedWriter(new OutputStreamWriter(
+                            new FileOutputStream(target, !started.add(username)), charset));
+                    writers.put(username, writer);
+                }
+                reader.writeRawRecord(writer);
+                writer.newLine();
+                rows++;
+            }
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } finally {
+            for (BufferedWriter writer : writers.values()) {
+                writer.close();
+            }
+        }
+        return rows;
+    }
+}
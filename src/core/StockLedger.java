@@ -0,0 +1,353 @@
+package core;
+
+import core.io.CsvReader;
+import core.io.CsvWriter;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.IntUnaryOperator;
+
+// Append-only ledger of stock movements.
+// Every change to a medicine's stock is appended to stock_ledger.txt as
+// "username,medicine,type,amount,time", so a dose costs one short append instead of a
+// rewrite of medicines.txt, and the ledger doubles as the audit trail. An OPENING record
+// sets the quantity, REMOVAL clears it, and every other type adds its amount.
+// The current quantities are kept in memory. Every SNAPSHOT_INTERVAL records they are
+// written to stock_snapshot.txt together with the ledger length they cover, so loading is
+// snapshot + tail instead of a replay of the whole ledger. The quantity column of
+// medicines.txt is the opening stock of medicines that have no ledger records yet.
+@SuppressWarnings("try")
+public class StockLedger {
+    private static final String LEDGER_NAME = "stock_ledger.txt";
+    private static final String SNAPSHOT_NAME = "stock_snapshot.txt";
+    private static final String SNAPSHOT_HEADER = "OFFSET";
+
+    // Ledger records between snapshots, overridable with -Dstock.snapshotInterval
+    private static final int SNAPSHOT_INTERVAL = Integer.getInteger("stock.snapshotInterval", 1000);
+
+    public enum Movement { OPENING, DOSE, REFILL, CORRECTION, REMOVAL }
+
+    private static final Movement[] MOVEMENTS = Movement.values();
+
+    private static final Map<String, Ledger> ledgers = new ConcurrentHashMap<>();
+
+    // One ledger record together with the quantity it left behind
+    public static class Entry {
+        private final Movement movement;
+        private final int amount;
+        private final int quantityAfter;
+        private final LocalDateTime time;
+
+        Entry(Movement movement, int amount, int quantityAfter, LocalDateTime time) {
+            this.movement = movement;
+            this.amount = amount;
+            this.quantityAfter = quantityAfter;
+            this.time = time;
+        }
+
+        public Movement getMovement() {
+            return movement;
+        }
+
+        public int getAmount() {
+            return amount;
+        }
+
+        public int getQuantityAfter() {
+            return quantityAfter;
+        }
+
+        public LocalDateTime getTime() {
+            return time;
+        }
+    }
+
+    // Appends a movement and returns the new quantity, NotificationManager.NOT_ENOUGH_STOCK if
+    // it would take the stock below zero, or NotificationManager.STOCK_NOT_RECORDED if the
+    // ledger could not be written. openingQuantity is used when the medicine has no
+    // ledger records yet, and is then recorded as its OPENING.
+    public static int record(String username, String medicineName, Movement movement, int amount, int openingQuantity) {
+        return change(username, medicineName, movement, current -> amount, openingQuantity);
+    }
+
+    // Records a CORRECTION that brings the stock to the given quantity
+    public static int correct(String username, String medicineName, int newQuantity, int openingQuantity) {
+        return change(username, medicineName, Movement.CORRECTION, current -> newQuantity - current, openingQuantity);
+    }
+
+    // Appends a movement whose amount is worked out from the current quantity under the ledger lock
+    private static int change(String username, String medicineName, Movement movement, IntUnaryOperator amountFor,
+                              int openingQuantity) {
+        String path = DataLayout.userFile(username, LEDGER_NAME);
+        try (UserLocks.Held lock = UserLocks.write(path)) {
+            Ledger ledger = ledgerAt(path);
+            String key = key(username, medicineName);
+            Integer current = ledger.quantities.get(key);
+            int amount = amountFor.applyAsInt(current != null ? current : openingQuantity);
+
+            int quantity;
+            if (movement == Movement.OPENING) {
+                quantity = amount;
+            } else if (movement == Movement.REMOVAL) {
+                quantity = 0;
+            } else {
+                quantity = (current != null ? current : openingQuantity) + amount;
+                if (quantity < 0) {
+                    return NotificationManager.NOT_ENOUGH_STOCK;
+                }
+            }
+
+            LocalDateTime now = LocalDateTime.now().withNano(0);
+            try (CsvWriter writer = ledger.appender()) {
+                if (current == null && movement != Movement.OPENING && movement != Movement.REMOVAL) {
+                    writer.field(username).field(medicineName).field(Movement.OPENING.name()).field(openingQuantity)
+                            .field(now).endRecord();
+                    ledger.recordsSinceSnapshot++;
+                }
+                writer.field(username).field(medicineName).field(movement.name()).field(amount).field(now).endRecord();
+            } catch (IOException e) {
+                e.printStackTrace();
+                return NotificationManager.STOCK_NOT_RECORDED;
+            }
+
+            if (movement == Movement.REMOVAL) {
+                ledger.quantities.remove(key);
+            } else {
+                ledger.quantities.put(key, quantity);
+            }
+            ledger.appliedLength = new File(path).length();
+            if (++ledger.recordsSinceSnapshot >= SNAPSHOT_INTERVAL) {
+                ledger.writeSnapshot();
+            }
+            return quantity;
+        }
+    }
+
+    // Current quantity of a medicine, or null if the ledger has no records for it
+    public static Integer quantityOf(String username, String medicineName) {
+        String path = DataLayout.userFile(username, LEDGER_NAME);
+        try (UserLocks.Held lock = UserLocks.write(path)) {
+            return ledgerAt(path).quantities.get(key(username, medicineName));
+        }
+    }
+
+    // Current quantities of the ledger next to a medicines file, keyed by key(). The map is
+    // live, so callers should look up what they need and not hold on to it.
+    static Map<String, Integer> quantitiesNextTo(String medicinesFilePath) {
+        return quantitiesIn(new File(new File(medicinesFilePath).getParentFile(), LEDGER_NAME).getPath());
+    }
+
+    // Current quantities of one ledger file, keyed by key(); live, like quantitiesNextTo
+    static Map<String, Integer> quantitiesIn(String ledgerPath) {
+        try (UserLocks.Held lock = UserLocks.write(ledgerPath)) {
+            return Collections.unmodifiableMap(ledgerAt(ledgerPath).quantities);
+        }
+    }
+
+    // Path of the ledger holding a user's stock
+    static String ledgerOf(String username) {
+        return DataLayout.userFile(username, LEDGER_NAME);
+    }
+
+    // Every movement of one medicine in the order it was recorded
+    public static List<Entry> history(String username, String medicineName) {
+        String path = DataLayout.userFile(username, LEDGER_NAME);
+        List<Entry> entries = new ArrayList<>();
+        if (!new File(path).exists()) {
+            return entries;
+        }
+
+        try (UserLocks.Held lock = UserLocks.read(path);
+             CsvReader reader = new CsvReader(new InputStreamReader(new FileInputStream(path), StandardCharsets.UTF_8))) {
+            int quantity = 0;
+            while (reader.next()) {
+                if (reader.fieldCount() < 5 || !reader.isTerminated()
+                        || !reader.fieldEquals(0, username) || !reader.fieldEquals(1, medicineName)) {
+                    continue;
+                }
+                Movement movement;
+                int amount;
+                LocalDateTime time;
+                try {
+                    movement = reader.enumField(2, MOVEMENTS);
+                    amount = reader.intField(3);
+                    time = reader.dateTimeField(4);
+                } catch (RuntimeException e) {
+                    continue; // The remains of an append cut short by a crash
+                }
+                quantity = apply(quantity, movement, amount);
+                entries.add(new Entry(movement, amount, quantity, time));
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        return entries;
+    }
+
+    static String key(String username, String medicineName) {
+        return username + "\u0000" + medicineName;
+    }
+
+    private static int apply(int quantity, Movement movement, int amount) {
+        return switch (movement) {
+            case OPENING -> amount;
+            case REMOVAL -> 0;
+            default -> quantity + amount;
+        };
+    }
+
+    // Returns the ledger of a file brought up to date; the caller holds its write lock
+    private static Ledger ledgerAt(String path) {
+        Ledger ledger = ledgers.computeIfAbsent(path, Ledger::new);
+        ledger.ensureCurrent();
+        return ledger;
+    }
+
+    // Quantities, snapshot and change-detection state of one ledger file
+    private static class Ledger {
+        private final Path path;
+        private final Path snapshotPath;
+        private final Map<String, Integer> quantities = new ConcurrentHashMap<>();
+        private long appliedLength = -1;
+        private int recordsSinceSnapshot = 0;
+
+        Ledger(String path) {
+            this.path = Paths.get(path);
+            this.snapshotPath = this.path.resolveSibling(SNAPSHOT_NAME);
+        }
+
+        // Loads the snapshot and replays the tail on first use, and replays whatever another
+        // process appended since. A ledger that shrank was replaced, so it is read again in full.
+        void ensureCurrent() {
+            long length = path.toFile().length();
+            if (length == appliedLength) {
+                return;
+            }
+            if (appliedLength < 0 || length < appliedLength) {
+                quantities.clear();
+                appliedLength = loadSnapshot(length);
+                recordsSinceSnapshot = 0;
+            }
+            replay(appliedLength);
+        }
+
+        // Reads the snapshot if it covers no more than the ledger holds, returning the offset to replay from
+        private long loadSnapshot(long ledgerLength) {
+            if (!Files.exists(snapshotPath)) {
+                return 0;
+            }
+            try (CsvReader reader = new CsvReader(Files.newBufferedReader(snapshotPath, StandardCharsets.UTF_8))) {
+                if (!reader.next() || !reader.fieldEquals(0, SNAPSHOT_HEADER)) {
+                    return 0;
+                }
+                long offset = Long.parseLong(reader.field(1));
+                if (offset > ledgerLength) {
+                    return 0; // Snapshot of a ledger that was since replaced
+                }
+                while (reader.next()) {
+                    if (reader.fieldCount() >= 3) {
+                        quantities.put(key(reader.field(0), reader.field(1)), reader.intField(2));
+                    }
+                }
+                return offset;
+            } catch (IOException | RuntimeException e) {
+                e.printStackTrace();
+                quantities.clear();
+                return 0;
+            }
+        }
+
+        // Applies the ledger records from the given byte offset to the end of the file
+        private void replay(long offset) {
+            if (!Files.exists(path)) {
+                appliedLength = 0;
+                return;
+            }
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                channel.position(offset);
+                long end = channel.size();
+                // A character cut in half by a crash is decoded as a replacement instead of failing the read
+                CsvReader reader = new CsvReader(Channels.newReader(channel, StandardCharsets.UTF_8.newDecoder()
+                        .onMalformedInput(CodingErrorAction.REPLACE).onUnmappableCharacter(CodingErrorAction.REPLACE), -1));
+                while (reader.next()) {
+                    // Records are only appended under the ledger lock, which the caller holds, so one
+                    // that is unterminated or does not parse was cut short by a crash and is skipped
+                    if (reader.fieldCount() < 5 || !reader.isTerminated()) {
+                        continue;
+                    }
+                    Movement movement;
+                    int amount;
+                    try {
+                        movement = reader.enumField(2, MOVEMENTS);
+                        amount = reader.intField(3);
+                        reader.dateTimeField(4); // A record cut inside its time may have lost digits of its amount
+                    } catch (RuntimeException e) {
+                        continue;
+                    }
+                    String key = key(reader.field(0), reader.field(1));
+                    if (movement == Movement.REMOVAL) {
+                        quantities.remove(key);
+                    } else {
+                        quantities.put(key, apply(quantities.getOrDefault(key, 0), movement, amount));
+                    }
+                    recordsSinceSnapshot++;
+                }
+                appliedLength = end;
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+
+        // Writer appending to the ledger on a fresh line, so a record after one cut short by a
+        // crash is not glued onto it
+        CsvWriter appender() throws IOException {
+            Files.createDirectories(path.getParent());
+            CsvWriter writer = new CsvWriter(new BufferedWriter(new OutputStreamWriter(
+                    new FileOutputStream(path.toFile(), true), StandardCharsets.UTF_8)));
+            if (!endsWithNewline()) {
+                writer.endRecord();
+            }
+            return writer;
+        }
+
+        private boolean endsWithNewline() throws IOException {
+            if (!Files.exists(path)) {
+                return true;
+            }
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                long size = channel.size();
+                if (size == 0) {
+                    return true;
+                }
+                ByteBuffer last = ByteBuffer.allocate(1);
+                channel.read(last, size - 1);
+                return last.get(0) == '\n';
+            }
+        }
+
+        // Writes the quantities and the ledger length they cover next to the ledger and moves it into place
+        void writeSnapshot() {
+            try {
+                AtomicFiles.replace(snapshotPath.toString(), StandardCharsets.UTF_8, out -> {
+                    CsvWriter writer = new CsvWriter(out);
+                    writer.field(SNAPSHOT_HEADER).field(Long.toString(appliedLength)).endRecord();
+                    for (Map.Entry<String, Integer> entry : quantities.entrySet()) {
+                        String[] parts = entry.getKey().split("\u0000", 2);
+                        writer.field(parts[0]).field(parts[1]).field(entry.getValue()).endRecord();
+                    }
+                });
+                recordsSinceSnapshot = 0;
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+}
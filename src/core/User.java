@@ -1,5 +1,10 @@
 package core;
 
+import core.io.CsvReader;
+import core.io.CsvWriter;
+import core.storage.Storage;
+import core.storage.UserStore;
+
 import java.io.*;
 
 public class User {
@@ -10,7 +15,8 @@ public class User {
     private Gender gender; // Enum: MALE, FEMALE, OTHER
     private int age;
 
-    private static final String FILE_PATH = "data/users.txt";
+    private static final String FILE_NAME = "users.txt";
+    private static final Gender[] GENDERS = Gender.values();
 
     public User(String username, String password, String firstName, String lastName, Gender gender, int age) {
         this.username = username;
@@ -21,90 +27,51 @@ public class User {
         this.age = age;
     }
 
-    // Registers a new user (writes to file)
+    // Registers a new user
     public static boolean registerUser(String username, String password, String firstName, String lastName, Gender gender, int age) {
-        ensureFileExists();
-
-        if (doesUsernameExist(username)) {
+        // The existence check and the write happen in one step, so two registrations of
+        // the same name cannot both succeed
+        UserStore.Registration registration =
+                Storage.users().register(new User(username, password, firstName, lastName, gender, age));
+        if (registration == UserStore.Registration.EXISTS) {
             System.out.println("Username already exists!");
-            return false;
-        }
-
-        try (BufferedWriter writer = new BufferedWriter(new FileWriter(FILE_PATH, true))) {
-            String userData = String.join(",", username, password, firstName, lastName, gender.toString(), String.valueOf(age));
-            writer.write(userData);
-            writer.newLine();
-            return true;
-        } catch (IOException e) {
-            e.printStackTrace();
-            return false;
         }
+        return registration == UserStore.Registration.REGISTERED;
     }
 
     // Validates user login
     public static boolean validateLogin(String username, String password) {
-        ensureFileExists();
-
-        try (BufferedReader reader = new BufferedReader(new FileReader(FILE_PATH))) {
-            String line;
-            while ((line = reader.readLine()) != null) {
-                String[] data = line.split(",");
-                if (data.length >= 2 && data[0].equals(username) && data[1].equals(password)) {
-                    return true;
-                }
-            }
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
-        return false;
+        User user = Storage.users().find(username);
+        return user != null && user.password.equals(password);
     }
 
     // Checks if a username already exists
     public static boolean doesUsernameExist(String username) {
-        ensureFileExists();
-
-        try (BufferedReader reader = new BufferedReader(new FileReader(FILE_PATH))) {
-            String line;
-            while ((line = reader.readLine()) != null) {
-                String[] data = line.split(",");
-                if (data.length > 0 && data[0].equals(username)) {
-                    return true;
-                }
-            }
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
-        return false;
+        return Storage.users().find(username) != null;
     }
 
     // Retrieves a user by username
     public static User getUserByUsername(String username) {
-        ensureFileExists();
+        return Storage.users().find(username);
+    }
 
-        try (BufferedReader reader = new BufferedReader(new FileReader(FILE_PATH))) {
-            String line;
-            while ((line = reader.readLine()) != null) {
-                String[] data = line.split(",");
-                if (data.length == 6 && data[0].equals(username)) {
-                    return new User(data[0], data[1], data[2], data[3], Gender.valueOf(data[4]), Integer.parseInt(data[5]));
-                }
-            }
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
-        return null;
+    String getUsername() {
+        return username;
     }
 
-    // Ensures the user file exists
-    private static void ensureFileExists() {
-        File file = new File(FILE_PATH);
-        if (!file.exists()) {
-            try {
-                file.getParentFile().mkdirs();
-                file.createNewFile();
-            } catch (IOException e) {
-                e.printStackTrace();
-            }
-        }
+    // Decodes the current record: username,password,firstName,lastName,gender,age
+    static User read(CsvReader reader) {
+        return new User(reader.field(0), reader.field(1), reader.field(2), reader.field(3),
+                reader.enumField(4, GENDERS), reader.intField(5));
+    }
+
+    // Encodes this user as one record
+    void write(CsvWriter writer) throws IOException {
+        writer.field(username).field(password).field(firstName).field(lastName).field(gender.toString()).field(age);
+        writer.endRecord();
+    }
+
+    static String filePath() {
+        return DataLayout.globalFile(FILE_NAME);
     }
 }
@@ -0,0 +1,113 @@
+package core;
+
+import core.io.CsvReader;
+import core.io.CsvWriter;
+import core.storage.UserStore.Registration;
+
+import java.io.*;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+// In-memory directory of registered users.
+// users.txt is read once into a map keyed by username, so login and existence checks are
+// a single lookup however many users are registered. New users are appended to the file and
+// put in the map in the same step. Before answering, the file's size and modification time
+// are compared with what was last loaded or written, and the map is rebuilt if another
+// process changed the file.
+@SuppressWarnings("try")
+public class UserDirectory {
+
+    private static volatile Map<String, User> users = new ConcurrentHashMap<>();
+    private static volatile String loadedPath = null;
+    private static volatile long loadedLastModified = -1;
+    private static volatile long loadedLength = -1;
+
+    // Returns the user with the given name, or null if there is none
+    static User get(String username) {
+        return current().get(username);
+    }
+
+    // Calls the consumer for every registered user
+    static void forEach(Consumer<User> consumer) {
+        current().values().forEach(consumer);
+    }
+
+    // Appends a new user to users.txt unless the name is taken
+    static synchronized Registration register(User user) {
+        ensureFileExists();
+        // Checked under the file lock so two processes cannot register the same name
+        try (UserLocks.Held lock = UserLocks.write(User.filePath())) {
+            Map<String, User> map = current();
+            if (map.containsKey(user.getUsername())) {
+                return Registration.EXISTS;
+            }
+
+            try (CsvWriter writer = new CsvWriter(new BufferedWriter(new FileWriter(User.filePath(), true)))) {
+                user.write(writer);
+            } catch (IOException e) {
+                e.printStackTrace();
+                return Registration.FAILED;
+            }
+
+            map.put(user.getUsername(), user);
+            rememberFileState(new File(User.filePath()));
+        }
+        return Registration.REGISTERED;
+    }
+
+    // Returns the map, reloading it first if users.txt changed since it was loaded
+    private static Map<String, User> current() {
+        File file = new File(User.filePath());
+        if (file.getPath().equals(loadedPath) && file.lastModified() == loadedLastModified
+                && file.length() == loadedLength) {
+            return users;
+        }
+        return reload(file);
+    }
+
+    private static synchronized Map<String, User> reload(File file) {
+        if (file.getPath().equals(loadedPath) && file.lastModified() == loadedLastModified
+                && file.length() == loadedLength) {
+            return users; // Another thread reloaded while this one waited
+        }
+
+        // Built aside and swapped in whole, so lookups never see a half-loaded map
+        Map<String, User> loaded = new ConcurrentHashMap<>();
+        if (file.exists()) {
+            try (UserLocks.Held lock = UserLocks.read(file.getPath());
+                 CsvReader reader = new CsvReader(new FileReader(file))) {
+                while (reader.next()) {
+                    if (reader.fieldCount() == 6) {
+                        User user = User.read(reader);
+                        loaded.putIfAbsent(user.getUsername(), user); // The first row of a name wins, as before
+                    }
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        users = loaded;
+        rememberFileState(file);
+        return loaded;
+    }
+
+    // Ensures the user file exists
+    private static void ensureFileExists() {
+        File file = new File(User.filePath());
+        if (!file.exists()) {
+            try {
+                file.getParentFile().mkdirs();
+                file.createNewFile();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private static void rememberFileState(File file) {
+        loadedPath = file.getPath();
+        loadedLastModified = file.lastModified();
+        loadedLength = file.length();
+    }
+}
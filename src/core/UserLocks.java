@@ -0,0 +1,166 @@
+package core;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+// Striped locks guarding the data files.
+// A fixed array of read-write locks is indexed by the hash of the file being touched. In the
+// per-user layout every user has their own files, so the stripe follows the username and
+// different users update in parallel; in the flat layout all users share one file, and
+// hashing the path is what keeps two users from rewriting it at the same time. Each stripe
+// is backed by a FileChannel lock on data/.locks/stripe-NN.lock so other processes using
+// the same data directory are excluded too.
+//
+// Use with try-with-resources around the file access only (the Held resource is never
+// referenced in the body, so callers suppress javac's "try" lint), and do not call into other
+// stores while holding a stripe: two files can share a stripe, a read lock cannot be upgraded
+// to a write lock, and stripes taken in different orders by two threads deadlock. A monitor
+// taken while holding a stripe (a reminder store reloading its index, a dose history
+// directory refreshing its names) must never be held while waiting for a stripe.
+public class UserLocks {
+    private static final String LOCK_DIRECTORY = ".locks";
+
+    // Number of stripes, overridable with -Dlock.stripes
+    private static final int STRIPE_COUNT = Math.max(1, Integer.getInteger("lock.stripes", 64));
+
+    private static final Stripe[] stripes = new Stripe[STRIPE_COUNT];
+
+    static {
+        for (int i = 0; i < STRIPE_COUNT; i++) {
+            stripes[i] = new Stripe(i);
+        }
+    }
+
+    // A held lock; closing it releases the lock
+    public interface Held extends AutoCloseable {
+        @Override
+        void close();
+    }
+
+    // Shared lock for reading a file
+    public static Held read(String filePath) {
+        Stripe stripe = stripeFor(filePath);
+        stripe.lock.readLock().lock();
+        boolean counted = false;
+        try {
+            // A writer reading its own file already holds the exclusive file lock
+            if (!stripe.lock.isWriteLockedByCurrentThread()) {
+                stripe.acquireShared();
+                counted = true;
+            }
+        } catch (RuntimeException e) {
+            stripe.lock.readLock().unlock();
+            throw e;
+        }
+        boolean release = counted;
+        return () -> {
+            if (release) {
+                stripe.releaseShared();
+            }
+            stripe.lock.readLock().unlock();
+        };
+    }
+
+    // Exclusive lock for changing a file
+    public static Held write(String filePath) {
+        Stripe stripe = stripeFor(filePath);
+        stripe.lock.writeLock().lock();
+        boolean outermost = stripe.lock.getWriteHoldCount() == 1;
+        try {
+            if (outermost) {
+                stripe.acquireExclusive();
+            }
+        } catch (RuntimeException e) {
+            stripe.lock.writeLock().unlock();
+            throw e;
+        }
+        return () -> {
+            if (outermost) {
+                stripe.releaseExclusive();
+            }
+            stripe.lock.writeLock().unlock();
+        };
+    }
+
+    private static Stripe stripeFor(String filePath) {
+        String key = new File(filePath).getAbsolutePath();
+        return stripes[(key.hashCode() & 0x7fffffff) % STRIPE_COUNT];
+    }
+
+    // One read-write lock plus the cross-process file lock behind it
+    private static class Stripe {
+        private final int index;
+        private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+        private FileChannel channel;
+        private String channelRoot;
+        private FileLock fileLock;
+        private int sharedHolders = 0;
+
+        Stripe(int index) {
+            this.index = index;
+        }
+
+        // The first in-process reader takes the shared file lock for all of them
+        synchronized void acquireShared() {
+            if (sharedHolders++ == 0) {
+                try {
+                    fileLock = channel().lock(0, Long.MAX_VALUE, true);
+                } catch (IOException e) {
+                    sharedHolders--;
+                    throw new UncheckedIOException(e);
+                }
+            }
+        }
+
+        synchronized void releaseShared() {
+            if (--sharedHolders == 0) {
+                release();
+            }
+        }
+
+        // Only called with the write lock held, so no in-process reader holds the file lock
+        synchronized void acquireExclusive() {
+            try {
+                fileLock = channel().lock(0, Long.MAX_VALUE, false);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        synchronized void releaseExclusive() {
+            release();
+        }
+
+        private void release() {
+            try {
+                if (fileLock != null && fileLock.isValid()) {
+                    fileLock.release();
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            fileLock = null;
+        }
+
+        // Lock file of this stripe under the current data directory
+        private FileChannel channel() throws IOException {
+            String root = DataLayout.root();
+            if (channel == null || !channel.isOpen() || !root.equals(channelRoot)) {
+                if (channel != null) {
+                    channel.close();
+                }
+                File directory = new File(root, LOCK_DIRECTORY);
+                directory.mkdirs();
+                channel = FileChannel.open(new File(directory, String.format("stripe-%02d.lock", index)).toPath(),
+                        StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+                channelRoot = root;
+            }
+            return channel;
+        }
+    }
+}
@@ -2,11 +2,12 @@ package core;
 
 import core.User;
 import core.Gender;
+import UI.Terminal;
 import java.util.Scanner;
 
 public class UserManager {
 
-    private static Scanner scanner = new Scanner(System.in);
+    private static Scanner scanner = new Scanner(Terminal.input());
 
     // Handles user registration
     public static void registerUser() {
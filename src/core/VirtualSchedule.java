@@ -0,0 +1,303 @@
+package core;
+
+import core.io.CsvReader;
+import core.io.CsvWriter;
+import core.storage.ReminderStore.Marking;
+
+import java.io.*;
+import java.nio.charset.Charset;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.temporal.ChronoUnit;
+import java.util.*;
+
+// Virtual schedule mode, enabled with -Dreminder.virtual=true.
+// Instead of one reminders.txt row per dose, the schedule of a medicine is derived on demand
+// from its times, startDate and endDate. Only exceptions are stored: a "taken" and a "skipped"
+// bitmap per medicine, where slot (dayOffset * timesPerDay + timeIndex) is one bit.
+// A mark appends one row with the new bitmaps of that medicine only; when a file is read,
+// later rows replace earlier ones, and once it holds twice as many rows as medicines it is
+// rewritten with one row each. A file changed by another process is read again.
+@SuppressWarnings("try")
+public class VirtualSchedule {
+    private static final String FILE_NAME = "schedule_exceptions.txt";
+
+    // Loaded exceptions per exceptions file, guarded by the class monitor
+    private static final Map<String, ExceptionsFile> files = new HashMap<>();
+
+    // Whether reminders are computed from medicine definitions instead of read from reminders.txt
+    public static boolean isEnabled() {
+        return Boolean.getBoolean("reminder.virtual");
+    }
+
+    // Lazily walks every dose slot of a medicine in date and time order
+    public static Iterator<Reminder> iterate(Medicine medicine) {
+        return iterate(medicine, medicine.getStartDate());
+    }
+
+    // Lazily walks the dose slots of a medicine from the given day onwards, as they were marked
+    // when the walk started
+    public static Iterator<Reminder> iterate(Medicine medicine, LocalDate fromDate) {
+        LocalTime[] times = sortedTimes(medicine);
+        long totalSlots = totalSlots(medicine, times);
+        Exceptions marks = lookup(medicine, times);
+        long firstDay = Math.max(0, ChronoUnit.DAYS.between(medicine.getStartDate(), fromDate));
+
+        return new Iterator<>() {
+            private long slot = firstDay * times.length;
+
+            @Override
+            public boolean hasNext() {
+                return slot < totalSlots;
+            }
+
+            @Override
+            public Reminder next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                Reminder reminder = new Reminder(medicine.getUsername(), medicine.getName(),
+                        times[(int) (slot % times.length)],
+                        medicine.getStartDate().plusDays(slot / times.length),
+                        marks != null && marks.taken.get((int) slot));
+                slot++;
+                return reminder;
+            }
+        };
+    }
+
+    // Returns the first slot that was neither taken nor skipped, found with a bitmap scan
+    public static LocalDateTime getNextDoseDateTime(Medicine medicine) {
+        LocalTime[] times = sortedTimes(medicine);
+        long totalSlots = totalSlots(medicine, times);
+        Exceptions marks = lookup(medicine, times);
+
+        long slot = 0;
+        if (marks != null) {
+            BitSet done = marks.taken;
+            done.or(marks.skipped); // The snapshot is ours to change
+            slot = done.nextClearBit(0);
+        }
+        if (slot >= totalSlots) {
+            return null; // No upcoming dose
+        }
+        return LocalDateTime.of(medicine.getStartDate().plusDays(slot / times.length), times[(int) (slot % times.length)]);
+    }
+
+    // Sets the taken bit of every slot matching the given date and time
+    public static Marking markTaken(Medicine medicine, LocalDate date, LocalTime time) {
+        return mark(medicine, date, time, true);
+    }
+
+    // Sets the skipped bit of every slot matching the given date and time; false if nothing changed
+    public static boolean markSkipped(Medicine medicine, LocalDate date, LocalTime time) {
+        return mark(medicine, date, time, false) == Marking.MARKED;
+    }
+
+    // Drops the stored exceptions of a removed medicine
+    public static void forget(String username, String medicineName) {
+        String filePath = DataLayout.userFile(username, FILE_NAME);
+        try (UserLocks.Held lock = UserLocks.write(filePath)) {
+            synchronized (VirtualSchedule.class) {
+                ExceptionsFile file = load(filePath);
+                if (file.exceptions.remove(key(username, medicineName)) != null && !save(filePath, file)) {
+                    files.remove(filePath);
+                }
+            }
+        }
+    }
+
+    private static Marking mark(Medicine medicine, LocalDate date, LocalTime time, boolean taken) {
+        LocalTime[] times = sortedTimes(medicine);
+        if (date.isBefore(medicine.getStartDate()) || date.isAfter(medicine.getEndDate())) {
+            return Marking.NOT_FOUND;
+        }
+
+        String filePath = DataLayout.userFile(medicine.getUsername(), FILE_NAME);
+        String key = key(medicine.getUsername(), medicine.getName());
+        try (UserLocks.Held lock = UserLocks.write(filePath)) {
+            synchronized (VirtualSchedule.class) {
+                ExceptionsFile file = load(filePath);
+                Exceptions marks = file.exceptions.computeIfAbsent(key, k -> new Exceptions(medicine.getStartDate(), times.length));
+                if (!marks.startDate.equals(medicine.getStartDate()) || marks.slotsPerDay != times.length) {
+                    // The medicine was redefined since these marks were stored, so they no longer line up
+                    marks = new Exceptions(medicine.getStartDate(), times.length);
+                    file.exceptions.put(key, marks);
+                }
+
+                long dayOffset = ChronoUnit.DAYS.between(medicine.getStartDate(), date);
+                BitSet bits = taken ? marks.taken : marks.skipped;
+                boolean found = false;
+                boolean changed = false;
+                for (int i = 0; i < times.length; i++) {
+                    if (times[i].equals(time)) {
+                        int slot = (int) (dayOffset * times.length + i);
+                        changed |= !bits.get(slot);
+                        bits.set(slot);
+                        found = true;
+                    }
+                }
+
+                if (!found) {
+                    return Marking.NOT_FOUND;
+                }
+                if (!changed) {
+                    return Marking.ALREADY_TAKEN;
+                }
+                if (!append(filePath, file, key, marks)) {
+                    files.remove(filePath); // Forget the unsaved bit, the next load reads what is on disk
+                    return Marking.FAILED;
+                }
+                return Marking.MARKED;
+            }
+        }
+    }
+
+    // Returns a copy of the stored marks of a medicine, or null if there are none that line up
+    // with its definition
+    private static Exceptions lookup(Medicine medicine, LocalTime[] times) {
+        String filePath = DataLayout.userFile(medicine.getUsername(), FILE_NAME);
+        try (UserLocks.Held lock = UserLocks.read(filePath)) {
+            synchronized (VirtualSchedule.class) {
+                Exceptions marks = load(filePath).exceptions.get(key(medicine.getUsername(), medicine.getName()));
+                if (marks == null || !marks.startDate.equals(medicine.getStartDate()) || marks.slotsPerDay != times.length) {
+                    return null;
+                }
+                return marks.copy();
+            }
+        }
+    }
+
+    private static LocalTime[] sortedTimes(Medicine medicine) {
+        LocalTime[] times = medicine.getTimes().clone();
+        Arrays.sort(times);
+        return times;
+    }
+
+    private static long totalSlots(Medicine medicine, LocalTime[] times) {
+        long days = ChronoUnit.DAYS.between(medicine.getStartDate(), medicine.getEndDate()) + 1;
+        return Math.max(0, days) * times.length;
+    }
+
+    // Returns the loaded exceptions file, reading it if it is new or changed since:
+    // username,medicineName,startDate,slotsPerDay,takenBits,skippedBits
+    private static ExceptionsFile load(String filePath) {
+        File file = new File(filePath);
+        ExceptionsFile loaded = files.get(filePath);
+        if (loaded != null && loaded.matches(file)) {
+            return loaded;
+        }
+        loaded = new ExceptionsFile();
+        if (file.exists()) {
+            try (CsvReader reader = new CsvReader(new FileReader(file))) {
+                while (reader.next()) {
+                    if (reader.fieldCount() < 6 || !reader.isTerminated()) {
+                        continue; // A row cut short by an interrupted append
+                    }
+                    Exceptions marks = new Exceptions(reader.dateField(2), reader.intField(3));
+                    marks.taken.or(decode(reader.field(4)));
+                    marks.skipped.or(decode(reader.field(5)));
+                    loaded.exceptions.put(key(reader.field(0), reader.field(1)), marks);
+                    loaded.rows++;
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        loaded.remember(file);
+        files.put(filePath, loaded);
+        return loaded;
+    }
+
+    // Appends the new bitmaps of one medicine, or rewrites the file once most of its rows are
+    // superseded; false if that failed
+    private static boolean append(String filePath, ExceptionsFile file, String key, Exceptions marks) {
+        if (file.rows + 1 >= Math.max(16, 2 * file.exceptions.size())) {
+            return save(filePath, file);
+        }
+        try (CsvWriter writer = new CsvWriter(new BufferedWriter(new FileWriter(filePath, true)))) {
+            write(writer, key, marks);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return false;
+        }
+        file.rows++;
+        file.remember(new File(filePath));
+        return true;
+    }
+
+    // Writes every bitmap of a file to a new file and moves it over the old one; false if that failed
+    private static boolean save(String filePath, ExceptionsFile file) {
+        try {
+            AtomicFiles.replace(filePath, Charset.defaultCharset(), out -> { // Read back with FileReader
+                CsvWriter writer = new CsvWriter(out);
+                for (Map.Entry<String, Exceptions> entry : file.exceptions.entrySet()) {
+                    write(writer, entry.getKey(), entry.getValue());
+                }
+            });
+        } catch (IOException e) {
+            e.printStackTrace();
+            return false;
+        }
+        file.rows = file.exceptions.size();
+        file.remember(new File(filePath));
+        return true;
+    }
+
+    private static void write(CsvWriter writer, String key, Exceptions marks) throws IOException {
+        String[] names = key.split("\u0000");
+        writer.field(names[0]).field(names[1]).field(marks.startDate).field(marks.slotsPerDay)
+                .field(encode(marks.taken)).field(encode(marks.skipped));
+        writer.endRecord();
+    }
+
+    private static String encode(BitSet bits) {
+        return Base64.getEncoder().encodeToString(bits.toByteArray());
+    }
+
+    private static BitSet decode(String data) {
+        return BitSet.valueOf(Base64.getDecoder().decode(data));
+    }
+
+    private static String key(String username, String medicineName) {
+        return username + "\u0000" + medicineName;
+    }
+
+    // The marks of one exceptions file, with the file state they were read from
+    private static class ExceptionsFile {
+        private final Map<String, Exceptions> exceptions = new HashMap<>();
+        private int rows = 0; // Rows in the file, counting superseded ones
+        private long lastModified = -1;
+        private long length = -1;
+
+        boolean matches(File file) {
+            return file.lastModified() == lastModified && file.length() == length;
+        }
+
+        void remember(File file) {
+            lastModified = file.lastModified();
+            length = file.length();
+        }
+    }
+
+    // Taken and skipped bitmaps of one medicine, anchored at the start date they were recorded against
+    private static class Exceptions {
+        private final LocalDate startDate;
+        private final int slotsPerDay;
+        private final BitSet taken = new BitSet();
+        private final BitSet skipped = new BitSet();
+
+        Exceptions(LocalDate startDate, int slotsPerDay) {
+            this.startDate = startDate;
+            this.slotsPerDay = slotsPerDay;
+        }
+
+        Exceptions copy() {
+            Exceptions copy = new Exceptions(startDate, slotsPerDay);
+            copy.taken.or(taken);
+            copy.skipped.or(skipped);
+            return copy;
+        }
+    }
+}
@@ -0,0 +1,296 @@
+package core;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.*;
+
+// Group-commit queue for append-only records (dose history, notifications).
+// Callers hand a record, the file it belongs to and the sink that appends to that file to
+// append() and return at once. One background thread drains the queue every FLUSH_MILLIS,
+// or as soon as BATCH_SIZE records are waiting, and hands each file all of its records in
+// one call, so a burst of events from many threads costs one lock, one open and one write
+// per file instead of one per event.
+// Durability is chosen with -Dwritebehind.durability:
+//   none    records are written to the OS and never forced (the default)
+//   batch   each batch is forced to disk once it is written
+//   record  each record is forced on its own, and append() waits until its record is on disk
+// Readers of a queued file call flush(file) first to see their own writes; flush() waits
+// for everything queued so far. Whatever is still queued is written at JVM shutdown.
+// Records a sink fails to write stay queued, in order, and are retried every RETRY_MILLIS;
+// a record counts as written only once its sink returned, so nobody waiting on it is told
+// otherwise. Records of other files are not held up by them. Since a failed record keeps the
+// later records of its file back, the last record of a file being written means all of them
+// were. If the writer thread dies it is started again by the next caller.
+public class WriteBehindQueue {
+    public enum Durability { NONE, BATCH, RECORD }
+
+    // Longest time a record waits before it is written, overridable with -Dwritebehind.flushMillis
+    private static final long FLUSH_MILLIS = Math.max(1, Long.getLong("writebehind.flushMillis", 20));
+    // Queued records that trigger a write straight away, overridable with -Dwritebehind.batchSize
+    private static final int BATCH_SIZE = Math.max(1, Integer.getInteger("writebehind.batchSize", 1000));
+    // Pause before records a sink failed on are tried again
+    private static final long RETRY_MILLIS = 1000;
+    // Longest the shutdown hook waits for queued records before giving up on them
+    private static final long SHUTDOWN_WAIT_MILLIS = 10_000;
+    private static final Durability DURABILITY =
+            Durability.valueOf(System.getProperty("writebehind.durability", "none").toUpperCase());
+
+    // Appends records to one file in the order given, forcing them to disk when sync is set
+    public interface Sink<T> {
+        void append(String filePath, List<T> records, boolean sync) throws IOException;
+    }
+
+    private static final Object lock = new Object();
+    private static List<Pending> pending = new ArrayList<>();
+    private static final Map<String, Long> lastQueued = new HashMap<>(); // Files with records not yet written
+    private static long queuedThrough = 0;
+    private static final TreeSet<Long> unwritten = new TreeSet<>();     // Sequences queued and not yet written
+    private static final Map<Long, Throwable> failures = new HashMap<>(); // Why an unwritten record's last write failed
+    private static boolean flushRequested = false;
+    private static boolean retrying = false; // The queue starts with records a sink failed on
+    private static long retryAt = 0;         // System.nanoTime() before which they are not retried
+    private static Thread writer = null;
+    private static boolean hookAdded = false;
+
+    private static class Pending {
+        final long sequence;
+        final String filePath;
+        final Object record;
+        final Sink<Object> sink;
+        Throwable error = null; // Set when the sink failed on this record
+
+        Pending(long sequence, String filePath, Object record, Sink<Object> sink) {
+            this.sequence = sequence;
+            this.filePath = filePath;
+            this.record = record;
+            this.sink = sink;
+        }
+    }
+
+    // Queues a record for the file. With record durability, waits until it is on disk, and throws
+    // UncheckedIOException if the write failed; the record then stays queued and is retried.
+    @SuppressWarnings("unchecked")
+    public static <T> void append(String filePath, T record, Sink<T> sink) {
+        long sequence;
+        synchronized (lock) {
+            startWriter();
+            sequence = ++queuedThrough;
+            unwritten.add(sequence);
+            pending.add(new Pending(sequence, filePath, record, (Sink<Object>) sink));
+            lastQueued.put(filePath, sequence);
+            if (DURABILITY == Durability.RECORD) {
+                flushRequested = true;
+            }
+            if (flushRequested || pending.size() >= BATCH_SIZE) {
+                lock.notifyAll();
+            }
+        }
+        if (DURABILITY == Durability.RECORD) {
+            Throwable error = await(sequence, false, true, 0);
+            if (error != null) {
+                throw new UncheckedIOException(new IOException("Record not written yet, will be retried: " + filePath, error));
+            }
+        }
+    }
+
+    // Waits until every record queued for the file so far has been written
+    public static void flush(String filePath) {
+        Long sequence;
+        synchronized (lock) {
+            sequence = lastQueued.get(filePath);
+        }
+        if (sequence != null) {
+            await(sequence, false, false, 0);
+        }
+    }
+
+    // Waits until every record queued so far has been written
+    public static void flush() {
+        long sequence;
+        synchronized (lock) {
+            sequence = queuedThrough;
+        }
+        await(sequence, true, false, 0);
+    }
+
+    // Writes what is still queued at JVM shutdown, giving up after SHUTDOWN_WAIT_MILLIS
+    private static void flushAtShutdown() {
+        long sequence;
+        synchronized (lock) {
+            sequence = queuedThrough;
+        }
+        await(sequence, true, false, SHUTDOWN_WAIT_MILLIS);
+        synchronized (lock) {
+            if (!unwritten.isEmpty()) {
+                System.err.printf("\n⚠ %d queued records could not be written\n", unwritten.size());
+            }
+        }
+    }
+
+    // Waits until the record with the given sequence is written, or every record up to it if
+    // throughAll is set, for at most timeoutMillis if that is positive. With failFast, returns the
+    // error as soon as a write of the record failed; otherwise returns null.
+    private static Throwable await(long sequence, boolean throughAll, boolean failFast, long timeoutMillis) {
+        if (Thread.currentThread() == writer) {
+            return null; // A sink reading its own file; what it has not written yet is in its hands
+        }
+        long deadline = System.nanoTime() + timeoutMillis * 1_000_000;
+        synchronized (lock) {
+            flushRequested = true;
+            lock.notifyAll();
+            boolean interrupted = false;
+            try {
+                while (throughAll ? !unwritten.isEmpty() && unwritten.first() <= sequence : unwritten.contains(sequence)) {
+                    if (failFast && failures.containsKey(sequence)) {
+                        return failures.get(sequence);
+                    }
+                    startWriter(); // In case the writer died since the record was queued
+                    long remaining = deadline - System.nanoTime();
+                    if (timeoutMillis > 0 && remaining <= 0) {
+                        return null;
+                    }
+                    try {
+                        lock.wait(timeoutMillis > 0 ? Math.max(1, remaining / 1_000_000) : 0);
+                    } catch (InterruptedException e) {
+                        interrupted = true;
+                    }
+                }
+                return null;
+            } finally {
+                if (interrupted) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+    }
+
+    // Caller holds the lock
+    private static void startWriter() {
+        if (writer != null) {
+            return;
+        }
+        writer = new Thread(WriteBehindQueue::run, "write-behind");
+        writer.setDaemon(true);
+        writer.start();
+        if (!hookAdded) {
+            hookAdded = true;
+            Runtime.getRuntime().addShutdownHook(new Thread(WriteBehindQueue::flushAtShutdown, "write-behind-shutdown"));
+        }
+    }
+
+    private static void run() {
+        try {
+            while (true) {
+                List<Pending> batch = take();
+                List<Pending> failed;
+                try {
+                    failed = write(batch);
+                } catch (Throwable e) {
+                    e.printStackTrace();
+                    failed = new ArrayList<>(batch);
+                    for (Pending item : failed) {
+                        item.error = e;
+                    }
+                }
+                finish(batch, failed);
+            }
+        } finally {
+            // Only reached if the queue itself failed (out of memory, ...); the next caller starts a new writer
+            synchronized (lock) {
+                writer = null;
+                lock.notifyAll();
+            }
+        }
+    }
+
+    // Waits for a batch to be due and takes it off the queue
+    private static List<Pending> take() {
+        synchronized (lock) {
+            try {
+                while (pending.isEmpty()) {
+                    lock.wait();
+                }
+                long deadline = System.nanoTime() + FLUSH_MILLIS * 1_000_000;
+                long remaining;
+                while (!flushRequested && pending.size() < BATCH_SIZE
+                        && (remaining = deadline - System.nanoTime()) > 0) {
+                    lock.wait(Math.max(1, remaining / 1_000_000));
+                }
+                while (retrying && (remaining = retryAt - System.nanoTime()) > 0) {
+                    lock.wait(Math.max(1, remaining / 1_000_000));
+                }
+            } catch (InterruptedException e) {
+                // Write what is there and carry on
+            }
+            List<Pending> batch = pending;
+            pending = new ArrayList<>();
+            flushRequested = false;
+            return batch;
+        }
+    }
+
+    // Marks the written records and puts the failed ones back in front of the queue
+    private static void finish(List<Pending> batch, List<Pending> failed) {
+        synchronized (lock) {
+            for (Pending item : batch) {
+                unwritten.remove(item.sequence);
+                failures.remove(item.sequence);
+            }
+            retrying = !failed.isEmpty();
+            if (retrying) {
+                failed.sort(Comparator.comparingLong(item -> item.sequence));
+                for (Pending item : failed) {
+                    unwritten.add(item.sequence);
+                    failures.put(item.sequence, item.error);
+                    item.error = null;
+                }
+                failed.addAll(pending);
+                pending = failed;
+                retryAt = System.nanoTime() + RETRY_MILLIS * 1_000_000;
+            }
+            lastQueued.values().removeIf(sequence -> !unwritten.contains(sequence));
+            lock.notifyAll();
+        }
+    }
+
+    // Hands each file its records in queue order, one sink call per file (or per record).
+    // Returns the records that were not written: for a failed file, the failed record and all after it.
+    private static List<Pending> write(List<Pending> batch) {
+        Map<Sink<Object>, Map<String, List<Pending>>> bySink = new IdentityHashMap<>();
+        for (Pending item : batch) {
+            bySink.computeIfAbsent(item.sink, sink -> new LinkedHashMap<>())
+                    .computeIfAbsent(item.filePath, path -> new ArrayList<>())
+                    .add(item);
+        }
+
+        List<Pending> failed = new ArrayList<>();
+        for (Map.Entry<Sink<Object>, Map<String, List<Pending>>> sink : bySink.entrySet()) {
+            for (Map.Entry<String, List<Pending>> file : sink.getValue().entrySet()) {
+                List<Pending> items = file.getValue();
+                int written = 0;
+                try {
+                    if (DURABILITY == Durability.RECORD) {
+                        for (Pending item : items) {
+                            sink.getKey().append(file.getKey(), List.of(item.record), true);
+                            written++;
+                        }
+                    } else {
+                        List<Object> records = new ArrayList<>(items.size());
+                        for (Pending item : items) {
+                            records.add(item.record);
+                        }
+                        sink.getKey().append(file.getKey(), records, DURABILITY == Durability.BATCH);
+                        written = items.size();
+                    }
+                } catch (Throwable e) { // Whatever the sink threw, its records must not count as written
+                    e.printStackTrace();
+                    for (Pending item : items.subList(written, items.size())) {
+                        item.error = e;
+                        failed.add(item);
+                    }
+                }
+            }
+        }
+        return failed;
+    }
+}
@@ -0,0 +1,332 @@
+package core.io;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.Writer;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+
+// Record-at-a-time CSV tokenizer shared by every data file.
+// Input is read in large blocks and each record is tokenized in place into reused char
+// buffers; fields are only offsets into those buffers. Numbers, booleans, dates and times
+// are parsed straight from the characters, so scanning a file allocates nothing for rows
+// that are skipped. Quoted fields ("a, b" and "say ""hi""") are unescaped while tokenizing.
+public final class CsvReader implements Closeable {
+    private final Reader in;
+    private final char[] input = new char[64 * 1024];
+    private int inputPosition = 0;
+    private int inputLimit = 0;
+
+    // Unescaped field contents of the current record, back to back
+    private char[] record = new char[256];
+    private int recordLength = 0;
+
+    // The current record exactly as it appeared in the file, without its line terminator
+    private char[] raw = new char[256];
+    private int rawLength = 0;
+
+    private int[] starts = new int[16];
+    private int[] ends = new int[16];
+    private int fieldCount = 0;
+    private boolean terminated = false;
+
+    public CsvReader(Reader in) {
+        this.in = in;
+    }
+
+    // Reader over a single line of text
+    public static CsvReader of(String line) {
+        return new CsvReader(new StringReader(line));
+    }
+
+    // Advances to the next non-empty record; returns false at the end of the input
+    public boolean next() throws IOException {
+        while (true) {
+            if (!readRecord()) {
+                return false;
+            }
+            if (rawLength > 0) {
+                return true;
+            }
+        }
+    }
+
+    public int fieldCount() {
+        return fieldCount;
+    }
+
+    // Whether the current record ended with a line break rather than at the end of the input.
+    // A reader without a lock can meet a last record that is still being appended; it is
+    // only complete once terminated.
+    public boolean isTerminated() {
+        return terminated;
+    }
+
+    // Whether field i exists and equals the given text, compared without allocating
+    public boolean fieldEquals(int i, String value) {
+        if (i >= fieldCount) {
+            return false;
+        }
+        int length = ends[i] - starts[i];
+        if (length != value.length()) {
+            return false;
+        }
+        for (int k = 0; k < length; k++) {
+            if (record[starts[i] + k] != value.charAt(k)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public String field(int i) {
+        checkField(i);
+        return new String(record, starts[i], ends[i] - starts[i]);
+    }
+
+    public int intField(int i) {
+        checkField(i);
+        int position = starts[i];
+        int end = ends[i];
+        boolean negative = position < end && record[position] == '-';
+        if (negative || (position < end && record[position] == '+')) {
+            position++;
+        }
+        if (position == end) {
+            throw new NumberFormatException("Empty number in field " + i);
+        }
+        int value = 0;
+        for (; position < end; position++) {
+            int digit = record[position] - '0';
+            if (digit < 0 || digit > 9) {
+                throw new NumberFormatException("Not a number: " + field(i));
+            }
+            value = value * 10 + digit;
+        }
+        return negative ? -value : value;
+    }
+
+    // Same rule as Boolean.parseBoolean: true only for "true" in any case
+    public boolean booleanField(int i) {
+        if (i >= fieldCount || ends[i] - starts[i] != 4) {
+            return false;
+        }
+        int p = starts[i];
+        return (record[p] | 0x20) == 't' && (record[p + 1] | 0x20) == 'r'
+                && (record[p + 2] | 0x20) == 'u' && (record[p + 3] | 0x20) == 'e';
+    }
+
+    // Matches a field against enum constant names; pass a cached values() array
+    public <E extends Enum<E>> E enumField(int i, E[] values) {
+        for (E value : values) {
+            if (fieldEquals(i, value.name())) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Unknown constant: " + field(i));
+    }
+
+    // Parses yyyy-MM-dd
+    public LocalDate dateField(int i) {
+        checkField(i);
+        if (ends[i] - starts[i] != 10) {
+            return LocalDate.parse(field(i));
+        }
+        return date(starts[i]);
+    }
+
+    // Parses HH:mm or HH:mm:ss
+    public LocalTime timeField(int i) {
+        checkField(i);
+        return time(starts[i], ends[i]);
+    }
+
+    // Parses yyyy-MM-dd HH:mm:ss, also accepting ISO 'T' as the separator
+    public LocalDateTime dateTimeField(int i) {
+        checkField(i);
+        int start = starts[i];
+        if (ends[i] - start < 16 || (record[start + 10] != ' ' && record[start + 10] != 'T')) {
+            throw new IllegalArgumentException("Not a date-time: " + field(i));
+        }
+        return LocalDateTime.of(date(start), time(start + 11, ends[i]));
+    }
+
+    // Parses a list of times separated by ';', ignoring empty entries such as a trailing ';'
+    public LocalTime[] timesField(int i) {
+        checkField(i);
+        int count = 0;
+        int segmentStart = starts[i];
+        for (int p = starts[i]; p <= ends[i]; p++) {
+            if (p == ends[i] || record[p] == ';') {
+                if (p > segmentStart) {
+                    count++;
+                }
+                segmentStart = p + 1;
+            }
+        }
+
+        LocalTime[] times = new LocalTime[count];
+        int index = 0;
+        segmentStart = starts[i];
+        for (int p = starts[i]; p <= ends[i]; p++) {
+            if (p == ends[i] || record[p] == ';') {
+                if (p > segmentStart) {
+                    times[index++] = time(segmentStart, p);
+                }
+                segmentStart = p + 1;
+            }
+        }
+        return times;
+    }
+
+    // The current record as it appeared in the file
+    public String rawRecord() {
+        return new String(raw, 0, rawLength);
+    }
+
+    // Copies the current record, as it appeared in the file, to a writer
+    public void writeRawRecord(Writer writer) throws IOException {
+        writer.write(raw, 0, rawLength);
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    private LocalDate date(int p) {
+        return LocalDate.of(digits(p, 4), digits(p + 5, 2), digits(p + 8, 2));
+    }
+
+    private LocalTime time(int start, int end) {
+        int length = end - start;
+        if (length == 5 && record[start + 2] == ':') {
+            return LocalTime.of(digits(start, 2), digits(start + 3, 2));
+        }
+        if (length == 8 && record[start + 2] == ':' && record[start + 5] == ':') {
+            return LocalTime.of(digits(start, 2), digits(start + 3, 2), digits(start + 6, 2));
+        }
+        return LocalTime.parse(new String(record, start, length));
+    }
+
+    private int digits(int position, int count) {
+        int value = 0;
+        for (int k = 0; k < count; k++) {
+            int digit = record[position + k] - '0';
+            if (digit < 0 || digit > 9) {
+                throw new IllegalArgumentException("Expected digits at " + new String(record, position, count));
+            }
+            value = value * 10 + digit;
+        }
+        return value;
+    }
+
+    private void checkField(int i) {
+        if (i >= fieldCount) {
+            throw new IllegalArgumentException("Record has no field " + i + ": " + rawRecord());
+        }
+    }
+
+    // Tokenizes the next record, which may span lines inside quotes
+    private boolean readRecord() throws IOException {
+        recordLength = 0;
+        rawLength = 0;
+        fieldCount = 0;
+        terminated = false;
+        boolean quoted = false;
+        boolean sawAnything = false;
+        int fieldStart = 0;
+
+        while (true) {
+            if (inputPosition == inputLimit) {
+                inputLimit = in.read(input, 0, input.length);
+                inputPosition = 0;
+                if (inputLimit <= 0) {
+                    inputLimit = 0;
+                    if (!sawAnything) {
+                        return false;
+                    }
+                    endField(fieldStart);
+                    return true;
+                }
+            }
+
+            char c = input[inputPosition++];
+            sawAnything = true;
+
+            if (quoted) {
+                appendRaw(c);
+                if (c == '"') {
+                    if (peek() == '"') {
+                        appendRaw(input[inputPosition++]);
+                        appendRecord('"');
+                    } else {
+                        quoted = false;
+                    }
+                } else {
+                    appendRecord(c);
+                }
+                continue;
+            }
+
+            if (c == '\n') {
+                endField(fieldStart);
+                terminated = true;
+                return true;
+            }
+            if (c == '\r') {
+                continue;
+            }
+
+            appendRaw(c);
+            if (c == ',') {
+                endField(fieldStart);
+                fieldStart = recordLength;
+            } else if (c == '"' && recordLength == fieldStart) {
+                quoted = true;
+            } else {
+                appendRecord(c);
+            }
+        }
+    }
+
+    // Next input character without consuming it, or -1 at the end of the input
+    private int peek() throws IOException {
+        if (inputPosition == inputLimit) {
+            inputLimit = in.read(input, 0, input.length);
+            inputPosition = 0;
+            if (inputLimit <= 0) {
+                inputLimit = 0;
+                return -1;
+            }
+        }
+        return input[inputPosition];
+    }
+
+    private void endField(int fieldStart) {
+        if (fieldCount == starts.length) {
+            starts = java.util.Arrays.copyOf(starts, fieldCount * 2);
+            ends = java.util.Arrays.copyOf(ends, fieldCount * 2);
+        }
+        starts[fieldCount] = fieldStart;
+        ends[fieldCount] = recordLength;
+        fieldCount++;
+    }
+
+    private void appendRecord(char c) {
+        if (recordLength == record.length) {
+            record = java.util.Arrays.copyOf(record, recordLength * 2);
+        }
+        record[recordLength++] = c;
+    }
+
+    private void appendRaw(char c) {
+        if (rawLength == raw.length) {
+            raw = java.util.Arrays.copyOf(raw, rawLength * 2);
+        }
+        raw[rawLength++] = c;
+    }
+}
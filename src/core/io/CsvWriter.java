@@ -0,0 +1,172 @@
+package core.io;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+
+// Record writer matching CsvReader.
+// Fields are written straight to the underlying writer; a field is quoted only when it
+// contains a comma, quote or line break, so ordinary rows stay byte-for-byte the same as
+// the plain comma-joined rows already in the data files.
+public final class CsvWriter implements Closeable, Flushable {
+    private static final String LINE_SEPARATOR = System.lineSeparator();
+
+    private final Writer out;
+    private boolean firstField = true;
+
+    public CsvWriter(Writer out) {
+        this.out = out;
+    }
+
+    // Builds a single record, without line terminator, from already formatted fields
+    public static String line(String... fields) {
+        StringWriter buffer = new StringWriter();
+        CsvWriter writer = new CsvWriter(buffer);
+        try {
+            for (String field : fields) {
+                writer.field(field);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return buffer.toString();
+    }
+
+    public CsvWriter field(String value) throws IOException {
+        separate();
+        if (!needsQuotes(value)) {
+            out.write(value);
+            return this;
+        }
+        out.write('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"') {
+                out.write('"');
+            }
+            out.write(c);
+        }
+        out.write('"');
+        return this;
+    }
+
+    public CsvWriter field(int value) throws IOException {
+        separate();
+        out.write(Integer.toString(value));
+        return this;
+    }
+
+    public CsvWriter field(boolean value) throws IOException {
+        separate();
+        out.write(value ? "true" : "false");
+        return this;
+    }
+
+    // yyyy-MM-dd
+    public CsvWriter field(LocalDate value) throws IOException {
+        separate();
+        writeDate(value);
+        return this;
+    }
+
+    // HH:mm, or HH:mm:ss when seconds are set, as LocalTime.toString writes it
+    public CsvWriter field(LocalTime value) throws IOException {
+        separate();
+        writeTime(value);
+        return this;
+    }
+
+    // yyyy-MM-dd HH:mm:ss
+    public CsvWriter field(LocalDateTime value) throws IOException {
+        separate();
+        writeDate(value.toLocalDate());
+        out.write(' ');
+        writeDigits(value.getHour(), 2);
+        out.write(':');
+        writeDigits(value.getMinute(), 2);
+        out.write(':');
+        writeDigits(value.getSecond(), 2);
+        return this;
+    }
+
+    // Times each followed by ';', the format medicines.txt has always used
+    public CsvWriter field(LocalTime[] values) throws IOException {
+        separate();
+        for (LocalTime value : values) {
+            writeTime(value);
+            out.write(';');
+        }
+        return this;
+    }
+
+    public void endRecord() throws IOException {
+        out.write(LINE_SEPARATOR);
+        firstField = true;
+    }
+
+    @Override
+    public void flush() throws IOException {
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        out.close();
+    }
+
+    private void separate() throws IOException {
+        if (!firstField) {
+            out.write(',');
+        }
+        firstField = false;
+    }
+
+    private void writeDate(LocalDate value) throws IOException {
+        int year = value.getYear();
+        if (year < 0 || year > 9999) {
+            out.write(value.toString());
+            return;
+        }
+        writeDigits(year, 4);
+        out.write('-');
+        writeDigits(value.getMonthValue(), 2);
+        out.write('-');
+        writeDigits(value.getDayOfMonth(), 2);
+    }
+
+    private void writeTime(LocalTime value) throws IOException {
+        if (value.getNano() != 0) {
+            out.write(value.toString());
+            return;
+        }
+        writeDigits(value.getHour(), 2);
+        out.write(':');
+        writeDigits(value.getMinute(), 2);
+        if (value.getSecond() != 0) {
+            out.write(':');
+            writeDigits(value.getSecond(), 2);
+        }
+    }
+
+    private void writeDigits(int value, int width) throws IOException {
+        for (int divisor = (int) Math.pow(10, width - 1); divisor > 0; divisor /= 10) {
+            out.write('0' + (value / divisor) % 10);
+        }
+    }
+
+    private static boolean needsQuotes(String value) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == ',' || c == '"' || c == '\n' || c == '\r') {
+                return true;
+            }
+        }
+        return false;
+    }
+}
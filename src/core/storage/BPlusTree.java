@@ -0,0 +1,198 @@
+package core.storage;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+// B+tree of byte-string keys and values in one tree slot of a PageStore.
+// Keys compare as unsigned bytes, so keys built from big-endian numbers and
+// separator-terminated strings sort in field order and a composite key prefix selects one
+// contiguous range. Values live in the leaves, which are chained in key order, so a range
+// scan descends once and then walks the leaves. A node is split in two by encoded size
+// when it outgrows its page. Removal leaves nodes as they are; emptied leaves are skipped by
+// scans and reused by later inserts into their range.
+// All methods must be called inside PageStore.read() or write().
+public class BPlusTree {
+    // Largest key plus value, a quarter of a page, so a split always leaves two nodes that fit
+    public static final int MAX_ENTRY_BYTES = (PageStore.PAGE_SIZE - Node.HEADER_BYTES) / 4 - 4;
+
+    private final PageStore store;
+    private final int slot;
+
+    // Receives the entries of a scan in key order; returns false to stop
+    public interface Visitor {
+        boolean visit(byte[] key, byte[] value) throws IOException;
+    }
+
+    public BPlusTree(PageStore store, int slot) {
+        this.store = store;
+        this.slot = slot;
+    }
+
+    // Value stored under the key, or null
+    public byte[] get(byte[] key) throws IOException {
+        Node leaf = leafFor(key);
+        if (leaf == null) {
+            return null;
+        }
+        int position = leaf.search(key);
+        return position >= 0 ? leaf.values.get(position) : null;
+    }
+
+    // Stores the value under the key and returns the value it replaced, or null
+    public byte[] put(byte[] key, byte[] value) throws IOException {
+        if (key.length + value.length > MAX_ENTRY_BYTES) {
+            throw new IllegalArgumentException("Entry of " + (key.length + value.length)
+                    + " bytes does not fit in a page (at most " + MAX_ENTRY_BYTES + ")");
+        }
+        store.checkHeld();
+        if (store.root(slot) == 0) {
+            store.setRoot(slot, store.allocate(true).id);
+        }
+
+        byte[][] previous = new byte[1][];
+        Split split = insert(store.node(store.root(slot)), key, value, previous);
+        if (split != null) {
+            Node root = store.allocate(false);
+            root.children.add(store.root(slot));
+            root.keys.add(split.key);
+            root.children.add(split.right);
+            store.setRoot(slot, root.id);
+        }
+        return previous[0];
+    }
+
+    // Removes the key and returns the value it had, or null if it was not there
+    public byte[] remove(byte[] key) throws IOException {
+        Node leaf = leafFor(key);
+        if (leaf == null) {
+            return null;
+        }
+        int position = leaf.search(key);
+        if (position < 0) {
+            return null;
+        }
+        leaf.keys.remove(position);
+        leaf.dirty = true;
+        return leaf.values.remove(position);
+    }
+
+    // Visits the entries from the first key at or after from, in key order, while their key
+    // starts with the prefix (pass an empty prefix for no limit)
+    public void scan(byte[] from, byte[] prefix, Visitor visitor) throws IOException {
+        Node leaf = leafFor(from);
+        if (leaf == null) {
+            return;
+        }
+        int position = leaf.search(from);
+        int index = position >= 0 ? position : -(position + 1);
+        while (true) {
+            for (; index < leaf.keys.size(); index++) {
+                byte[] key = leaf.keys.get(index);
+                if (!startsWith(key, prefix) || !visitor.visit(key, leaf.values.get(index))) {
+                    return;
+                }
+            }
+            if (leaf.next == 0) {
+                return;
+            }
+            leaf = store.node(leaf.next);
+            index = 0;
+        }
+    }
+
+    // Leaf whose range holds the key, or null for an empty tree
+    private Node leafFor(byte[] key) throws IOException {
+        store.checkHeld();
+        if (store.root(slot) == 0) {
+            return null;
+        }
+        Node node = store.node(store.root(slot));
+        while (!node.leaf) {
+            node = store.node(node.childFor(key));
+        }
+        return node;
+    }
+
+    // Separator and new right sibling of a node that was split
+    private static class Split {
+        final byte[] key;
+        final int right;
+
+        Split(byte[] key, int right) {
+            this.key = key;
+            this.right = right;
+        }
+    }
+
+    private Split insert(Node node, byte[] key, byte[] value, byte[][] previous) throws IOException {
+        if (node.leaf) {
+            int position = node.search(key);
+            if (position >= 0) {
+                previous[0] = node.values.set(position, value);
+            } else {
+                node.keys.add(-(position + 1), key);
+                node.values.add(-(position + 1), value);
+            }
+            node.dirty = true;
+            return node.encodedSize() > PageStore.PAGE_SIZE ? splitLeaf(node) : null;
+        }
+
+        int position = node.search(key);
+        int child = position >= 0 ? position + 1 : -(position + 1);
+        Split split = insert(store.node(node.children.get(child)), key, value, previous);
+        if (split == null) {
+            return null;
+        }
+        node.keys.add(child, split.key);
+        node.children.add(child + 1, split.right);
+        node.dirty = true;
+        return node.encodedSize() > PageStore.PAGE_SIZE ? splitInner(node) : null;
+    }
+
+    private Split splitLeaf(Node node) {
+        int at = splitPoint(node);
+        Node right = store.allocate(true);
+        moveTail(node.keys, right.keys, at);
+        moveTail(node.values, right.values, at);
+        right.next = node.next;
+        node.next = right.id;
+        return new Split(right.keys.get(0), right.id);
+    }
+
+    // The middle key moves up; the keys after it go to the new node with their children
+    private Split splitInner(Node node) {
+        int at = splitPoint(node);
+        Node right = store.allocate(false);
+        byte[] separator = node.keys.get(at);
+        moveTail(node.keys, right.keys, at + 1);
+        moveTail(node.children, right.children, at + 1);
+        node.keys.remove(at);
+        return new Split(separator, right.id);
+    }
+
+    // First entry of the right half, chosen by encoded size and leaving both halves non-empty
+    private static int splitPoint(Node node) {
+        int half = node.encodedSize() / 2;
+        int size = Node.HEADER_BYTES;
+        int count = node.keys.size();
+        for (int i = 0; i < count - 1; i++) {
+            size += node.leaf ? 4 + node.keys.get(i).length + node.values.get(i).length : 6 + node.keys.get(i).length;
+            if (size >= half) {
+                return i + 1;
+            }
+        }
+        return count - 1;
+    }
+
+    private static <T> void moveTail(List<T> from, List<T> to, int at) {
+        List<T> tail = from.subList(at, from.size());
+        to.addAll(tail);
+        tail.clear();
+    }
+
+    private static boolean startsWith(byte[] key, byte[] prefix) {
+        return key.length >= prefix.length
+                && Arrays.equals(key, 0, prefix.length, prefix, 0, prefix.length);
+    }
+}
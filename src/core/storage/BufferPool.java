@@ -0,0 +1,72 @@
+package core.storage;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// Cache of decoded nodes in front of the page file, evicted least recently used.
+// Changed nodes stay in the pool until they are written back, so eviction only happens in
+// trim(), between operations, and never drops a change. The pool may grow past its capacity
+// while one large operation runs.
+class BufferPool {
+    private final FileChannel channel;
+    private final int capacity;
+    private final LinkedHashMap<Integer, Node> frames;
+    private final ByteBuffer page = ByteBuffer.allocate(PageStore.PAGE_SIZE);
+
+    BufferPool(FileChannel channel, int capacity) {
+        this.channel = channel;
+        this.capacity = capacity;
+        this.frames = new LinkedHashMap<>(capacity * 2, 0.75f, true);
+    }
+
+    Node get(int id) throws IOException {
+        Node node = frames.get(id);
+        if (node == null) {
+            page.clear();
+            long position = (long) id * PageStore.PAGE_SIZE;
+            while (page.hasRemaining() && channel.read(page, position + page.position()) >= 0) {
+                // Keep reading until the page is full or the file ends
+            }
+            node = Node.decode(id, page);
+            frames.put(id, node);
+        }
+        return node;
+    }
+
+    // Files a node that was just allocated; it is written at the next flush
+    void add(Node node) {
+        node.dirty = true;
+        frames.put(node.id, node);
+    }
+
+    // Nodes changed since they were last written
+    List<Node> dirty() {
+        List<Node> dirty = new ArrayList<>();
+        for (Node node : frames.values()) {
+            if (node.dirty) {
+                dirty.add(node);
+            }
+        }
+        return dirty;
+    }
+
+    // Evicts unchanged nodes, oldest first, until the pool is back within its capacity
+    void trim() {
+        Iterator<Map.Entry<Integer, Node>> frames = this.frames.entrySet().iterator();
+        while (this.frames.size() > capacity && frames.hasNext()) {
+            if (!frames.next().getValue().dirty) {
+                frames.remove();
+            }
+        }
+    }
+
+    void clear() {
+        frames.clear();
+    }
+}
@@ -0,0 +1,13 @@
+package core.storage;
+
+import core.DoseHistory;
+
+import java.util.List;
+
+// Append-only record of the doses each user took
+public interface DoseHistoryStore {
+    void append(DoseHistory doseHistory);
+
+    // Dose history of one user in the order it was recorded
+    List<DoseHistory> findByUser(String username);
+}
@@ -0,0 +1,28 @@
+package core.storage;
+
+import core.Medicine;
+
+import java.util.List;
+import java.util.function.Consumer;
+
+// Medicines of every user, keyed by (username, medicine name).
+// Quantities returned here are the current stock, taken from the stock ledger.
+public interface MedicineStore {
+    boolean add(Medicine medicine);
+
+    // All medicines of one user
+    List<Medicine> findByUser(String username);
+
+    // One medicine of a user by name, or null if the user has no such medicine
+    Medicine find(String username, String medicineName);
+
+    // Removes a medicine and returns true if it existed
+    boolean remove(String username, String medicineName);
+
+    // Independent parts of the whole data set that can be scanned one by one or in parallel
+    List<String> partitions();
+
+    // Calls the consumer for every medicine in one partition, whoever it belongs to. The
+    // consumer may call other stores, but not this one.
+    void forEachIn(String partition, Consumer<Medicine> consumer);
+}
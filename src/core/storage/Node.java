@@ -0,0 +1,108 @@
+package core.storage;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// One B+tree node, decoded from its page.
+// Page format: kind (1 byte), entry count (2), then for a leaf the next leaf's page (4)
+// followed by (key length, value length, key, value) per entry, and for an inner node the
+// first child's page (4) followed by (key length, key, child page) per key. Keys compare as
+// unsigned bytes, and each inner key is the smallest key of the subtree to its right.
+class Node {
+    static final int HEADER_BYTES = 7;
+    private static final byte LEAF = 0;
+    private static final byte INNER = 1;
+
+    final int id;
+    final boolean leaf;
+    int next = 0; // Next leaf in key order, 0 for none (page 0 is the file header)
+    final List<byte[]> keys;
+    final List<byte[]> values;    // Leaves only
+    final List<Integer> children; // Inner nodes only, one more than there are keys
+    boolean dirty = false;
+
+    Node(int id, boolean leaf, int capacity) {
+        this.id = id;
+        this.leaf = leaf;
+        this.keys = new ArrayList<>(capacity);
+        this.values = leaf ? new ArrayList<>(capacity) : null;
+        this.children = leaf ? null : new ArrayList<>(capacity + 1);
+    }
+
+    // Bytes this node takes when encoded
+    int encodedSize() {
+        int size = HEADER_BYTES;
+        for (int i = 0; i < keys.size(); i++) {
+            size += leaf ? 4 + keys.get(i).length + values.get(i).length : 6 + keys.get(i).length;
+        }
+        return size;
+    }
+
+    // Position of the key, or -(insertion point) - 1 if it is not there
+    int search(byte[] key) {
+        int low = 0;
+        int high = keys.size() - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int comparison = Arrays.compareUnsigned(keys.get(middle), key);
+            if (comparison < 0) {
+                low = middle + 1;
+            } else if (comparison > 0) {
+                high = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+        return -(low + 1);
+    }
+
+    // Child of an inner node whose subtree holds the key
+    int childFor(byte[] key) {
+        int position = search(key);
+        return children.get(position >= 0 ? position + 1 : -(position + 1));
+    }
+
+    void encode(ByteBuffer page) {
+        page.clear();
+        page.put(leaf ? LEAF : INNER);
+        page.putShort((short) keys.size());
+        page.putInt(leaf ? next : children.get(0));
+        for (int i = 0; i < keys.size(); i++) {
+            byte[] key = keys.get(i);
+            if (leaf) {
+                byte[] value = values.get(i);
+                page.putShort((short) key.length).putShort((short) value.length).put(key).put(value);
+            } else {
+                page.putShort((short) key.length).put(key).putInt(children.get(i + 1));
+            }
+        }
+    }
+
+    static Node decode(int id, ByteBuffer page) {
+        page.clear();
+        boolean leaf = page.get() == LEAF;
+        int count = Short.toUnsignedInt(page.getShort());
+        Node node = new Node(id, leaf, count);
+        if (leaf) {
+            node.next = page.getInt();
+        } else {
+            node.children.add(page.getInt());
+        }
+        for (int i = 0; i < count; i++) {
+            byte[] key = new byte[Short.toUnsignedInt(page.getShort())];
+            if (leaf) {
+                byte[] value = new byte[Short.toUnsignedInt(page.getShort())];
+                page.get(key).get(value);
+                node.keys.add(key);
+                node.values.add(value);
+            } else {
+                page.get(key);
+                node.keys.add(key);
+                node.children.add(page.getInt());
+            }
+        }
+        return node;
+    }
+}
@@ -0,0 +1,19 @@
+package core.storage;
+
+import core.Notification;
+
+import java.util.List;
+import java.util.Set;
+
+// Notifications of every user in the order they were raised
+public interface NotificationStore {
+    boolean add(Notification notification);
+
+    // Stores the notification unless one with the same user, type and message exists; returns true if it was stored
+    boolean addIfAbsent(Notification notification);
+
+    List<Notification> findByUser(String username);
+
+    // Marks the user's notifications with any of these messages as processed, in one update
+    void markProcessed(String username, Set<String> messages);
+}
@@ -0,0 +1,153 @@
+package core.storage;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+// Redo log of one page store flush.
+// Before a flush overwrites any page in place, the new contents of every page it changes and
+// of the header are written here as (file position, length, bytes) entries, closed by the
+// entry count, a CRC32 of the entries and a marker. Once the store file is written the
+// journal is emptied. A journal that is still there when the store is next opened belongs to
+// a flush that was cut short: if it is complete its entries are written again, otherwise
+// nothing was overwritten yet and it is dropped.
+class PageJournal {
+    private static final int MARKER = 0x4D524A4C; // "MRJL"
+    private static final int TRAILER_BYTES = 4 + 8 + 4;
+
+    private final FileChannel channel;
+    private final ByteBuffer entryHeader = ByteBuffer.allocate(12);
+    private final CRC32 checksum = new CRC32();
+    private long size = 0;
+    private int count = 0;
+
+    PageJournal(String path) throws IOException {
+        this.channel = FileChannel.open(Paths.get(path),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    }
+
+    // Whether a flush was cut short and its journal still needs recovering
+    boolean pending() throws IOException {
+        return channel.size() > 0;
+    }
+
+    // Starts the journal of a new flush
+    void begin() throws IOException {
+        channel.truncate(0);
+        checksum.reset();
+        size = 0;
+        count = 0;
+    }
+
+    // Adds the bytes that belong at a position of the store file
+    void add(long position, ByteBuffer bytes) throws IOException {
+        entryHeader.clear();
+        entryHeader.putLong(position).putInt(bytes.remaining()).flip();
+        checksum.update(entryHeader.duplicate());
+        checksum.update(bytes.duplicate());
+        write(entryHeader);
+        write(bytes);
+        count++;
+    }
+
+    // Closes the journal, after which its entries are replayed if the flush is cut short
+    void commit(boolean sync) throws IOException {
+        ByteBuffer trailer = ByteBuffer.allocate(TRAILER_BYTES);
+        trailer.putInt(count).putLong(checksum.getValue()).putInt(MARKER).flip();
+        write(trailer);
+        if (sync) {
+            channel.force(false);
+        }
+    }
+
+    // Empties the journal once the flush reached the store file
+    void clear(boolean sync) throws IOException {
+        channel.truncate(0);
+        if (sync) {
+            channel.force(false);
+        }
+    }
+
+    // Writes the entries of a complete journal to the store file and empties it; an incomplete
+    // journal is only emptied
+    void recover(FileChannel store) throws IOException {
+        if (isComplete()) {
+            ByteBuffer bytes = ByteBuffer.allocate(PageStore.PAGE_SIZE);
+            long position = 0;
+            long end = channel.size() - TRAILER_BYTES;
+            while (position < end) {
+                entryHeader.clear();
+                read(entryHeader, position);
+                long target = entryHeader.getLong();
+                int length = entryHeader.getInt();
+                bytes.clear().limit(length);
+                read(bytes, position + 12);
+                while (bytes.hasRemaining()) {
+                    store.write(bytes, target + bytes.position());
+                }
+                position += 12 + length;
+            }
+            store.force(false);
+        }
+        clear(true);
+    }
+
+    // Whether the journal ends with a trailer whose count and checksum match its entries
+    private boolean isComplete() throws IOException {
+        long total = channel.size();
+        if (total < TRAILER_BYTES) {
+            return false;
+        }
+        ByteBuffer trailer = ByteBuffer.allocate(TRAILER_BYTES);
+        read(trailer, total - TRAILER_BYTES);
+        int expectedCount = trailer.getInt();
+        long expectedChecksum = trailer.getLong();
+        if (trailer.getInt() != MARKER) {
+            return false;
+        }
+
+        CRC32 actual = new CRC32();
+        ByteBuffer bytes = ByteBuffer.allocate(PageStore.PAGE_SIZE);
+        long position = 0;
+        long end = total - TRAILER_BYTES;
+        int entries = 0;
+        while (position < end) {
+            if (end - position < 12) {
+                return false;
+            }
+            entryHeader.clear();
+            read(entryHeader, position);
+            entryHeader.getLong();
+            int length = entryHeader.getInt();
+            if (length < 0 || length > PageStore.PAGE_SIZE || end - position - 12 < length) {
+                return false;
+            }
+            actual.update(entryHeader.array(), 0, 12);
+            bytes.clear().limit(length);
+            read(bytes, position + 12);
+            actual.update(bytes.array(), 0, length);
+            position += 12 + length;
+            entries++;
+        }
+        return entries == expectedCount && actual.getValue() == expectedChecksum;
+    }
+
+    private void write(ByteBuffer bytes) throws IOException {
+        while (bytes.hasRemaining()) {
+            size += channel.write(bytes, size);
+        }
+    }
+
+    // Fills the buffer from the given position and flips it for reading
+    private void read(ByteBuffer bytes, long position) throws IOException {
+        while (bytes.hasRemaining()) {
+            if (channel.read(bytes, position + bytes.position()) < 0) {
+                throw new IOException("Journal ended early");
+            }
+        }
+        bytes.flip();
+    }
+}
@@ -0,0 +1,255 @@
+package core.storage;
+
+import core.UserLocks;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+
+// Single file of fixed-size pages holding any number of B+trees.
+// Page 0 is the header: magic, page size, page count, a generation number, the root page of
+// each tree slot and one counter per slot. Every other page is a tree node. Nodes are read
+// through a BufferPool, and the nodes an operation changed are written back in place when
+// it ends, followed by the header with the generation moved on.
+// Operations run through read() and write(), which hold the file's UserLocks stripe, so the
+// console, the server and the tools can share one store file: a process that finds a newer
+// generation in the header than the one it cached drops its pool first. Every flush goes
+// through a PageJournal next to the file first, so a crash in the middle of one is either
+// redone or never touched the file; with -Dstorage.btree.sync=true the journal and the file
+// are also forced to disk in order, which covers a power loss too.
+@SuppressWarnings("try")
+public class PageStore {
+    static final int PAGE_SIZE = 4096;
+    public static final int TREE_SLOTS = 8;
+
+    private static final int MAGIC = 0x4D524254; // "MRBT"
+    private static final int HEADER_BYTES = 20 + TREE_SLOTS * 4 + TREE_SLOTS * 8;
+
+    // Decoded pages kept in memory, overridable with -Dstorage.btree.poolPages
+    private static final int POOL_PAGES = Math.max(16, Integer.getInteger("storage.btree.poolPages", 4096));
+    private static final boolean SYNC = Boolean.getBoolean("storage.btree.sync");
+
+    private final String path;
+    private final FileChannel channel;
+    private final PageJournal journal;
+    private final BufferPool pool;
+    private final ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+    private final ByteBuffer page = ByteBuffer.allocate(PAGE_SIZE);
+
+    private int pageCount = 1;
+    private long generation = -1;
+    private final int[] roots = new int[TREE_SLOTS];
+    private final long[] counters = new long[TREE_SLOTS];
+
+    // Work done while the store is locked
+    public interface Operation<T> {
+        T run() throws IOException;
+    }
+
+    public PageStore(String path) {
+        this.path = path;
+        try {
+            File file = new File(path);
+            if (file.getParentFile() != null) {
+                file.getParentFile().mkdirs();
+            }
+            this.channel = FileChannel.open(file.toPath(),
+                    StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            this.journal = new PageJournal(path + ".journal");
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        this.pool = new BufferPool(channel, POOL_PAGES);
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    // Runs an operation that only reads. A flush another process left unfinished is recovered
+    // first, under the write lock.
+    public synchronized <T> T read(Operation<T> operation) {
+        try {
+            while (true) {
+                try (UserLocks.Held lock = UserLocks.read(path)) {
+                    if (!journal.pending()) {
+                        refresh();
+                        return operation.run();
+                    }
+                }
+                try (UserLocks.Held lock = UserLocks.write(path)) {
+                    recover();
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            pool.trim();
+        }
+    }
+
+    // Runs an operation that changes trees and writes its changes out. If it fails, its
+    // unwritten changes are dropped and the store is read again from the file.
+    public synchronized <T> T write(Operation<T> operation) {
+        try (UserLocks.Held lock = UserLocks.write(path)) {
+            recover();
+            refresh();
+            boolean done = false;
+            try {
+                T result = operation.run();
+                flush();
+                done = true;
+                return result;
+            } finally {
+                if (!done) {
+                    pool.clear();
+                    generation = -1;
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            pool.trim();
+        }
+    }
+
+    // Writes the changed pages and the header, first to the journal and then in place; long
+    // write operations may call this part way
+    public void flush() throws IOException {
+        checkHeld();
+        List<Node> changed = pool.dirty();
+        generation++;
+        header.clear();
+        header.putInt(MAGIC).putInt(PAGE_SIZE).putInt(pageCount).putLong(generation);
+        for (int root : roots) {
+            header.putInt(root);
+        }
+        for (long counter : counters) {
+            header.putLong(counter);
+        }
+        header.flip();
+
+        journal.begin();
+        for (Node node : changed) {
+            journal.add(position(node), encode(node));
+        }
+        journal.add(0, header.duplicate());
+        journal.commit(SYNC);
+
+        for (Node node : changed) {
+            write(position(node), encode(node));
+        }
+        write(0, header);
+        if (SYNC) {
+            channel.force(false);
+        }
+        journal.clear(SYNC);
+        for (Node node : changed) {
+            node.dirty = false;
+        }
+        pool.trim();
+    }
+
+    // Returns the next value of a slot's counter
+    public long nextValue(int slot) {
+        checkHeld();
+        return ++counters[slot];
+    }
+
+    int root(int slot) {
+        return roots[slot];
+    }
+
+    void setRoot(int slot, int page) {
+        roots[slot] = page;
+    }
+
+    Node node(int page) throws IOException {
+        return pool.get(page);
+    }
+
+    Node allocate(boolean leaf) {
+        Node node = new Node(pageCount++, leaf, 16);
+        pool.add(node);
+        return node;
+    }
+
+    void checkHeld() {
+        if (!Thread.holdsLock(this)) {
+            throw new IllegalStateException("Page store used outside read() or write()");
+        }
+    }
+
+    // Redoes or drops a flush that was cut short; called with the write lock held
+    private void recover() throws IOException {
+        if (journal.pending()) {
+            journal.recover(channel);
+            pool.clear();
+            generation = -1;
+        }
+    }
+
+    private static long position(Node node) {
+        return (long) node.id * PAGE_SIZE;
+    }
+
+    private ByteBuffer encode(Node node) {
+        node.encode(page);
+        page.flip();
+        return page;
+    }
+
+    private void write(long position, ByteBuffer bytes) throws IOException {
+        while (bytes.hasRemaining()) {
+            channel.write(bytes, position + bytes.position());
+        }
+    }
+
+    // Reads the header and drops the cached pages if another process wrote since they were read
+    private void refresh() throws IOException {
+        header.clear();
+        int read = 0;
+        while (header.hasRemaining()) {
+            int count = channel.read(header, header.position());
+            if (count < 0) {
+                break;
+            }
+            read += count;
+        }
+        if (read < HEADER_BYTES) {
+            // A new store: nothing written yet
+            if (generation != 0) {
+                pool.clear();
+                pageCount = 1;
+                Arrays.fill(roots, 0);
+                Arrays.fill(counters, 0);
+                generation = 0;
+            }
+            return;
+        }
+
+        header.flip();
+        if (header.getInt() != MAGIC || header.getInt() != PAGE_SIZE) {
+            throw new IOException(path + " is not a page store");
+        }
+        int storedPageCount = header.getInt();
+        long storedGeneration = header.getLong();
+        if (storedGeneration == generation) {
+            return;
+        }
+        pool.clear();
+        pageCount = storedPageCount;
+        generation = storedGeneration;
+        for (int i = 0; i < TREE_SLOTS; i++) {
+            roots[i] = header.getInt();
+        }
+        for (int i = 0; i < TREE_SLOTS; i++) {
+            counters[i] = header.getLong();
+        }
+    }
+}
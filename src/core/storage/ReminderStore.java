@@ -0,0 +1,33 @@
+package core.storage;
+
+import core.Reminder;
+
+import java.io.IOException;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.Iterator;
+import java.util.List;
+
+// Materialized reminders, ordered by (username, medicine name, date, time)
+public interface ReminderStore {
+    // Outcome of markAsTaken
+    enum Marking { MARKED, ALREADY_TAKEN, NOT_FOUND, FAILED }
+
+    // Reminders for a medicine, sorted by date and time
+    List<Reminder> findByMedicine(String username, String medicineName);
+
+    // Reminders for a medicine scheduled in [from, to), sorted by date and time
+    List<Reminder> findBetween(String username, String medicineName, LocalDateTime from, LocalDateTime to);
+
+    // First untaken reminder for a medicine scheduled at or after the given time, or null
+    Reminder findFirstPending(String username, String medicineName, LocalDateTime from);
+
+    boolean add(Reminder reminder);
+
+    // Stores many reminders of one user, writing them out every batchSize rows. Returns the number stored.
+    int addAll(String username, Iterator<Reminder> reminders, int batchSize) throws IOException;
+
+    // Marks the matching reminder as taken. Only MARKED means it went from untaken to taken.
+    Marking markAsTaken(String username, String medicineName, LocalDate date, LocalTime time);
+}
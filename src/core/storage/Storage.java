@@ -0,0 +1,55 @@
+package core.storage;
+
+import core.CsvStorage;
+import core.PagedStorage;
+
+// Selects the persistence backend once, at startup.
+// -Dstorage.backend=csv (the default) keeps the CSV text files under data/;
+// -Dstorage.backend=btree keeps users, medicines, reminders and notifications in the single
+// paged B+tree file data/store.db. The choice holds for the life of the process.
+public class Storage {
+    private static volatile StorageBackend backend = null;
+
+    // The selected backend, created on first use
+    public static StorageBackend backend() {
+        StorageBackend current = backend;
+        if (current == null) {
+            synchronized (Storage.class) {
+                if (backend == null) {
+                    backend = create(System.getProperty("storage.backend", "csv"));
+                }
+                current = backend;
+            }
+        }
+        return current;
+    }
+
+    public static UserStore users() {
+        return backend().users();
+    }
+
+    public static MedicineStore medicines() {
+        return backend().medicines();
+    }
+
+    public static ReminderStore reminders() {
+        return backend().reminders();
+    }
+
+    public static NotificationStore notifications() {
+        return backend().notifications();
+    }
+
+    public static DoseHistoryStore doseHistory() {
+        return backend().doseHistory();
+    }
+
+    private static StorageBackend create(String name) {
+        return switch (name) {
+            case CsvStorage.NAME -> new CsvStorage();
+            case PagedStorage.NAME -> new PagedStorage();
+            default -> throw new IllegalArgumentException(
+                    "Unknown storage backend '" + name + "' (expected " + CsvStorage.NAME + " or " + PagedStorage.NAME + ")");
+        };
+    }
+}
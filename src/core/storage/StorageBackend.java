@@ -0,0 +1,20 @@
+package core.storage;
+
+// One persistence backend: a repository per entity.
+// The entity classes (Medicine, Reminder, Notification, User, DoseHistory) keep their static
+// API and reach their data only through the backend chosen by Storage, so a backend can be
+// swapped without touching the managers, the console or the API server.
+public interface StorageBackend {
+    // Name used to select the backend with -Dstorage.backend
+    String name();
+
+    UserStore users();
+
+    MedicineStore medicines();
+
+    ReminderStore reminders();
+
+    NotificationStore notifications();
+
+    DoseHistoryStore doseHistory();
+}
@@ -0,0 +1,19 @@
+package core.storage;
+
+import core.User;
+
+import java.util.function.Consumer;
+
+// Registered users, looked up by username
+public interface UserStore {
+    enum Registration { REGISTERED, EXISTS, FAILED }
+
+    // Returns the user with the given name, or null if there is none
+    User find(String username);
+
+    // Stores a new user unless the name is taken; the check and the write are one step
+    Registration register(User user);
+
+    // Calls the consumer for every registered user
+    void forEach(Consumer<User> consumer);
+}
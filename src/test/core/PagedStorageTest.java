@@ -0,0 +1,50 @@
+package core;
+
+import core.storage.UserStore;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PagedStorageTest {
+    @TempDir
+    static Path dataDirectory;
+
+    @BeforeAll
+    static void useTemporaryDataDirectory() {
+        System.setProperty("medicine.data.dir", dataDirectory.toString());
+    }
+
+    @Test
+    void walkingAllUsersContinuesAcrossBatches() {
+        UserStore users = new PagedStorage().users();
+        // Two full batches of 1024, so the walk also has to notice there is nothing after the last one
+        int count = 2048;
+        for (int i = 0; i < count; i++) {
+            assertEquals(UserStore.Registration.REGISTERED, users.register(user(i)));
+        }
+        assertEquals(UserStore.Registration.EXISTS, users.register(user(7)));
+
+        List<String> names = new ArrayList<>();
+        users.forEach(user -> names.add(user.getUsername()));
+        assertEquals(count, names.size());
+        for (int i = 0; i < count; i++) {
+            assertEquals(String.format("user%05d", i), names.get(i));
+        }
+
+        users.register(user(count));
+        List<String> more = new ArrayList<>();
+        users.forEach(user -> more.add(user.getUsername()));
+        assertEquals(count + 1, more.size());
+        assertEquals(String.format("user%05d", count), more.get(count));
+    }
+
+    private static User user(int i) {
+        return new User(String.format("user%05d", i), "secret", "First", "Last", Gender.values()[0], 30);
+    }
+}
@@ -0,0 +1,311 @@
+package core.storage;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BPlusTreeTest {
+    @TempDir
+    static Path dataDirectory;
+
+    @TempDir
+    Path directory;
+
+    @BeforeAll
+    static void useTemporaryDataDirectory() {
+        // The store's locks live under the data directory
+        System.setProperty("medicine.data.dir", dataDirectory.toString());
+    }
+
+    @Test
+    void putGetAndRemoveAcrossManySplits() {
+        PageStore store = new PageStore(file("tree.db"));
+        BPlusTree tree = new BPlusTree(store, 0);
+        int count = 20_000;
+
+        store.write(() -> {
+            for (int i = 0; i < count; i++) {
+                assertNull(tree.put(key(i), value(i)));
+            }
+            return null;
+        });
+        store.read(() -> {
+            assertFalse(store.node(store.root(0)).leaf, "the root should have been split");
+            for (int i = 0; i < count; i++) {
+                assertArrayEquals(value(i), tree.get(key(i)));
+            }
+            assertNull(tree.get(key(count)));
+            return null;
+        });
+
+        store.write(() -> {
+            for (int i = 0; i < count; i += 2) {
+                assertArrayEquals(value(i), tree.remove(key(i)));
+            }
+            assertNull(tree.remove(key(0)));
+            assertArrayEquals(value(1), tree.put(key(1), value(7)));
+            return null;
+        });
+        store.read(() -> {
+            assertNull(tree.get(key(0)));
+            assertArrayEquals(value(7), tree.get(key(1)));
+            List<byte[]> keys = scanAll(tree);
+            assertEquals(count / 2, keys.size());
+            for (int i = 0; i < keys.size(); i++) {
+                assertArrayEquals(key(2 * i + 1), keys.get(i));
+            }
+            return null;
+        });
+    }
+
+    @Test
+    void scanStartsAtKeyAndStopsAtPrefix() {
+        PageStore store = new PageStore(file("prefix.db"));
+        BPlusTree tree = new BPlusTree(store, 0);
+        store.write(() -> {
+            for (int group = 0; group < 50; group++) {
+                for (int i = 0; i < 100; i++) {
+                    tree.put(ByteBuffer.allocate(8).putInt(group).putInt(i).array(), value(i));
+                }
+            }
+            return null;
+        });
+
+        byte[] prefix = ByteBuffer.allocate(4).putInt(20).array();
+        byte[] from = ByteBuffer.allocate(8).putInt(20).putInt(40).array();
+        List<byte[]> keys = new ArrayList<>();
+        store.read(() -> {
+            tree.scan(from, prefix, (key, value) -> keys.add(key));
+            return null;
+        });
+        assertEquals(60, keys.size());
+        assertArrayEquals(from, keys.get(0));
+        assertEquals(99, ByteBuffer.wrap(keys.get(59)).getInt(4));
+    }
+
+    @Test
+    void entriesOfTheLargestSizeFit() {
+        PageStore store = new PageStore(file("large.db"));
+        BPlusTree tree = new BPlusTree(store, 0);
+        int count = 500;
+        store.write(() -> {
+            for (int i = 0; i < count; i++) {
+                byte[] key = key(i);
+                byte[] value = new byte[BPlusTree.MAX_ENTRY_BYTES - key.length];
+                Arrays.fill(value, (byte) i);
+                tree.put(key, value);
+            }
+            return null;
+        });
+        store.read(() -> {
+            for (int i = 0; i < count; i++) {
+                byte[] value = tree.get(key(i));
+                assertEquals(BPlusTree.MAX_ENTRY_BYTES - key(i).length, value.length);
+                assertEquals((byte) i, value[value.length - 1]);
+            }
+            assertEquals(count, scanAll(tree).size());
+            return null;
+        });
+
+        byte[] tooLarge = new byte[BPlusTree.MAX_ENTRY_BYTES - key(0).length + 1];
+        assertThrows(IllegalArgumentException.class, () -> store.write(() -> tree.put(key(0), tooLarge)));
+    }
+
+    @Test
+    void emptiedLeavesAreSkippedAndReused() {
+        PageStore store = new PageStore(file("empty.db"));
+        BPlusTree tree = new BPlusTree(store, 0);
+        store.write(() -> {
+            for (int i = 0; i < 5000; i++) {
+                tree.put(key(i), value(i));
+            }
+            for (int i = 1000; i < 4000; i++) {
+                tree.remove(key(i));
+            }
+            return null;
+        });
+        store.read(() -> {
+            List<byte[]> keys = scanAll(tree);
+            assertEquals(2000, keys.size());
+            assertArrayEquals(key(999), keys.get(999));
+            assertArrayEquals(key(4000), keys.get(1000));
+
+            List<byte[]> fromGap = new ArrayList<>();
+            tree.scan(key(2500), new byte[0], (key, value) -> fromGap.add(key) && fromGap.size() < 3);
+            assertArrayEquals(key(4000), fromGap.get(0));
+            return null;
+        });
+
+        long size = new java.io.File(file("empty.db")).length();
+        store.write(() -> {
+            for (int i = 1000; i < 4000; i++) {
+                tree.put(key(i), value(i));
+            }
+            return null;
+        });
+        assertEquals(size, new java.io.File(file("empty.db")).length(), "the emptied leaves should be filled again");
+        store.read(() -> {
+            assertEquals(5000, scanAll(tree).size());
+            return null;
+        });
+    }
+
+    @Test
+    void treesAreKeptWhenTheFileIsReopened() {
+        String path = file("reopen.db");
+        PageStore first = new PageStore(path);
+        first.write(() -> {
+            BPlusTree users = new BPlusTree(first, 0);
+            BPlusTree other = new BPlusTree(first, 3);
+            for (int i = 0; i < 3000; i++) {
+                users.put(key(i), value(i));
+                other.put(key(i), value(i + 1));
+            }
+            first.nextValue(3);
+            return null;
+        });
+
+        PageStore reopened = new PageStore(path);
+        reopened.read(() -> {
+            BPlusTree users = new BPlusTree(reopened, 0);
+            BPlusTree other = new BPlusTree(reopened, 3);
+            for (int i = 0; i < 3000; i++) {
+                assertArrayEquals(value(i), users.get(key(i)));
+                assertArrayEquals(value(i + 1), other.get(key(i)));
+            }
+            return null;
+        });
+        assertEquals(2L, reopened.write(() -> reopened.nextValue(3)));
+    }
+
+    @Test
+    void changesOfAnotherStoreOnTheFileAreSeen() {
+        // Two stores on one file stand in for two processes: each has its own pool
+        String path = file("shared.db");
+        PageStore first = new PageStore(path);
+        PageStore second = new PageStore(path);
+        BPlusTree firstTree = new BPlusTree(first, 0);
+        BPlusTree secondTree = new BPlusTree(second, 0);
+
+        first.write(() -> firstTree.put(key(1), value(1)));
+        assertArrayEquals(value(1), second.read(() -> secondTree.get(key(1))));
+
+        second.write(() -> {
+            for (int i = 2; i < 3000; i++) {
+                secondTree.put(key(i), value(i));
+            }
+            return secondTree.put(key(1), value(9));
+        });
+        first.read(() -> {
+            assertArrayEquals(value(9), firstTree.get(key(1)));
+            assertEquals(2999, scanAll(firstTree).size());
+            return null;
+        });
+    }
+
+    @Test
+    void failedWriteLeavesTheStoreAsItWas() {
+        PageStore store = new PageStore(file("failed.db"));
+        BPlusTree tree = new BPlusTree(store, 0);
+        store.write(() -> tree.put(key(1), value(1)));
+
+        assertThrows(IllegalStateException.class, () -> store.write(() -> {
+            for (int i = 2; i < 2000; i++) {
+                tree.put(key(i), value(i));
+            }
+            throw new IllegalStateException("stop");
+        }));
+        store.read(() -> {
+            assertEquals(1, scanAll(tree).size());
+            return null;
+        });
+    }
+
+    @Test
+    void completeJournalIsRedoneOnOpen() throws IOException {
+        String path = file("redo.db");
+        PageStore store = new PageStore(path);
+        BPlusTree tree = new BPlusTree(store, 0);
+        store.write(() -> tree.put(key(1), value(1)));
+        byte[] before = Files.readAllBytes(Path.of(path));
+        store.write(() -> {
+            for (int i = 2; i < 2000; i++) {
+                tree.put(key(i), value(i));
+            }
+            return null;
+        });
+        byte[] after = Files.readAllBytes(Path.of(path));
+
+        // A flush whose journal was written but whose pages never reached the file
+        Files.write(Path.of(path), before);
+        PageJournal journal = new PageJournal(path + ".journal");
+        journal.begin();
+        for (int position = 0; position < after.length; position += PageStore.PAGE_SIZE) {
+            journal.add(position, ByteBuffer.wrap(after, position, Math.min(PageStore.PAGE_SIZE, after.length - position)));
+        }
+        journal.commit(false);
+
+        PageStore reopened = new PageStore(path);
+        BPlusTree reopenedTree = new BPlusTree(reopened, 0);
+        reopened.read(() -> {
+            assertEquals(1999, scanAll(reopenedTree).size());
+            return null;
+        });
+        assertEquals(0, Files.size(Path.of(path + ".journal")));
+    }
+
+    @Test
+    void incompleteJournalIsDropped() throws IOException {
+        String path = file("drop.db");
+        PageStore store = new PageStore(path);
+        BPlusTree tree = new BPlusTree(store, 0);
+        store.write(() -> tree.put(key(1), value(1)));
+
+        // A flush cut short while its journal was being written: the file was not touched
+        PageJournal journal = new PageJournal(path + ".journal");
+        journal.begin();
+        journal.add(0, ByteBuffer.allocate(PageStore.PAGE_SIZE));
+
+        PageStore reopened = new PageStore(path);
+        assertArrayEquals(value(1), reopened.read(() -> new BPlusTree(reopened, 0).get(key(1))));
+        assertEquals(0, Files.size(Path.of(path + ".journal")));
+    }
+
+    private String file(String name) {
+        return directory.resolve(name).toString();
+    }
+
+    private static byte[] key(int i) {
+        return ByteBuffer.allocate(4).putInt(i).array();
+    }
+
+    // Values of varying size, so splits fall at different entry counts
+    private static byte[] value(int i) {
+        byte[] value = new byte[8 + i % 120];
+        Arrays.fill(value, (byte) i);
+        return value;
+    }
+
+    private static List<byte[]> scanAll(BPlusTree tree) throws IOException {
+        List<byte[]> keys = new ArrayList<>();
+        byte[][] previous = new byte[1][];
+        tree.scan(new byte[0], new byte[0], (key, value) -> {
+            if (previous[0] != null) {
+                assertTrue(Arrays.compareUnsigned(previous[0], key) < 0, "keys out of order");
+            }
+            previous[0] = key;
+            return keys.add(key);
+        });
+        return keys;
+    }
+}